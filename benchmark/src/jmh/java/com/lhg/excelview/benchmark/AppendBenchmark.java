@@ -0,0 +1,53 @@
+package com.lhg.excelview.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 边建索引边显示的CSV: 行数分批变多, 每批之后排版一次.
+ * 增量追加只计算新增的行, 对照每批都重建整个索引.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AppendBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rowCount;
+
+    //每次publish新增的行数
+    @Param({"10000"})
+    public int batchRows;
+
+    @Benchmark
+    public int appendIncremental() {
+        Sheets.Helper helper = new Sheets.Helper(0, 48);
+        helper.getIndex();
+        for (int start = 0; start < rowCount; start += batchRows) {
+            int count = Math.min(batchRows, rowCount - start);
+            helper.count = start + count;
+            helper.insertIndex(start, count);
+            helper.scroll(Sheets.VIEWPORT_HEIGHT, 0);
+        }
+        return helper.getIndex().total();
+    }
+
+    @Benchmark
+    public int appendRebuild() {
+        Sheets.Helper helper = new Sheets.Helper(0, 48);
+        helper.getIndex();
+        for (int start = 0; start < rowCount; start += batchRows) {
+            helper.count = Math.min(rowCount, start + batchRows);
+            helper.invalidIndex();
+            helper.scroll(Sheets.VIEWPORT_HEIGHT, 0);
+        }
+        return helper.getIndex().total();
+    }
+}
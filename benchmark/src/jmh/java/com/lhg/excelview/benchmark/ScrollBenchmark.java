@@ -0,0 +1,80 @@
+package com.lhg.excelview.benchmark;
+
+import com.lhg.excelview.core.SizeIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ScrollHelper/SizeIndex: 逐帧小步滚动、跳到任意位置、重建和单点更新索引.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ScrollBenchmark {
+    private static final int JUMPS = 1024;//2的幂, 用&取下标
+
+    @Param({"1000", "100000", "1000000"})
+    public int rowCount;
+
+    private Sheets.Helper mHelper;
+    private int mMaxScroll;
+    private int mScroll;
+    private int[] mJumps;
+    private int mJump;
+
+    @Setup
+    public void setup() {
+        mHelper = new Sheets.Helper(rowCount, 48);
+        mHelper.getIndex();
+        mMaxScroll = mHelper.maxScroll(Sheets.VIEWPORT_HEIGHT);
+        Random random = new Random(42);
+        mJumps = new int[JUMPS];
+        for (int i = 0; i < JUMPS; i++) {
+            mJumps[i] = random.nextInt(mMaxScroll + 1);
+        }
+    }
+
+    //一帧fling的距离
+    @Benchmark
+    public int scrollStep() {
+        mScroll += 37;
+        if (mScroll > mMaxScroll) {
+            mScroll = 0;
+        }
+        mHelper.scroll(Sheets.VIEWPORT_HEIGHT, mScroll);
+        return mHelper.startIndex + mHelper.bodyCount;
+    }
+
+    //快速滚动条拖动/跳转到远处
+    @Benchmark
+    public int deepJump() {
+        mHelper.scroll(Sheets.VIEWPORT_HEIGHT, mJumps[mJump++ & (JUMPS - 1)]);
+        return mHelper.startIndex + mHelper.bodyCount;
+    }
+
+    //换adapter或者notifyDataSetChanged之后的第一次排版
+    @Benchmark
+    public int buildIndex() {
+        mHelper.invalidIndex();
+        return mHelper.getIndex().total();
+    }
+
+    //改了一行的行高
+    @Benchmark
+    public int updateSize() {
+        int row = mJumps[mJump++ & (JUMPS - 1)] % rowCount;
+        SizeIndex index = mHelper.getIndex();
+        index.update(row, index.sizeOf(row) ^ 8);
+        return index.total();
+    }
+}
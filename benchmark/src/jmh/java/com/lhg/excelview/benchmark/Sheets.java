@@ -0,0 +1,75 @@
+package com.lhg.excelview.benchmark;
+
+import com.lhg.excelview.core.CellRange;
+import com.lhg.excelview.core.LayoutState;
+import com.lhg.excelview.core.ScrollHelper;
+
+/**
+ * 基准测试共用的表格模型: 行高/列宽按index变化, 不依赖Android.
+ */
+class Sheets {
+    static final int VIEWPORT_WIDTH = 1080;
+    static final int VIEWPORT_HEIGHT = 1920;
+
+    //尺寸在[base, base + 6 * 8]之间变化, 和真实表格一样不是等高的
+    static class Helper extends ScrollHelper {
+        int count;//AppendBenchmark中会变多
+        final int base;
+
+        Helper(int count, int base) {
+            this.count = count;
+            this.base = base;
+        }
+
+        @Override
+        public int getViewCount() {
+            return count;
+        }
+
+        @Override
+        public int getViewSize(int index) {
+            return base + (index % 7) * 8;
+        }
+    }
+
+    static class Range implements CellRange {
+        final int r1, c1, r2, c2;
+
+        Range(int r1, int c1, int r2, int c2) {
+            this.r1 = r1;
+            this.c1 = c1;
+            this.r2 = r2;
+            this.c2 = c2;
+        }
+
+        @Override
+        public int getFirstRow() {
+            return r1;
+        }
+
+        @Override
+        public int getFirstCol() {
+            return c1;
+        }
+
+        @Override
+        public int getLastRow() {
+            return r2;
+        }
+
+        @Override
+        public int getLastCol() {
+            return c2;
+        }
+    }
+
+    static LayoutState layout(Helper cols, Helper rows, int scrollX, int scrollY) {
+        LayoutState state = new LayoutState();
+        cols.scroll(VIEWPORT_WIDTH, scrollX);
+        state.applyCols(cols, VIEWPORT_WIDTH);
+        rows.scroll(VIEWPORT_HEIGHT, scrollY);
+        state.applyRows(rows, VIEWPORT_HEIGHT);
+        state.invalid = false;
+        return state;
+    }
+}
@@ -0,0 +1,80 @@
+package com.lhg.excelview.benchmark;
+
+import com.lhg.excelview.core.RangeIndex;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RangeIndex: 10k个合并单元格分散在不同大小的表格中, 单格查找和可见窗口查询.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SpanQueryBenchmark {
+    private static final int SPAN_COUNT = 10000;
+    private static final int COL_COUNT = 100;
+    private static final int SLOT = 4;//每个合并单元格占一个4x4的槽, 互不重叠
+    private static final int PROBES = 1024;
+    private static final int WINDOW_ROWS = 40, WINDOW_COLS = 12;
+
+    @Param({"10000", "100000", "1000000"})
+    public int rowCount;
+
+    private RangeIndex<Sheets.Range> mIndex;
+    private int[] mProbeRows, mProbeCols;
+    private int mProbe;
+    private final List<Sheets.Range> mOut = new ArrayList<>();
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int slotRows = rowCount / SLOT, slotCols = COL_COUNT / SLOT;
+        boolean[] used = new boolean[slotRows * slotCols];
+        mIndex = new RangeIndex<>();
+        while (mIndex.size() < SPAN_COUNT) {
+            int slot = random.nextInt(used.length);
+            if (used[slot]) {
+                continue;
+            }
+            used[slot] = true;
+            int r = slot / slotCols * SLOT, c = slot % slotCols * SLOT;
+            mIndex.add(new Sheets.Range(r, c, r + 1 + random.nextInt(SLOT - 1), c + random.nextInt(SLOT)));
+        }
+        mProbeRows = new int[PROBES];
+        mProbeCols = new int[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            mProbeRows[i] = random.nextInt(rowCount - WINDOW_ROWS);
+            mProbeCols[i] = random.nextInt(COL_COUNT - WINDOW_COLS);
+        }
+    }
+
+    //排版时每个格子都要问一次
+    @Benchmark
+    public Object find() {
+        int i = mProbe++ & (PROBES - 1);
+        return mIndex.find(mProbeRows[i], mProbeCols[i]);
+    }
+
+    //一屏内的合并单元格
+    @Benchmark
+    public void queryWindow(Blackhole blackhole) {
+        int i = mProbe++ & (PROBES - 1);
+        int r = mProbeRows[i], c = mProbeCols[i];
+        mOut.clear();
+        mIndex.query(r, c, r + WINDOW_ROWS - 1, c + WINDOW_COLS - 1, mOut);
+        blackhole.consume(mOut.size());
+    }
+}
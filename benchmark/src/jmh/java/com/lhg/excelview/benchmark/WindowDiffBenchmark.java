@@ -0,0 +1,92 @@
+package com.lhg.excelview.benchmark;
+
+import com.lhg.excelview.core.LayoutState;
+import com.lhg.excelview.core.WindowDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WindowDiff: 滚动前后两个可见窗口之间移出/移入的单元格, 对角小步滚动和远距离跳转.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WindowDiffBenchmark {
+    private static final int STATES = 1024;//2的幂, 用&取下标
+    private static final int HEAD_COUNT = 1, FOOT_COUNT = 1;
+
+    @Param({"100", "10000", "1000000"})
+    public int rowCount;
+
+    @Param({"50", "500"})
+    public int colCount;
+
+    private LayoutState[] mSteps, mJumps;
+    private int mIndex;
+    private final CountingDiff mDiff = new CountingDiff();
+
+    //只统计进出的单元格数, 代替回收和排版
+    private static class CountingDiff extends WindowDiff {
+        int leaving, entering;
+
+        @Override
+        protected void onLeave(int row, int colStart, int colEnd) {
+            leaving += colEnd - colStart;
+        }
+
+        @Override
+        protected void onEnter(int row, int colStart, int colEnd) {
+            entering += colEnd - colStart;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Sheets.Helper cols = new Sheets.Helper(colCount, 160);
+        Sheets.Helper rows = new Sheets.Helper(rowCount, 48);
+        cols.headCount = rows.headCount = HEAD_COUNT;
+        cols.footCount = rows.footCount = FOOT_COUNT;
+        int maxX = cols.maxScroll(Sheets.VIEWPORT_WIDTH), maxY = rows.maxScroll(Sheets.VIEWPORT_HEIGHT);
+        Random random = new Random(42);
+        mSteps = new LayoutState[STATES];
+        mJumps = new LayoutState[STATES];
+        int x = 0, y = 0;
+        for (int i = 0; i < STATES; i++) {
+            x = x + 23 > maxX ? 0 : x + 23;
+            y = y + 37 > maxY ? 0 : y + 37;
+            mSteps[i] = Sheets.layout(cols, rows, x, y);
+            mJumps[i] = Sheets.layout(cols, rows, random.nextInt(maxX + 1), random.nextInt(maxY + 1));
+        }
+    }
+
+    private int diff(LayoutState[] states) {
+        int i = mIndex++ & (STATES - 1);
+        LayoutState old = states[i], state = states[(i + 1) & (STATES - 1)];
+        mDiff.leaving = mDiff.entering = 0;
+        mDiff.diffLeaving(old, state, rowCount, colCount);
+        mDiff.diffEntering(old, state, rowCount, colCount);
+        return mDiff.leaving + mDiff.entering;
+    }
+
+    //fling的一帧, 只有边上的一两行/列进出
+    @Benchmark
+    public int scrollStep() {
+        return diff(mSteps);
+    }
+
+    //窗口完全不重叠, 整屏进出
+    @Benchmark
+    public int jump() {
+        return diff(mJumps);
+    }
+}
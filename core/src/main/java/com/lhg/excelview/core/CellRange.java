@@ -0,0 +1,14 @@
+package com.lhg.excelview.core;
+
+/**
+ * 闭区间[firstRow, lastRow]x[firstCol, lastCol]表示的单元格区域.
+ */
+public interface CellRange {
+    int getFirstRow();
+
+    int getFirstCol();
+
+    int getLastRow();
+
+    int getLastCol();
+}
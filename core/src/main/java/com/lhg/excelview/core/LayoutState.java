@@ -0,0 +1,170 @@
+package com.lhg.excelview.core;
+
+/**
+ * 一次排版的窗口: 滚动位置、冻结区域和body中可见的行列范围.
+ */
+public class LayoutState {
+    public boolean invalid = true;
+    public boolean dirty;//cell的行列号或尺寸变了, 需要完整排版, 但不用重新绑定
+    public int scrollX, scrollY;
+    public int width, height;
+    public int firstBodyRow = 0, firstBodyCol = 0;
+    public int firstBodyRowOffset = 0, firstBodyColOffset = 0;//firstBodyRow被head挡住的部分, 为正数
+    public int bodyRowCount = 0, bodyColCount = 0;
+    //[0, headRowCount)冻结在上, [footRowStart, rowCount)冻结在下, 列同理
+    public int headRowCount = 0, headColCount = 0;
+    public int footRowStart = 0, footColStart = 0;
+    public int headHeight = 0, headWidth = 0;
+    public int footY = 0, footX = 0;//末尾冻结部分在视口中的起点
+    
+    public boolean isCellVisible(int row, int col) {
+        return isRowVisible(row, row) && isColVisible(col, col);
+    }
+
+    //body窗口在行和列上都和that有重叠, 尺寸和冻结区域相同
+    public boolean overlaps(LayoutState that) {
+        return width == that.width && height == that.height &&
+                headRowCount == that.headRowCount && headColCount == that.headColCount &&
+                footRowStart == that.footRowStart && footColStart == that.footColStart &&
+                footY == that.footY && footX == that.footX &&
+                bodyRowCount > 0 && bodyColCount > 0 && that.bodyRowCount > 0 && that.bodyColCount > 0 &&
+                firstBodyRow < that.firstBodyRow + that.bodyRowCount &&
+                that.firstBodyRow < firstBodyRow + bodyRowCount &&
+                firstBodyCol < that.firstBodyCol + that.bodyColCount &&
+                that.firstBodyCol < firstBodyCol + bodyColCount;
+    }
+
+    //冻结行列和body之外的部分不可见
+    public boolean isRangeVisible(int r1, int c1, int r2, int c2) {
+        return isRowVisible(r1, r2) && isColVisible(c1, c2);
+    }
+
+    public boolean isRowVisible(int r1, int r2) {
+        return r1 < headRowCount || r2 >= footRowStart || (r2 >= firstBodyRow && r1 < firstBodyRow + bodyRowCount);
+    }
+
+    public boolean isColVisible(int c1, int c2) {
+        return c1 < headColCount || c2 >= footColStart || (c2 >= firstBodyCol && c1 < firstBodyCol + bodyColCount);
+    }
+
+    public boolean isFrozenRow(int row) {
+        return row < headRowCount || row >= footRowStart;
+    }
+
+    public boolean isFrozenCol(int col) {
+        return col < headColCount || col >= footColStart;
+    }
+
+    @Override
+    public String toString() {
+        return "LayoutState{" +
+                "invalid=" + invalid +
+                ", scrollX=" + scrollX +
+                ", scrollY=" + scrollY +
+                ", width=" + width +
+                ", height=" + height +
+                ", firstBodyRow=" + firstBodyRow +
+                ", firstBodyCol=" + firstBodyCol +
+                ", firstBodyRowOffset=" + firstBodyRowOffset +
+                ", firstBodyColOffset=" + firstBodyColOffset +
+                ", bodyRowCount=" + bodyRowCount +
+                ", bodyColCount=" + bodyColCount +
+                ", headRowCount=" + headRowCount +
+                ", headColCount=" + headColCount +
+                ", footRowStart=" + footRowStart +
+                ", footColStart=" + footColStart +
+                '}';
+    }
+
+    //一个方向scroll之后的结果
+    public void applyCols(ScrollHelper helper, int width) {
+        firstBodyCol = helper.startIndex;
+        firstBodyColOffset = helper.startOffset;
+        bodyColCount = helper.bodyCount;
+        scrollX = helper.scroll;
+        headColCount = helper.headEnd;
+        footColStart = helper.footStart;
+        headWidth = helper.headSize;
+        footX = helper.footPos;
+        this.width = width;
+    }
+
+    public void applyRows(ScrollHelper helper, int height) {
+        firstBodyRow = helper.startIndex;
+        firstBodyRowOffset = helper.startOffset;
+        bodyRowCount = helper.bodyCount;
+        scrollY = helper.scroll;
+        headRowCount = helper.headEnd;
+        footRowStart = helper.footStart;
+        headHeight = helper.headSize;
+        footY = helper.footPos;
+        this.height = height;
+    }
+
+    public void init() {
+        scrollX = 0;
+        scrollY = 0;
+        firstBodyRow = 0;
+        firstBodyCol = 0;
+        bodyRowCount = 0;
+        bodyColCount = 0;
+        firstBodyRowOffset = 0;
+        firstBodyColOffset = 0;
+        headRowCount = 0;
+        headColCount = 0;
+        footRowStart = 0;
+        footColStart = 0;
+        headHeight = 0;
+        headWidth = 0;
+        footY = 0;
+        footX = 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LayoutState that = (LayoutState) o;
+
+        if (scrollX != that.scrollX) return false;
+        if (scrollY != that.scrollY) return false;
+        if (width != that.width) return false;
+        if (height != that.height) return false;
+        if (firstBodyRow != that.firstBodyRow) return false;
+        if (firstBodyCol != that.firstBodyCol) return false;
+        if (firstBodyRowOffset != that.firstBodyRowOffset) return false;
+        if (firstBodyColOffset != that.firstBodyColOffset) return false;
+        if (bodyRowCount != that.bodyRowCount) return false;
+        if (bodyColCount != that.bodyColCount) return false;
+        if (headRowCount != that.headRowCount) return false;
+        if (headColCount != that.headColCount) return false;
+        if (footRowStart != that.footRowStart) return false;
+        if (footColStart != that.footColStart) return false;
+        if (headHeight != that.headHeight) return false;
+        if (headWidth != that.headWidth) return false;
+        if (footY != that.footY) return false;
+        return footX == that.footX;
+    }
+    
+    public void copyFrom(LayoutState that) {
+        scrollX = that.scrollX ;
+        scrollY = that.scrollY ;
+        width = that.width ;
+        height = that.height ;
+        firstBodyRow = that.firstBodyRow ;
+        firstBodyCol = that.firstBodyCol ;
+        firstBodyRowOffset = that.firstBodyRowOffset;
+        firstBodyColOffset = that.firstBodyColOffset;
+        bodyRowCount = that.bodyRowCount ;
+        bodyColCount = that.bodyColCount;
+        headRowCount = that.headRowCount;
+        headColCount = that.headColCount;
+        footRowStart = that.footRowStart;
+        footColStart = that.footColStart;
+        headHeight = that.headHeight;
+        headWidth = that.headWidth;
+        footY = that.footY;
+        footX = that.footX;
+    }
+}
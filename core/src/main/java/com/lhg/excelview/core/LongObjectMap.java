@@ -0,0 +1,124 @@
+package com.lhg.excelview.core;
+
+import java.util.Arrays;
+
+/**
+ * key为(row << 32 | col)的开放寻址表, 查找/插入/删除都不分配对象.
+ */
+public class LongObjectMap<V> {
+    private static final long EMPTY = -1L;//row, col都不会是负数
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+
+    public LongObjectMap() {
+        allocate(64);
+    }
+
+    public static long key(int row, int col) {
+        return ((long) row << 32) | (col & 0xFFFFFFFFL);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == key) {
+                return (V) values[i];
+            } else if (k == EMPTY) {
+                return null;
+            }
+        }
+    }
+
+    public void put(long key, V value) {
+        if ((size + 1) * 4 > keys.length * 3) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            allocate(keys.length * 2);
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    putInternal(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+        putInternal(key, value);
+    }
+
+    private void putInternal(long key, Object value) {
+        int i = slot(key);
+        while (keys[i] != EMPTY && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == EMPTY) {
+            size++;
+        }
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = slot(key);
+        while (keys[i] != key) {
+            if (keys[i] == EMPTY) {
+                return null;
+            }
+            i = (i + 1) & mask;
+        }
+        Object old = values[i];
+        //后面同一探测链上的元素往前移, 填补空位
+        int gap = i;
+        for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            boolean stay = gap <= j ? (gap < home && home <= j) : (gap < home || home <= j);
+            if (!stay) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+        }
+        keys[gap] = EMPTY;
+        values[gap] = null;
+        size--;
+        return (V) old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    //按槽位遍历, 空槽位valueAt返回null
+    public int capacity() {
+        return keys.length;
+    }
+
+    public long keyAt(int index) {
+        return keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V valueAt(int index) {
+        return (V) values[index];
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+}
@@ -0,0 +1,120 @@
+package com.lhg.excelview.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按16x16的块登记区域, 每个区域挂在它覆盖的所有块上,
+ * 查单个格子只看一个块, 查一个窗口只看窗口覆盖的块, 与区域总数无关.
+ * 只占一个格子的区域不登记.
+ */
+public class RangeIndex<T extends CellRange> {
+    private static final int BLOCK_SHIFT = 4;
+    private final LongObjectMap<List<T>> mBlocks = new LongObjectMap<>();
+    private int mSize;
+
+    private static boolean isRange(CellRange range) {
+        return range != null && (range.getFirstRow() != range.getLastRow() || range.getFirstCol() != range.getLastCol());
+    }
+
+    private static boolean contains(CellRange range, int row, int col) {
+        return row >= range.getFirstRow() && row <= range.getLastRow() &&
+                col >= range.getFirstCol() && col <= range.getLastCol();
+    }
+
+    private static boolean intersects(CellRange range, int r1, int c1, int r2, int c2) {
+        return range.getFirstRow() <= r2 && range.getLastRow() >= r1 &&
+                range.getFirstCol() <= c2 && range.getLastCol() >= c1;
+    }
+
+    public void add(T range) {
+        if (!isRange(range)) {
+            return;
+        }
+        for (int br = range.getFirstRow() >> BLOCK_SHIFT; br <= range.getLastRow() >> BLOCK_SHIFT; br++) {
+            for (int bc = range.getFirstCol() >> BLOCK_SHIFT; bc <= range.getLastCol() >> BLOCK_SHIFT; bc++) {
+                long key = LongObjectMap.key(br, bc);
+                List<T> list = mBlocks.get(key);
+                if (list == null) {
+                    mBlocks.put(key, list = new ArrayList<>(2));
+                }
+                list.add(range);
+            }
+        }
+        mSize++;
+    }
+
+    public boolean remove(T range) {
+        if (!isRange(range)) {
+            return false;
+        }
+        boolean removed = false;
+        for (int br = range.getFirstRow() >> BLOCK_SHIFT; br <= range.getLastRow() >> BLOCK_SHIFT; br++) {
+            for (int bc = range.getFirstCol() >> BLOCK_SHIFT; bc <= range.getLastCol() >> BLOCK_SHIFT; bc++) {
+                long key = LongObjectMap.key(br, bc);
+                List<T> list = mBlocks.get(key);
+                if (list != null && list.remove(range)) {
+                    removed = true;
+                    if (list.isEmpty()) {
+                        mBlocks.remove(key);
+                    }
+                }
+            }
+        }
+        if (removed) {
+            mSize--;
+        }
+        return removed;
+    }
+
+    public void clear() {
+        mBlocks.clear();
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    //覆盖(row, col)的区域, 没有返回null
+    public T find(int row, int col) {
+        if (mSize == 0) {
+            return null;
+        }
+        List<T> list = mBlocks.get(LongObjectMap.key(row >> BLOCK_SHIFT, col >> BLOCK_SHIFT));
+        if (list != null) {
+            for (int i = 0, n = list.size(); i < n; i++) {
+                T range = list.get(i);
+                if (contains(range, row, col)) {
+                    return range;
+                }
+            }
+        }
+        return null;
+    }
+
+    //和区域[r1, r2]x[c1, c2]有交集的区域, 每个只输出一次
+    public void query(int r1, int c1, int r2, int c2, List<? super T> out) {
+        if (mSize == 0) {
+            return;
+        }
+        int br1 = r1 >> BLOCK_SHIFT, bc1 = c1 >> BLOCK_SHIFT;
+        for (int br = br1; br <= r2 >> BLOCK_SHIFT; br++) {
+            for (int bc = bc1; bc <= c2 >> BLOCK_SHIFT; bc++) {
+                List<T> list = mBlocks.get(LongObjectMap.key(br, bc));
+                if (list == null) {
+                    continue;
+                }
+                for (int i = 0, n = list.size(); i < n; i++) {
+                    T range = list.get(i);
+                    //只在区域内第一个覆盖它的块里输出, 避免重复
+                    if (intersects(range, r1, c1, r2, c2) &&
+                            Math.max(range.getFirstRow() >> BLOCK_SHIFT, br1) == br &&
+                            Math.max(range.getFirstCol() >> BLOCK_SHIFT, bc1) == bc) {
+                        out.add(range);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.lhg.excelview.core;
+
+/**
+ * 一个方向(行或列)的滚动计算: 开头/末尾冻结的部分固定在视口两端, 中间的body按scroll定位.
+ * scroll之后的结果直接放在字段里, 排版时读取.
+ */
+public abstract class ScrollHelper {
+    private final SizeIndex index = new SizeIndex();
+    public boolean indexInvalid = true;
+    public int headCount = 1, footCount = 0;//开头/末尾冻结的数量
+    public int startOffset;
+    public int startIndex;
+    public int bodyCount;
+    public int scroll;
+    public int headEnd, footStart;//[0, headEnd)和[footStart, count)是冻结的
+    public int headSize;//开头冻结部分的尺寸
+    public int footPos;//末尾冻结部分在视口中的起点, 内容不足一屏时紧跟在body后面
+
+    public abstract int getViewCount();
+
+    public abstract int getViewSize(int index);
+
+    public void invalidIndex() {
+        indexInvalid = true;
+    }
+
+    //行高/列宽变化时单点更新, 不需要重建整个索引
+    public void updateIndex(int i) {
+        if (!indexInvalid && i >= 0 && i < index.count) {
+            index.update(i, getViewSize(i));
+        }
+    }
+
+    //行/列插入删除移动后调整索引, 只读取插入的尺寸; 索引已经作废时什么都不做
+    public void insertIndex(int start, int count) {
+        if (!indexInvalid && start >= 0 && start <= index.count) {
+            index.insert(this, start, count);
+        }
+    }
+
+    public void removeIndex(int start, int count) {
+        if (!indexInvalid && start >= 0 && start + count <= index.count) {
+            index.remove(start, count);
+        }
+    }
+
+    public void moveIndex(int start, int count, int to) {
+        if (!indexInvalid && start >= 0 && start + count <= index.count && to >= 0 && to + count <= index.count) {
+            index.move(start, count, to);
+        }
+    }
+
+    //数量变多而没有通知时当作追加
+    public SizeIndex getIndex() {
+        int viewCount = getViewCount();
+        if (!indexInvalid && viewCount > index.count) {
+            index.insert(this, index.count, viewCount - index.count);
+        } else if (indexInvalid || index.count != viewCount) {
+            index.build(this, viewCount);
+            indexInvalid = false;
+        }
+        return index;
+    }
+
+    //数量不够时先保证开头冻结的
+    public int headEnd(int count) {
+        return Math.min(headCount, count);
+    }
+
+    public int footStart(int count) {
+        return Math.max(headEnd(count), count - footCount);
+    }
+
+    //右下部不能留空, 内容不足一屏时为0
+    public int maxScroll(int visibleSize) {
+        SizeIndex index = getIndex();
+        int headEnd = headEnd(index.count), footStart = footStart(index.count);
+        if (footStart <= headEnd) {
+            return 0;
+        }
+        int total = index.total();
+        return Math.max(0, Math.min(total - visibleSize, index.offsetOf(footStart) - index.offsetOf(headEnd) - 1));
+    }
+
+    //直接根据scroll定位第一个body, 耗时与滚动距离无关
+    public void scroll(int visibleSize, int newScroll) {
+        SizeIndex index = getIndex();
+        int viewCount = index.count;
+        headEnd = headEnd(viewCount);
+        footStart = footStart(viewCount);
+        headSize = index.offsetOf(headEnd);
+        int total = index.total();
+        int footSize = total - index.offsetOf(footStart);
+        if (footStart <= headEnd) {//没有body
+            startIndex = headEnd;
+            startOffset = 0;
+            bodyCount = 0;
+            scroll = 0;
+            footPos = headSize;
+            return;
+        }
+
+        scroll = Math.max(0, Math.min(maxScroll(visibleSize), newScroll));
+        footPos = Math.min(visibleSize, total - scroll) - footSize;
+
+        int start = headSize + scroll;//body第一个像素在内容中的位置
+        startIndex = Math.max(headEnd, Math.min(footStart - 1, index.indexAt(start)));
+        startOffset = start - index.offsetOf(startIndex);
+        int lastIndex = Math.min(footStart - 1, index.indexAt(scroll + footPos - 1));
+        bodyCount = Math.max(startIndex, lastIndex) - startIndex + 1;
+    }
+}
@@ -0,0 +1,121 @@
+package com.lhg.excelview.core;
+
+import java.util.Arrays;
+
+/**
+ * 行高/列宽的前缀和(树状数组), 按偏移找index和求index的偏移都是O(log n).
+ * 插入删除只重算受影响位置之后的节点, 追加时只计算新增的.
+ * 内容总尺寸不能超过int, 反正scrollX/scrollY也是int.
+ */
+public class SizeIndex {
+    private int[] tree = new int[1];//tree[0]不用
+    private int[] sizes = new int[0];//每个index的尺寸, 插入删除时平移, 不用重新向adapter要
+    public int count;
+    private int highBit;
+
+    public void build(ScrollHelper helper, int count) {
+        ensureCapacity(count);
+        this.count = count;
+        for (int i = 0; i < count; i++) {
+            sizes[i] = helper.getViewSize(i);
+        }
+        rebuildFrom(0);
+    }
+
+    //在start前插入count个, 只读取插入的尺寸; start == this.count时为追加, 只计算新增的节点
+    public void insert(ScrollHelper helper, int start, int count) {
+        ensureCapacity(this.count + count);
+        System.arraycopy(sizes, start, sizes, start + count, this.count - start);
+        for (int i = start; i < start + count; i++) {
+            sizes[i] = helper.getViewSize(i);
+        }
+        this.count += count;
+        rebuildFrom(start);
+    }
+
+    public void remove(int start, int count) {
+        System.arraycopy(sizes, start + count, sizes, start, this.count - start - count);
+        this.count -= count;
+        rebuildFrom(start);
+    }
+
+    //[start, start + count)移动到to开始的位置, to是移动之后的index
+    public void move(int start, int count, int to) {
+        int[] moved = Arrays.copyOfRange(sizes, start, start + count);
+        System.arraycopy(sizes, start + count, sizes, start, this.count - start - count);
+        System.arraycopy(sizes, to, sizes, to + count, this.count - count - to);
+        System.arraycopy(moved, 0, sizes, to, count);
+        rebuildFrom(Math.min(start, to));
+    }
+
+    private void ensureCapacity(int count) {
+        if (sizes.length < count) {
+            int capacity = Math.max(count, sizes.length + (sizes.length >> 1));
+            sizes = Arrays.copyOf(sizes, capacity);
+            tree = Arrays.copyOf(tree, capacity + 1);
+        }
+    }
+
+    //[0, start)的尺寸没变, 覆盖范围都在其中的节点(index <= start)不用动, 只重算后面的节点
+    private void rebuildFrom(int start) {
+        for (int i = start + 1; i <= count; i++) {
+            tree[i] = sizes[i - 1];
+        }
+        //前面完整的节点中父节点在后面的, 正好是offsetOf(start)经过的那些
+        for (int i = start; i > 0; i -= i & -i) {
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+        for (int i = start + 1; i <= count; i++) {
+            int parent = i + (i & -i);
+            if (parent <= count) {
+                tree[parent] += tree[i];
+            }
+        }
+        highBit = count == 0 ? 0 : Integer.highestOneBit(count);
+    }
+
+    //[0, index)的尺寸之和
+    public int offsetOf(int index) {
+        int sum = 0;
+        for (int i = index; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    public int sizeOf(int index) {
+        return sizes[index];
+    }
+
+    public int total() {
+        return offsetOf(count);
+    }
+
+    //offset所在的index, offset超出总尺寸时返回count
+    public int indexAt(int offset) {
+        int pos = 0;
+        int remain = offset;
+        for (int step = highBit; step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= count && tree[next] <= remain) {
+                pos = next;
+                remain -= tree[next];
+            }
+        }
+        return pos;
+    }
+
+    public void update(int index, int size) {
+        int delta = size - sizes[index];
+        if (delta == 0) {
+            return;
+        }
+        sizes[index] = size;
+        for (int i = index + 1; i <= count; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.lhg.excelview.core;
+
+/**
+ * 两次排版窗口之间的差异: body单元格的位置只和行列有关, 滚动时只需回收移出的、排版移入的.
+ * 冻结行只有body列会进出, 冻结行列交叉的角落不会变.
+ * 结果以一行中的一段列[colStart, colEnd)回调, 空段不回调.
+ */
+public abstract class WindowDiff {
+
+    //第row行的[colStart, colEnd)离开了窗口
+    protected abstract void onLeave(int row, int colStart, int colEnd);
+
+    //第row行的[colStart, colEnd)进入了窗口
+    protected abstract void onEnter(int row, int colStart, int colEnd);
+
+    public void diffLeaving(LayoutState old, LayoutState state, int rowCount, int colCount) {
+        int rowStart = state.firstBodyRow, rowEnd = rowStart + state.bodyRowCount;
+        int oldRowStart = old.firstBodyRow, oldRowEnd = oldRowStart + old.bodyRowCount;
+        int oldColStart = old.firstBodyCol, oldColEnd = oldColStart + old.bodyColCount;
+        for (int row = oldRowStart; row < oldRowEnd; row++) {
+            if (row < rowStart || row >= rowEnd) {
+                leave(row, 0, state.headColCount);
+                leave(row, state.footColStart, colCount);
+                leave(row, oldColStart, oldColEnd);
+            } else {
+                leavingCols(row, old, state);
+            }
+        }
+        for (int row = 0; row < state.headRowCount; row++) {
+            leavingCols(row, old, state);
+        }
+        for (int row = state.footRowStart; row < rowCount; row++) {
+            leavingCols(row, old, state);
+        }
+    }
+
+    //按行从上到下回调, body行在冻结行之前
+    public void diffEntering(LayoutState old, LayoutState state, int rowCount, int colCount) {
+        int rowStart = state.firstBodyRow, rowEnd = rowStart + state.bodyRowCount;
+        int colStart = state.firstBodyCol, colEnd = colStart + state.bodyColCount;
+        int oldRowStart = old.firstBodyRow, oldRowEnd = oldRowStart + old.bodyRowCount;
+        int oldColStart = old.firstBodyCol, oldColEnd = oldColStart + old.bodyColCount;
+        for (int row = rowStart; row < rowEnd; row++) {
+            if (row >= oldRowStart && row < oldRowEnd) {
+                enteringCols(row, old, state);
+            } else {
+                enter(row, 0, state.headColCount);
+                enter(row, colStart, colEnd);
+                enter(row, state.footColStart, colCount);
+            }
+        }
+        if (colStart != oldColStart || colEnd != oldColEnd) {
+            for (int row = 0; row < state.headRowCount; row++) {
+                enteringCols(row, old, state);
+            }
+            for (int row = state.footRowStart; row < rowCount; row++) {
+                enteringCols(row, old, state);
+            }
+        }
+    }
+
+    //第row行移出body窗口的列
+    private void leavingCols(int row, LayoutState old, LayoutState state) {
+        int colStart = state.firstBodyCol, colEnd = colStart + state.bodyColCount;
+        int oldColStart = old.firstBodyCol, oldColEnd = oldColStart + old.bodyColCount;
+        leave(row, oldColStart, Math.min(oldColEnd, colStart));
+        leave(row, Math.max(oldColStart, colEnd), oldColEnd);
+    }
+
+    //第row行移入body窗口的列
+    private void enteringCols(int row, LayoutState old, LayoutState state) {
+        int colStart = state.firstBodyCol, colEnd = colStart + state.bodyColCount;
+        int oldColStart = old.firstBodyCol, oldColEnd = oldColStart + old.bodyColCount;
+        enter(row, colStart, Math.min(colEnd, oldColStart));
+        enter(row, Math.max(colStart, oldColEnd), colEnd);
+    }
+
+    private void leave(int row, int colStart, int colEnd) {
+        if (colStart < colEnd) {
+            onLeave(row, colStart, colEnd);
+        }
+    }
+
+    private void enter(int row, int colStart, int colEnd) {
+        if (colStart < colEnd) {
+            onEnter(row, colStart, colEnd);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.lhg.excelview.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void putGetRemove() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(LongObjectMap.key(1, 2), "a");
+        map.put(LongObjectMap.key(2, 1), "b");
+        map.put(LongObjectMap.key(1, 2), "c");
+        assertEquals(2, map.size());
+        assertEquals("c", map.get(LongObjectMap.key(1, 2)));
+        assertEquals("b", map.get(LongObjectMap.key(2, 1)));
+        assertNull(map.get(LongObjectMap.key(0, 0)));
+
+        assertEquals("c", map.remove(LongObjectMap.key(1, 2)));
+        assertNull(map.remove(LongObjectMap.key(1, 2)));
+        assertNull(map.get(LongObjectMap.key(1, 2)));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void keyKeepsRowAndCol() {
+        long key = LongObjectMap.key(123456, Integer.MAX_VALUE);
+        assertEquals(123456, (int) (key >> 32));
+        assertEquals(Integer.MAX_VALUE, (int) key);
+    }
+
+    //删除后同一探测链上后面的key前移, 都还能找到
+    @Test
+    public void removeKeepsProbeChains() {
+        LongObjectMap<Integer> map = new LongObjectMap<>();
+        List<Long> keys = new ArrayList<>();
+        //64个槽位放40个, 不扩容, 一定有探测链
+        for (int i = 0; i < 40; i++) {
+            long key = LongObjectMap.key(i / 8, i % 8);
+            keys.add(key);
+            map.put(key, i);
+        }
+        assertEquals(64, map.capacity());
+        for (int i = 0; i < keys.size(); i += 2) {
+            assertEquals(Integer.valueOf(i), map.remove(keys.get(i)));
+        }
+        for (int i = 0; i < keys.size(); i++) {
+            assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(keys.get(i)));
+        }
+        assertEquals(20, map.size());
+        for (int i = 1; i < keys.size(); i += 2) {
+            map.remove(keys.get(i));
+        }
+        assertEquals(0, map.size());
+        for (int i = 0; i < map.capacity(); i++) {
+            assertNull(map.valueAt(i));
+        }
+    }
+
+    //随机插入删除, 和HashMap对照; 包括扩容和探测链绕回表头的情况
+    @Test
+    public void matchesHashMap() {
+        Random random = new Random(1);
+        LongObjectMap<Integer> map = new LongObjectMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            long key = LongObjectMap.key(random.nextInt(100), random.nextInt(30));
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                expected.put(key, i);
+                map.put(key, i);
+            }
+            if (i % 1000 == 0) {
+                assertEquals(expected.size(), map.size());
+                for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+                    assertEquals(entry.getValue(), map.get(entry.getKey()));
+                }
+            }
+        }
+        int count = 0;
+        for (int i = 0; i < map.capacity(); i++) {
+            Integer value = map.valueAt(i);
+            if (value != null) {
+                assertEquals(expected.get(map.keyAt(i)), value);
+                count++;
+            }
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void clear() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        for (int i = 0; i < 100; i++) {
+            map.put(LongObjectMap.key(i, i), "v");
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(LongObjectMap.key(5, 5)));
+        map.put(LongObjectMap.key(5, 5), "w");
+        assertEquals("w", map.get(LongObjectMap.key(5, 5)));
+    }
+}
@@ -0,0 +1,176 @@
+package com.lhg.excelview.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RangeIndexTest {
+
+    private static class Range implements CellRange {
+        final int r1, c1, r2, c2;
+
+        Range(int r1, int c1, int r2, int c2) {
+            this.r1 = r1;
+            this.c1 = c1;
+            this.r2 = r2;
+            this.c2 = c2;
+        }
+
+        @Override
+        public int getFirstRow() {
+            return r1;
+        }
+
+        @Override
+        public int getFirstCol() {
+            return c1;
+        }
+
+        @Override
+        public int getLastRow() {
+            return r2;
+        }
+
+        @Override
+        public int getLastCol() {
+            return c2;
+        }
+    }
+
+    @Test
+    public void singleCellNotIndexed() {
+        RangeIndex<Range> index = new RangeIndex<>();
+        index.add(new Range(3, 3, 3, 3));
+        index.add(null);
+        assertEquals(0, index.size());
+        assertNull(index.find(3, 3));
+    }
+
+    //跨16x16块边界的区域在两边的块都能找到
+    @Test
+    public void findAcrossBlockEdge() {
+        RangeIndex<Range> index = new RangeIndex<>();
+        Range range = new Range(15, 15, 16, 16);
+        index.add(range);
+        assertSame(range, index.find(15, 15));
+        assertSame(range, index.find(15, 16));
+        assertSame(range, index.find(16, 15));
+        assertSame(range, index.find(16, 16));
+        assertNull(index.find(14, 15));
+        assertNull(index.find(17, 16));
+        assertNull(index.find(16, 17));
+    }
+
+    //同一块里不相交的区域不输出, 跨多块的区域只输出一次
+    @Test
+    public void queryOutputsOnce() {
+        RangeIndex<Range> index = new RangeIndex<>();
+        Range big = new Range(0, 0, 40, 40);
+        Range small = new Range(0, 0, 1, 1);
+        index.add(big);
+        index.add(small);
+        List<Range> out = new ArrayList<>();
+        index.query(0, 0, 100, 100, out);
+        assertEquals(2, out.size());
+
+        out.clear();
+        index.query(20, 20, 50, 50, out);
+        assertEquals(1, out.size());
+        assertSame(big, out.get(0));
+
+        out.clear();
+        index.query(5, 5, 10, 10, out);
+        assertEquals(1, out.size());
+        assertSame(big, out.get(0));
+
+        out.clear();
+        index.query(41, 0, 60, 60, out);
+        assertTrue(out.isEmpty());
+    }
+
+    @Test
+    public void removeFromAllBlocks() {
+        RangeIndex<Range> index = new RangeIndex<>();
+        Range range = new Range(10, 10, 33, 20);
+        index.add(range);
+        assertTrue(index.remove(range));
+        assertFalse(index.remove(range));
+        assertEquals(0, index.size());
+        assertNull(index.find(10, 10));
+        assertNull(index.find(33, 20));
+        List<Range> out = new ArrayList<>();
+        index.query(0, 0, 100, 100, out);
+        assertTrue(out.isEmpty());
+    }
+
+    //随机的不重叠区域和随机窗口, 和逐个比较的结果对照
+    @Test
+    public void matchesLinearScan() {
+        Random random = new Random(2);
+        RangeIndex<Range> index = new RangeIndex<>();
+        List<Range> ranges = new ArrayList<>();
+        boolean[][] used = new boolean[200][60];
+        for (int i = 0; i < 300; i++) {
+            int r1 = random.nextInt(200), c1 = random.nextInt(60);
+            int r2 = Math.min(199, r1 + random.nextInt(20)), c2 = Math.min(59, c1 + random.nextInt(20));
+            if (!markFree(used, r1, c1, r2, c2)) {
+                continue;
+            }
+            Range range = new Range(r1, c1, r2, c2);
+            ranges.add(range);
+            index.add(range);
+        }
+        for (int row = 0; row < 200; row++) {
+            for (int col = 0; col < 60; col++) {
+                Range expected = null;
+                for (Range range : ranges) {
+                    if ((range.r1 != range.r2 || range.c1 != range.c2) &&
+                            row >= range.r1 && row <= range.r2 && col >= range.c1 && col <= range.c2) {
+                        expected = range;
+                    }
+                }
+                assertSame(expected, index.find(row, col));
+            }
+        }
+        for (int i = 0; i < 500; i++) {
+            int r1 = random.nextInt(200), c1 = random.nextInt(60);
+            int r2 = r1 + random.nextInt(50), c2 = c1 + random.nextInt(30);
+            HashSet<Range> expected = new HashSet<>();
+            for (Range range : ranges) {
+                if ((range.r1 != range.r2 || range.c1 != range.c2) &&
+                        range.r1 <= r2 && range.r2 >= r1 && range.c1 <= c2 && range.c2 >= c1) {
+                    expected.add(range);
+                }
+            }
+            List<Range> out = new ArrayList<>();
+            index.query(r1, c1, r2, c2, out);
+            assertEquals(expected.size(), out.size());
+            assertEquals(expected, new HashSet<>(out));
+        }
+    }
+
+    private static boolean markFree(boolean[][] used, int r1, int c1, int r2, int c2) {
+        for (int row = r1; row <= r2; row++) {
+            for (int col = c1; col <= c2; col++) {
+                if (used[row][col]) {
+                    return false;
+                }
+            }
+        }
+        for (int row = r1; row <= r2; row++) {
+            for (int col = c1; col <= c2; col++) {
+                used[row][col] = true;
+            }
+        }
+        return true;
+    }
+}
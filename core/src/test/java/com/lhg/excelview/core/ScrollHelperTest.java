@@ -0,0 +1,156 @@
+package com.lhg.excelview.core;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScrollHelperTest {
+
+    private static class Helper extends ScrollHelper {
+        final int[] sizes;
+
+        Helper(int headCount, int footCount, int... sizes) {
+            this.headCount = headCount;
+            this.footCount = footCount;
+            this.sizes = sizes;
+        }
+
+        @Override
+        public int getViewCount() {
+            return sizes.length;
+        }
+
+        @Override
+        public int getViewSize(int index) {
+            return sizes[index];
+        }
+
+        int offsetOf(int index) {
+            int sum = 0;
+            for (int i = 0; i < index; i++) {
+                sum += sizes[i];
+            }
+            return sum;
+        }
+    }
+
+    @Test
+    public void emptyAdapter() {
+        Helper helper = new Helper(1, 1);
+        assertEquals(0, helper.maxScroll(500));
+        helper.scroll(500, 100);
+        assertEquals(0, helper.scroll);
+        assertEquals(0, helper.bodyCount);
+        assertEquals(0, helper.headSize);
+        assertEquals(0, helper.footPos);
+    }
+
+    //只有冻结的行, 末尾冻结的紧跟在开头冻结的后面
+    @Test
+    public void emptyBody() {
+        Helper helper = new Helper(2, 1, 30, 40, 50);
+        assertEquals(0, helper.maxScroll(100));
+        helper.scroll(100, 20);
+        assertEquals(0, helper.scroll);
+        assertEquals(0, helper.bodyCount);
+        assertEquals(2, helper.headEnd);
+        assertEquals(2, helper.footStart);
+        assertEquals(70, helper.headSize);
+        assertEquals(70, helper.footPos);
+    }
+
+    //内容不足一屏时不能滚动, body全部可见, 末尾冻结的跟在body后面
+    @Test
+    public void contentShorterThanScreen() {
+        Helper helper = new Helper(1, 1, 20, 30, 30, 30, 20);
+        assertEquals(0, helper.maxScroll(500));
+        helper.scroll(500, 100);
+        assertEquals(0, helper.scroll);
+        assertEquals(1, helper.startIndex);
+        assertEquals(0, helper.startOffset);
+        assertEquals(3, helper.bodyCount);
+        assertEquals(20, helper.headSize);
+        assertEquals(110, helper.footPos);
+    }
+
+    //滚到底时末尾冻结的贴着视口底部
+    @Test
+    public void scrollToEnd() {
+        Helper helper = new Helper(1, 1, 10, 30, 30, 30, 30, 10);
+        assertEquals(40, helper.maxScroll(100));
+        helper.scroll(100, 1000);
+        assertEquals(40, helper.scroll);
+        assertEquals(2, helper.startIndex);
+        assertEquals(10, helper.startOffset);
+        assertEquals(3, helper.bodyCount);
+        assertEquals(90, helper.footPos);
+    }
+
+    //随机的尺寸/冻结数量/视口/滚动距离, 和逐个累加算出的位置对照
+    @Test
+    public void matchesLinearScan() {
+        Random random = new Random(6);
+        for (int i = 0; i < 3000; i++) {
+            int[] sizes = new int[random.nextInt(30)];
+            for (int j = 0; j < sizes.length; j++) {
+                sizes[j] = 1 + random.nextInt(50);
+            }
+            Helper helper = new Helper(random.nextInt(3), random.nextInt(3), sizes);
+            int visibleSize = 1 + random.nextInt(600);
+            int newScroll = random.nextInt(1000) - 100;
+            check(helper, visibleSize, newScroll);
+        }
+    }
+
+    private static void check(Helper helper, int visibleSize, int newScroll) {
+        int count = helper.sizes.length;
+        int headEnd = Math.min(helper.headCount, count);
+        int footStart = Math.max(headEnd, count - helper.footCount);
+        int total = helper.offsetOf(count);
+        int headSize = helper.offsetOf(headEnd);
+        int bodySize = helper.offsetOf(footStart) - headSize;
+        int footSize = total - helper.offsetOf(footStart);
+        int maxScroll = bodySize == 0 ? 0 : Math.max(0, Math.min(total - visibleSize, bodySize - 1));
+        assertEquals(maxScroll, helper.maxScroll(visibleSize));
+
+        helper.scroll(visibleSize, newScroll);
+        assertEquals(headEnd, helper.headEnd);
+        assertEquals(footStart, helper.footStart);
+        assertEquals(headSize, helper.headSize);
+        assertEquals(Math.max(0, Math.min(maxScroll, newScroll)), helper.scroll);
+        if (bodySize == 0) {
+            assertEquals(0, helper.bodyCount);
+            assertEquals(headSize, helper.footPos);
+            return;
+        }
+        int scroll = helper.scroll;
+        assertEquals(Math.min(visibleSize, total - scroll) - footSize, helper.footPos);
+
+        //第一个body包含body可见部分的第一个像素
+        int start = headSize + scroll;
+        int startIndex = footStart - 1;
+        for (int i = headEnd; i < footStart; i++) {
+            if (helper.offsetOf(i + 1) > start) {
+                startIndex = i;
+                break;
+            }
+        }
+        assertEquals(startIndex, helper.startIndex);
+        assertEquals(start - helper.offsetOf(startIndex), helper.startOffset);
+
+        //最后一个body包含footPos之前的最后一个像素, 视口里放不下body时至少有一个
+        int last = scroll + helper.footPos - 1;
+        int lastIndex = footStart - 1;
+        for (int i = startIndex; i < footStart; i++) {
+            if (helper.offsetOf(i + 1) > last) {
+                lastIndex = i;
+                break;
+            }
+        }
+        assertEquals(Math.max(startIndex, lastIndex) - startIndex + 1, helper.bodyCount);
+        assertTrue(helper.startIndex + helper.bodyCount <= footStart);
+    }
+}
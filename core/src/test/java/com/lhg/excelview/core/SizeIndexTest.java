@@ -0,0 +1,169 @@
+package com.lhg.excelview.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SizeIndexTest {
+
+    //尺寸放在list里, 插入删除时和索引一起改
+    private static class Helper extends ScrollHelper {
+        final List<Integer> sizes = new ArrayList<>();
+
+        @Override
+        public int getViewCount() {
+            return sizes.size();
+        }
+
+        @Override
+        public int getViewSize(int index) {
+            return sizes.get(index);
+        }
+    }
+
+    private static int linearOffset(List<Integer> sizes, int index) {
+        int sum = 0;
+        for (int i = 0; i < index; i++) {
+            sum += sizes.get(i);
+        }
+        return sum;
+    }
+
+    //前缀和不超过offset的最大index, 和树上二分的定义一样: 尺寸为0的跳过, 超出总尺寸时为count
+    private static int linearIndexAt(List<Integer> sizes, int offset) {
+        int index = 0, sum = 0;
+        for (int i = 0; i < sizes.size(); i++) {
+            sum += sizes.get(i);
+            if (sum > offset) {
+                break;
+            }
+            index = i + 1;
+        }
+        return index;
+    }
+
+    private static void assertMatches(List<Integer> sizes, SizeIndex index) {
+        assertEquals(sizes.size(), index.count);
+        for (int i = 0; i <= sizes.size(); i++) {
+            assertEquals(linearOffset(sizes, i), index.offsetOf(i));
+        }
+        for (int i = 0; i < sizes.size(); i++) {
+            assertEquals(sizes.get(i).intValue(), index.sizeOf(i));
+        }
+        int total = linearOffset(sizes, sizes.size());
+        assertEquals(total, index.total());
+        for (int offset = 0; offset <= total + 2; offset++) {
+            assertEquals(linearIndexAt(sizes, offset), index.indexAt(offset));
+        }
+    }
+
+    private static int randomSize(Random random) {
+        return random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(30);
+    }
+
+    @Test
+    public void empty() {
+        Helper helper = new Helper();
+        SizeIndex index = new SizeIndex();
+        index.build(helper, 0);
+        assertEquals(0, index.total());
+        assertEquals(0, index.indexAt(0));
+        assertEquals(0, index.indexAt(100));
+    }
+
+    //offset正好在边界上时属于后一个
+    @Test
+    public void indexAtBoundary() {
+        Helper helper = new Helper();
+        helper.sizes.add(10);
+        helper.sizes.add(20);
+        helper.sizes.add(30);
+        SizeIndex index = new SizeIndex();
+        index.build(helper, 3);
+        assertEquals(0, index.indexAt(9));
+        assertEquals(1, index.indexAt(10));
+        assertEquals(2, index.indexAt(30));
+        assertEquals(2, index.indexAt(59));
+        assertEquals(3, index.indexAt(60));
+    }
+
+    @Test
+    public void buildMatchesLinearScan() {
+        Random random = new Random(4);
+        for (int n = 0; n < 70; n++) {
+            Helper helper = new Helper();
+            for (int i = 0; i < n; i++) {
+                helper.sizes.add(randomSize(random));
+            }
+            SizeIndex index = new SizeIndex();
+            index.build(helper, n);
+            assertMatches(helper.sizes, index);
+        }
+    }
+
+    //随机的单点更新/插入/删除/移动/追加, 每一步都和线性扫描对照
+    @Test
+    public void editsMatchLinearScan() {
+        Random random = new Random(5);
+        Helper helper = new Helper();
+        SizeIndex index = new SizeIndex();
+        for (int i = 0; i < 20; i++) {
+            helper.sizes.add(randomSize(random));
+        }
+        index.build(helper, helper.sizes.size());
+        for (int step = 0; step < 1500; step++) {
+            List<Integer> sizes = helper.sizes;
+            int n = sizes.size();
+            switch (random.nextInt(5)) {
+                case 0:
+                    if (n > 0) {
+                        int i = random.nextInt(n), size = randomSize(random);
+                        sizes.set(i, size);
+                        index.update(i, size);
+                    }
+                    break;
+                case 1: {
+                    int start = random.nextInt(n + 1), count = random.nextInt(6);
+                    for (int i = 0; i < count; i++) {
+                        sizes.add(start, randomSize(random));
+                    }
+                    index.insert(helper, start, count);
+                    break;
+                }
+                case 2: {
+                    int start = random.nextInt(n + 1), count = random.nextInt(Math.min(6, n - start) + 1);
+                    sizes.subList(start, start + count).clear();
+                    index.remove(start, count);
+                    break;
+                }
+                case 3: {
+                    int count = random.nextInt(Math.min(6, n) + 1);
+                    int start = random.nextInt(n - count + 1), to = random.nextInt(n - count + 1);
+                    List<Integer> moved = new ArrayList<>(sizes.subList(start, start + count));
+                    sizes.subList(start, start + count).clear();
+                    sizes.addAll(to, moved);
+                    index.move(start, count, to);
+                    break;
+                }
+                default: {
+                    int count = random.nextInt(40);
+                    for (int i = 0; i < count; i++) {
+                        sizes.add(randomSize(random));
+                    }
+                    index.insert(helper, n, count);
+                    break;
+                }
+            }
+            int size = sizes.size();
+            if (size > 300) {//不让越来越长
+                sizes.subList(100, size).clear();
+                index.remove(100, size - 100);
+            }
+            assertMatches(sizes, index);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.lhg.excelview.core;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WindowDiffTest {
+    private static final int ROW_COUNT = 100, COL_COUNT = 30;
+
+    //把回调的每一段展开成格子, 同一个格子回调两次时失败
+    private static class Recorder extends WindowDiff {
+        final Set<Long> left = new HashSet<>();
+        final Set<Long> entered = new HashSet<>();
+
+        @Override
+        protected void onLeave(int row, int colStart, int colEnd) {
+            assertTrue(colStart < colEnd);
+            for (int col = colStart; col < colEnd; col++) {
+                assertTrue(left.add(LongObjectMap.key(row, col)));
+            }
+        }
+
+        @Override
+        protected void onEnter(int row, int colStart, int colEnd) {
+            assertTrue(colStart < colEnd);
+            for (int col = colStart; col < colEnd; col++) {
+                assertTrue(entered.add(LongObjectMap.key(row, col)));
+            }
+        }
+
+        void diff(LayoutState old, LayoutState state) {
+            diffLeaving(old, state, ROW_COUNT, COL_COUNT);
+            diffEntering(old, state, ROW_COUNT, COL_COUNT);
+        }
+    }
+
+    private static LayoutState window(int headRows, int footRowStart, int headCols, int footColStart,
+                                      int firstRow, int rowCount, int firstCol, int colCount) {
+        LayoutState state = new LayoutState();
+        state.headRowCount = headRows;
+        state.footRowStart = footRowStart;
+        state.headColCount = headCols;
+        state.footColStart = footColStart;
+        state.firstBodyRow = firstRow;
+        state.bodyRowCount = rowCount;
+        state.firstBodyCol = firstCol;
+        state.bodyColCount = colCount;
+        return state;
+    }
+
+    private static Set<Long> visibleCells(LayoutState state) {
+        Set<Long> cells = new HashSet<>();
+        for (int row = 0; row < ROW_COUNT; row++) {
+            for (int col = 0; col < COL_COUNT; col++) {
+                if (state.isCellVisible(row, col)) {
+                    cells.add(LongObjectMap.key(row, col));
+                }
+            }
+        }
+        return cells;
+    }
+
+    private static Set<Long> minus(Set<Long> a, Set<Long> b) {
+        Set<Long> result = new HashSet<>(a);
+        result.removeAll(b);
+        return result;
+    }
+
+    @Test
+    public void sameWindowHasNoDiff() {
+        LayoutState state = window(1, ROW_COUNT, 1, COL_COUNT, 10, 20, 5, 10);
+        Recorder recorder = new Recorder();
+        recorder.diff(state, state);
+        assertTrue(recorder.left.isEmpty());
+        assertTrue(recorder.entered.isEmpty());
+    }
+
+    //向下滚两行: 上面两行的body列和冻结列离开, 下面两行进入, 冻结行不变
+    @Test
+    public void scrollDown() {
+        LayoutState old = window(1, ROW_COUNT, 1, COL_COUNT, 10, 20, 5, 10);
+        LayoutState state = window(1, ROW_COUNT, 1, COL_COUNT, 12, 20, 5, 10);
+        Recorder recorder = new Recorder();
+        recorder.diff(old, state);
+        assertEquals(2 * 11, recorder.left.size());
+        assertEquals(2 * 11, recorder.entered.size());
+        assertTrue(recorder.left.contains(LongObjectMap.key(10, 0)));
+        assertTrue(recorder.left.contains(LongObjectMap.key(11, 14)));
+        assertTrue(recorder.entered.contains(LongObjectMap.key(30, 0)));
+        assertTrue(recorder.entered.contains(LongObjectMap.key(31, 14)));
+    }
+
+    //向右滚: 冻结行也跟着进出body列
+    @Test
+    public void scrollRightMovesFrozenRows() {
+        LayoutState old = window(2, 98, 0, COL_COUNT, 10, 5, 5, 10);
+        LayoutState state = window(2, 98, 0, COL_COUNT, 10, 5, 8, 10);
+        Recorder recorder = new Recorder();
+        recorder.diff(old, state);
+        assertEquals(minus(visibleCells(old), visibleCells(state)), recorder.left);
+        assertEquals(minus(visibleCells(state), visibleCells(old)), recorder.entered);
+        assertTrue(recorder.left.contains(LongObjectMap.key(0, 5)));
+        assertTrue(recorder.left.contains(LongObjectMap.key(99, 7)));
+        assertTrue(recorder.entered.contains(LongObjectMap.key(1, 17)));
+        assertEquals(3 * (5 + 4), recorder.left.size());
+    }
+
+    //两个窗口不重叠时整个换掉
+    @Test
+    public void jump() {
+        LayoutState old = window(1, 99, 1, 29, 1, 10, 1, 5);
+        LayoutState state = window(1, 99, 1, 29, 50, 10, 20, 5);
+        Recorder recorder = new Recorder();
+        recorder.diff(old, state);
+        assertEquals(minus(visibleCells(old), visibleCells(state)), recorder.left);
+        assertEquals(minus(visibleCells(state), visibleCells(old)), recorder.entered);
+    }
+
+    //随机窗口, 和逐格比较两次的可见集合对照
+    @Test
+    public void matchesVisibleCells() {
+        Random random = new Random(3);
+        for (int i = 0; i < 2000; i++) {
+            int headRows = random.nextInt(3), footRowStart = ROW_COUNT - random.nextInt(3);
+            int headCols = random.nextInt(3), footColStart = COL_COUNT - random.nextInt(3);
+            LayoutState old = randomWindow(random, headRows, footRowStart, headCols, footColStart);
+            LayoutState state = randomWindow(random, headRows, footRowStart, headCols, footColStart);
+            Recorder recorder = new Recorder();
+            recorder.diff(old, state);
+            assertEquals(minus(visibleCells(old), visibleCells(state)), recorder.left);
+            assertEquals(minus(visibleCells(state), visibleCells(old)), recorder.entered);
+        }
+    }
+
+    private static LayoutState randomWindow(Random random, int headRows, int footRowStart, int headCols, int footColStart) {
+        int rowCount = random.nextInt(Math.min(30, footRowStart - headRows) + 1);
+        int colCount = random.nextInt(Math.min(10, footColStart - headCols) + 1);
+        int firstRow = headRows + random.nextInt(footRowStart - headRows - rowCount + 1);
+        int firstCol = headCols + random.nextInt(footColStart - headCols - colCount + 1);
+        return window(headRows, footRowStart, headCols, footColStart, firstRow, rowCount, firstCol, colCount);
+    }
+}
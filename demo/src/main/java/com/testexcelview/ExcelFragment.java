@@ -41,6 +41,7 @@ public class ExcelFragment extends Fragment {
         super.onActivityCreated(savedInstanceState);
         excelView = getView().findViewById(R.id.excelView);
         excelView.setAdapter(adapter = new MyAdapter());
+        excelView.prewarmViews(0, 40);
         excelView.setBackgroundColor(Color.YELLOW);
         setHasOptionsMenu(true);
     }
@@ -86,14 +87,11 @@ public class ExcelFragment extends Fragment {
 
     class MyAdapter extends ExcelView.ExcelAdapter {
         int newCount = 0;
-        @Override
-        public Span querySpan(int row, int col) {
+
+        MyAdapter() {
             for (Span span : spans) {
-                if (span.contains(row, col)) {
-                    return span;
-                }
+                getSpanIndex().add(span);
             }
-            return null;
         }
 
         @Override
@@ -124,27 +122,33 @@ public class ExcelFragment extends Fragment {
             return 0;
         }
 
+        @Override
+        public View createCellView(Context context, int viewType) {
+            View view;
+            if (viewType == 1) {
+                view = new ImageView(context);
+                view.setOnClickListener(v -> Toast.makeText(context, "image click", Toast.LENGTH_SHORT).show());
+            } else {
+                view = new TextView(context);
+                view.setBackgroundColor(Color.WHITE);
+            }
+            newCount++;
+            Log.i(TAG, "newCount=" + newCount);
+            return view;
+        }
+
         @Override
         public View getCellView(Context context, View convertView, int row, int col) {
+            if (convertView == null) {
+                convertView = createCellView(context, getCellViewType(row, col));
+            }
             if (getCellViewType(row, col) == 1) {
-                if (convertView == null) {
-                    convertView = new ImageView(context);
-                    convertView.setOnClickListener(v -> Toast.makeText(context, "image click", Toast.LENGTH_SHORT).show());
-                    newCount++;
-                    Log.i(TAG, "newCount=" + newCount);
-                }
                 ImageView tv = (ImageView) convertView;
                 tv.setScaleType(ImageView.ScaleType.CENTER_CROP);
                 Glide.with(tv).load("https://timgsa.baidu.com/timg?image&quality=80&size=b9999_10000&sec=1557473353600&di=bc560eeaeddeb821d7360e8c4e344675&imgtype=0&src=http%3A%2F%2Fimg2.ph.126.net%2F2zB3_wWPXlEW0RdwQa8d6A%3D%3D%2F2268688312388037455.jpg").into(tv);
                 return convertView;
             }
 
-            if (convertView == null) {
-                convertView = new TextView(context);
-                convertView.setBackgroundColor(Color.WHITE);
-                newCount++;
-                Log.i(TAG, "newCount=" + newCount);
-            }
             TextView tv = (TextView) convertView;
             tv.setGravity(Gravity.CENTER);
             tv.setText(String.format("%d, %d", row, col));
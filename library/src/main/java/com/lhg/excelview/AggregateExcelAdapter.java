@@ -0,0 +1,941 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.annotation.MainThread;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 在source最后加一行汇总(合计/平均/最小/最大/计数), 配合ExcelView.setFrozenFooterRows(1)固定在底部.
+ * 每列的数值(ExcelAdapter.getCellValue)按64行一块汇总, 块放在一棵线段树里, 只分配这一列的汇总函数用到的值;
+ * 第一次用到时在后台线程建树, 建好之前汇总行显示占位文字.
+ * source的newCellReader不为null时直接在后台读数值, 否则主线程每次取一批交给后台.
+ * 单元格变化只重新读所在的块再更新树, 末尾追加的行只读新的行接在树后面, 不重建;
+ * 任意行区间和选区的汇总是O(log n)加上两头不完整的块各最多64行.
+ * source只是重新排序(notifyRowsReordered)时整列的汇总不变, 保留树并在后台按新顺序重建;
+ * source是SortFilterExcelAdapter时汇总的就是筛选后显示的行.
+ * 其他行原样转发给source, source的变化通知也会转发出去.
+ */
+public class AggregateExcelAdapter extends ExcelView.ExcelAdapter {
+    public static final int FUNCTION_NONE = 0;//显示setLabel的文字
+    public static final int FUNCTION_SUM = 1;
+    public static final int FUNCTION_AVG = 2;
+    public static final int FUNCTION_MIN = 3;
+    public static final int FUNCTION_MAX = 4;
+    public static final int FUNCTION_COUNT = 5;
+    //不会和source的viewType冲突
+    public static final int VIEW_TYPE_AGGREGATE = Integer.MIN_VALUE;
+    private static final int LOAD_BATCH_ROWS = 4096;//主线程每次取的行数
+    private static Executor sDefaultExecutor;
+
+    private final ExcelView.ExcelAdapter mSource;
+    private final int mDataStartRow;//之前的是表头行, 不参与汇总
+    private int mDefaultFunction = FUNCTION_SUM;
+    private final SparseIntArray mFunctions = new SparseIntArray();
+    private final SparseArray<CharSequence> mLabels = new SparseArray<>();
+    private int mRowHeight = -1;
+    private final DecimalFormat mFormat = new DecimalFormat("#,##0.##");
+    //按列懒加载, 结构变化后整体作废
+    private AggregateTree[] mTrees = new AggregateTree[0];
+    private CharSequence[] mTexts = new CharSequence[0];
+    private Load[] mLoads = new Load[0];//每列正在进行的加载, 只在主线程访问
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private Executor mExecutor;
+    private CharSequence mPlaceholder = "\u2026";
+    private final Aggregate mTmp = new Aggregate();
+    private final ExcelView.TextCellRenderer mRenderer = new ExcelView.TextCellRenderer() {
+        @Override
+        public CharSequence getText(int row, int col) {
+            return getCellText(row, col);
+        }
+    };
+
+    public AggregateExcelAdapter(ExcelView.ExcelAdapter source) {
+        this(source, 1);
+    }
+
+    public AggregateExcelAdapter(ExcelView.ExcelAdapter source, int dataStartRow) {
+        mSource = source;
+        mDataStartRow = dataStartRow;
+        mRenderer.setBackgroundColor(Color.LTGRAY);
+        mRenderer.setGravity(Gravity.RIGHT | Gravity.CENTER_VERTICAL);
+        source.registerDataSetObserver(mSourceObserver);
+    }
+
+    public ExcelView.ExcelAdapter getSource() {
+        return mSource;
+    }
+
+    public ExcelView.TextCellRenderer getAggregateRenderer() {
+        return mRenderer;
+    }
+
+    //汇总行的行号
+    public int getAggregateRow() {
+        return mSource.getRowCount();
+    }
+
+    //没有单独设置的列用这个, 默认FUNCTION_SUM; 没有数值的列不显示
+    @MainThread
+    public void setDefaultFunction(int function) {
+        mDefaultFunction = function;
+        onAggregateChanged();
+    }
+
+    @MainThread
+    public void setFunction(int col, int function) {
+        synchronized (this) {
+            mFunctions.put(col, function);
+        }
+        onAggregateChanged();
+    }
+
+    public synchronized int getFunction(int col) {
+        return mFunctions.get(col, mDefaultFunction);
+    }
+
+    //FUNCTION_NONE的列显示的文字, 比如第0列的"合计"
+    @MainThread
+    public void setLabel(int col, CharSequence label) {
+        synchronized (this) {
+            mLabels.put(col, label);
+        }
+        setFunction(col, FUNCTION_NONE);
+    }
+
+    //树还没建好时汇总行显示的文字
+    @MainThread
+    public void setPlaceholder(CharSequence placeholder) {
+        mPlaceholder = placeholder;
+        onAggregateChanged();
+    }
+
+    //默认所有汇总adapter共用一个后台线程
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    private Executor getExecutor() {
+        if (mExecutor != null) {
+            return mExecutor;
+        }
+        synchronized (AggregateExcelAdapter.class) {
+            if (sDefaultExecutor == null) {
+                sDefaultExecutor = Executors.newSingleThreadExecutor(ExcelView.backgroundThreadFactory("ExcelView-aggregate"));
+            }
+            return sDefaultExecutor;
+        }
+    }
+
+    //<0时和第0行一样高
+    @MainThread
+    public void setAggregateRowHeight(int height) {
+        mRowHeight = height;
+        notifyRowHeightChanged(getAggregateRow());
+    }
+
+    //这一列的树已经建好, 否则getAggregate返回空的结果并开始在后台建树, 建好后通知汇总行变化
+    @MainThread
+    public synchronized boolean isAggregateReady(int col) {
+        return col >= 0 && col < mSource.getColCount() && obtainTree(col) != null;
+    }
+
+    //[dataStartRow, source行数)的汇总, 结果写到out
+    public synchronized Aggregate getAggregate(int col, Aggregate out) {
+        return getAggregate(col, mDataStartRow, mSource.getRowCount(), out);
+    }
+
+    //[rowStart, rowEnd)的汇总, 比如选中的行; 两头不完整的块从source读.
+    //source重新排序后、新的树建好之前只有整列的汇总可用, 其他区间返回空的结果
+    @MainThread
+    public synchronized Aggregate getAggregate(int col, int rowStart, int rowEnd, Aggregate out) {
+        out.reset();
+        AggregateTree tree = col >= 0 && col < mSource.getColCount() ? obtainTree(col) : null;
+        if (tree != null) {
+            query(tree, col, rowStart, rowEnd, out);
+        }
+        return out;
+    }
+
+    //选区在第col列的汇总, 比如状态栏显示选中单元格的合计; 选区的矩形互不重叠, 同一列里的行也不会重复
+    @MainThread
+    public synchronized Aggregate getAggregate(int col, Selection selection, Aggregate out) {
+        out.reset();
+        AggregateTree tree = col >= 0 && col < mSource.getColCount() ? obtainTree(col) : null;
+        if (tree == null) {
+            return out;
+        }
+        for (int i = 0, n = selection.getRangeCount(); i < n; i++) {
+            if (col >= selection.getFirstCol(i) && col <= selection.getLastCol(i)) {
+                query(tree, col, selection.getFirstRow(i), selection.getLastRow(i) + 1, out);
+            }
+        }
+        return out;
+    }
+
+    //[rowStart, rowEnd)合并到out
+    private void query(AggregateTree tree, final int col, int rowStart, int rowEnd, Aggregate out) {
+        int start = Math.max(rowStart, mDataStartRow) - mDataStartRow;
+        int end = Math.min(Math.min(rowEnd, mSource.getRowCount()) - mDataStartRow, tree.n);//追加的行可能还在读
+        if (start >= end || (tree.reordered && (start > 0 || end < tree.n))) {
+            return;
+        }
+        tree.query(start, end, out, new AggregateTree.Values() {
+            @Override
+            public double get(int i) {
+                return mSource.getCellValue(mDataStartRow + i, col);
+            }
+        });
+    }
+
+    //数值和文字的格式, 没有数值时返回空串
+    protected CharSequence formatAggregate(int col, int function, Aggregate aggregate) {
+        if (function == FUNCTION_COUNT) {
+            return Integer.toString(aggregate.count);
+        }
+        if (aggregate.count == 0) {
+            return "";
+        }
+        return mFormat.format(aggregate.get(function));
+    }
+
+    private int dataRowCount() {
+        return Math.max(0, mSource.getRowCount() - mDataStartRow);
+    }
+
+    //汇总函数要用到的值, 数值的个数总是有
+    private static int statsFor(int function) {
+        switch (function) {
+            case FUNCTION_SUM:
+            case FUNCTION_AVG:
+                return AggregateTree.STAT_SUM;
+            case FUNCTION_MIN:
+                return AggregateTree.STAT_MIN;
+            case FUNCTION_MAX:
+                return AggregateTree.STAT_MAX;
+            default:
+                return 0;
+        }
+    }
+
+    //没有树时开始加载并返回null
+    private AggregateTree obtainTree(int col) {
+        int colCount = mSource.getColCount();
+        if (mTrees.length != colCount) {
+            mTrees = new AggregateTree[colCount];
+            mTexts = new CharSequence[colCount];
+            mLoads = new Load[colCount];
+        }
+        AggregateTree tree = mTrees[col];
+        if (tree != null && !tree.has(statsFor(getFunction(col)))) {
+            mTrees[col] = tree = null;//换了汇总函数, 缺的值要重新读
+        }
+        if (tree == null) {
+            load(col);
+        }
+        return tree;
+    }
+
+    //没有在加载时, 加载还没有的行: 没有树时整列, 否则从最后一个不完整的块开始追加
+    private void load(int col) {
+        if (mLoads[col] != null) {
+            return;
+        }
+        AggregateTree tree = mTrees[col];
+        int n = dataRowCount();
+        if (tree == null && n == 0) {
+            mTrees[col] = new AggregateTree(statsFor(getFunction(col)), 0);
+        } else if (tree == null) {
+            startLoad(col, 0, n);
+        } else if (tree.n < n) {
+            startLoad(col, AggregateTree.blockStart(tree.n), n);
+        }
+    }
+
+    //start是块的开头; start为0时建新的树, 否则接在现在的树后面
+    private void startLoad(int col, int start, int end) {
+        AggregateTree tree = mTrees[col];
+        int stats = statsFor(getFunction(col)) | (tree != null ? tree.stats : 0);
+        Load load = mLoads[col] = new Load(col, start, end, tree != null ? tree.n : 0, stats, mSource.newCellReader());
+        if (load.reader != null) {
+            getExecutor().execute(load);
+        } else {
+            mMainHandler.post(load);
+        }
+    }
+
+    //汇总行的文字缓存, 绘制时每帧都会取
+    private synchronized CharSequence aggregateText(int col) {
+        if (col < 0 || col >= mSource.getColCount()) {
+            return null;
+        }
+        int function = getFunction(col);
+        if (function == FUNCTION_NONE) {
+            return mLabels.get(col);
+        }
+        if (obtainTree(col) == null) {
+            return mPlaceholder;
+        }
+        CharSequence text = mTexts[col];
+        if (text == null) {
+            text = formatAggregate(col, function, getAggregate(col, mTmp));
+            mTexts[col] = text;
+        }
+        return text;
+    }
+
+    private synchronized void invalidateTrees() {
+        mTrees = new AggregateTree[0];
+        mTexts = new CharSequence[0];
+        mLoads = new Load[0];
+    }
+
+    //只重新读变化的块, 区间很大时在后台重建, 建好之前保留旧的树
+    private synchronized void updateRange(int row1, int col1, int row2, int col2) {
+        int start = Math.max(row1, mDataStartRow) - mDataStartRow;
+        int end = Math.min(row2 + 1, mSource.getRowCount()) - mDataStartRow;
+        if (start >= end) {
+            return;
+        }
+        for (int col = Math.max(col1, 0); col <= col2 && col < mTrees.length; col++) {
+            mTexts[col] = null;
+            Load load = mLoads[col];
+            if (load != null && start < load.end && end > load.start) {
+                load.stale = true;//已经读过的值可能是旧的
+            }
+            AggregateTree tree = mTrees[col];
+            if (tree == null) {
+                continue;
+            }
+            if (tree.reordered) {
+                mTrees[col] = null;//块还是旧的顺序, 等重建
+                continue;
+            }
+            int blockEnd = Math.min(end, tree.n);
+            if ((blockEnd - AggregateTree.blockStart(start)) * 4L > tree.n) {
+                startLoad(col, 0, dataRowCount());
+                continue;
+            }
+            for (int b = start >> AggregateTree.BLOCK_SHIFT; b << AggregateTree.BLOCK_SHIFT < blockEnd; b++) {
+                readBlock(tree, col, b);
+            }
+        }
+    }
+
+    //主线程重新读第b块的行
+    private void readBlock(AggregateTree tree, int col, int b) {
+        tree.clearBlock(b);
+        int start = b << AggregateTree.BLOCK_SHIFT;
+        for (int i = start, end = Math.min(tree.n, start + AggregateTree.BLOCK_ROWS); i < end; i++) {
+            tree.accumulate(i, mSource.getCellValue(mDataStartRow + i, col));
+        }
+        tree.updateBlock(b);
+    }
+
+    //行只是换了顺序, 整列的汇总不变: 保留树和文字, 按新的顺序在后台重建, 建好之前部分区间的查询返回空的结果
+    private synchronized void reorderRows() {
+        for (int col = 0; col < mTrees.length; col++) {
+            AggregateTree tree = mTrees[col];
+            if (tree != null) {
+                tree.reordered = true;
+                startLoad(col, 0, dataRowCount());
+            } else if (mLoads[col] != null) {
+                startLoad(col, 0, dataRowCount());
+            }
+        }
+    }
+
+    //行追加在末尾时保留已有的树, 只读新的行
+    private synchronized void appendRows() {
+        for (int col = 0; col < mTrees.length; col++) {
+            mTexts[col] = null;
+            if (mTrees[col] != null) {
+                load(col);
+            }
+        }
+    }
+
+    //加载一列中[start, end)的数值(相对dataStartRow), 边读边按块汇总: reader不为null时在后台读, 否则主线程每次读一批;
+    //读完在后台建树, 再回到主线程装上: start为0时换掉整棵树, 否则接在树的后面
+    private class Load implements Runnable {
+        final int col, start, end;
+        final int baseN;//开始时树的行数, 接上去时树不能变过
+        final ExcelView.CellReader reader;
+        final AggregateTree part;//行号相对start
+        int next;//主线程下一批的开始
+        boolean stale;//加载期间这些行变了, 装上时作废重来
+
+        Load(int col, int start, int end, int baseN, int stats, ExcelView.CellReader reader) {
+            this.col = col;
+            this.start = start;
+            this.end = end;
+            this.baseN = baseN;
+            this.reader = reader;
+            part = new AggregateTree(stats, end - start);
+            next = start;
+        }
+
+        boolean isCurrent() {
+            return col < mLoads.length && mLoads[col] == this;
+        }
+
+        @Override
+        public void run() {
+            if (reader != null) {//executor
+                for (int i = start; i < end; i++) {
+                    part.accumulate(i - start, reader.getCellValue(mDataStartRow + i, col));
+                }
+                build();
+                return;
+            }
+            if (!isCurrent()) {
+                return;
+            }
+            int batchEnd = Math.min(end, next + LOAD_BATCH_ROWS);
+            for (int i = next; i < batchEnd; i++) {
+                part.accumulate(i - start, mSource.getCellValue(mDataStartRow + i, col));
+            }
+            next = batchEnd;
+            if (next < end) {
+                mMainHandler.post(this);
+            } else {
+                getExecutor().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        build();
+                    }
+                });
+            }
+        }
+
+        //后台线程
+        void build() {
+            if (start == 0) {
+                part.build();
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    install();
+                }
+            });
+        }
+
+        void install() {
+            synchronized (AggregateExcelAdapter.this) {
+                if (!isCurrent()) {
+                    return;
+                }
+                mLoads[col] = null;
+                AggregateTree current = mTrees[col];
+                if (stale) {
+                    if (start == 0) {
+                        startLoad(col, 0, dataRowCount());
+                    } else {
+                        load(col);
+                    }
+                    return;
+                }
+                if (start == 0) {
+                    mTrees[col] = part;
+                } else if (current != null && current.n == baseN && current.stats == part.stats) {
+                    current.append(part, start >> AggregateTree.BLOCK_SHIFT, end);
+                } else {//不应该发生, 整列重来
+                    mTrees[col] = null;
+                }
+                mTexts[col] = null;
+                load(col);//加载期间又追加了行
+            }
+            int row = getAggregateRow();
+            notifyRangeChanged(row, col, row, col);
+        }
+    }
+
+    private void onAggregateChanged() {
+        synchronized (this) {
+            mTexts = new CharSequence[mTexts.length];
+        }
+        int row = getAggregateRow();
+        notifyRangeChanged(row, 0, row, Math.max(0, getColCount() - 1));
+    }
+
+    //列插入删除移动后, 每列的设置跟着列走
+    private synchronized void remapColumns(int op, int start, int count, int to) {
+        SparseIntArray functions = mFunctions.clone();
+        mFunctions.clear();
+        for (int i = 0, n = functions.size(); i < n; i++) {
+            int col = ExcelView.ExcelObserver.mapIndex(op, functions.keyAt(i), start, count, to);
+            if (col >= 0) {
+                mFunctions.put(col, functions.valueAt(i));
+            }
+        }
+        SparseArray<CharSequence> labels = mLabels.clone();
+        mLabels.clear();
+        for (int i = 0, n = labels.size(); i < n; i++) {
+            int col = ExcelView.ExcelObserver.mapIndex(op, labels.keyAt(i), start, count, to);
+            if (col >= 0) {
+                mLabels.put(col, labels.valueAt(i));
+            }
+        }
+    }
+
+    private final ExcelView.ExcelObserver mSourceObserver = new ExcelView.ExcelObserver() {
+        @Override
+        public void onChanged() {
+            invalidateTrees();
+            notifyDataSetChanged();
+        }
+
+        @Override
+        public void onCellRangeChanged(int row1, int col1, int row2, int col2) {
+            updateRange(row1, col1, row2, col2);
+            notifyRangeChanged(row1, col1, row2, col2);
+            int row = getAggregateRow();
+            notifyRangeChanged(row, col1, row, col2);
+        }
+
+        @Override
+        public void onRowsChanged(int op, int start, int count, int to) {
+            if (op == INSERT && start >= mDataStartRow && start + count == mSource.getRowCount()) {
+                appendRows();
+            } else {
+                invalidateTrees();
+            }
+            switch (op) {
+                case INSERT:
+                    notifyRowsInserted(start, count);
+                    break;
+                case REMOVE:
+                    notifyRowsRemoved(start, count);
+                    break;
+                case MOVE:
+                    notifyRowsMoved(start, to, count);
+                    break;
+            }
+            int row = getAggregateRow();
+            notifyRangeChanged(row, 0, row, Math.max(0, getColCount() - 1));
+        }
+
+        @Override
+        public void onColsChanged(int op, int start, int count, int to) {
+            invalidateTrees();
+            remapColumns(op, start, count, to);
+            switch (op) {
+                case INSERT:
+                    notifyColsInserted(start, count);
+                    break;
+                case REMOVE:
+                    notifyColsRemoved(start, count);
+                    break;
+                case MOVE:
+                    notifyColsMoved(start, to, count);
+                    break;
+            }
+        }
+
+        @Override
+        public void onRowsReordered() {
+            reorderRows();
+            notifyRowsReordered();
+        }
+
+        @Override
+        public void onRowHeightChanged(int row) {
+            notifyRowHeightChanged(row);
+        }
+
+        @Override
+        public void onColWidthChanged(int col) {
+            notifyColWidthChanged(col);
+        }
+    };
+
+    @Override
+    public ExcelView.Span querySpan(int row, int col) {
+        return row < getAggregateRow() ? mSource.querySpan(row, col) : null;
+    }
+
+    @Override
+    public int getColCount() {
+        return mSource.getColCount();
+    }
+
+    @Override
+    public int getRowCount() {
+        return mSource.getRowCount() + 1;
+    }
+
+    @Override
+    public int getRowHeight(int row) {
+        if (row < getAggregateRow()) {
+            return mSource.getRowHeight(row);
+        }
+        if (mRowHeight >= 0) {
+            return mRowHeight;
+        }
+        return mSource.getRowCount() > 0 ? mSource.getRowHeight(0) : 0;
+    }
+
+    @Override
+    public int getColWidth(int col) {
+        return mSource.getColWidth(col);
+    }
+
+    @Override
+    public int getCellViewType(int row, int col) {
+        return row < getAggregateRow() ? mSource.getCellViewType(row, col) : VIEW_TYPE_AGGREGATE;
+    }
+
+    @Override
+    public CharSequence getCellText(int row, int col) {
+        return row < getAggregateRow() ? mSource.getCellText(row, col) : aggregateText(col);
+    }
+
+    //汇总行返回汇总的结果
+    @Override
+    public double getCellValue(int row, int col) {
+        if (row < getAggregateRow()) {
+            return mSource.getCellValue(row, col);
+        }
+        synchronized (this) {
+            int function = getFunction(col);
+            return function == FUNCTION_NONE || !isAggregateReady(col) ? Double.NaN : getAggregate(col, mTmp).get(function);
+        }
+    }
+
+    @Override
+    public ExcelView.CellRenderer getCellRenderer(int viewType) {
+        return viewType == VIEW_TYPE_AGGREGATE ? mRenderer : mSource.getCellRenderer(viewType);
+    }
+
+    @Override
+    public View createCellView(Context context, int viewType) {
+        if (viewType != VIEW_TYPE_AGGREGATE) {
+            return mSource.createCellView(context, viewType);
+        }
+        TextView view = new TextView(context);
+        view.setSingleLine(true);
+        view.setGravity(Gravity.RIGHT | Gravity.CENTER_VERTICAL);
+        view.setBackgroundColor(Color.LTGRAY);
+        return view;
+    }
+
+    //子类的getCellRenderer对汇总行返回null时才会用到
+    @Override
+    public View getCellView(Context context, View convertView, int row, int col) {
+        if (row < getAggregateRow()) {
+            return mSource.getCellView(context, convertView, row, col);
+        }
+        if (convertView == null) {
+            convertView = createCellView(context, VIEW_TYPE_AGGREGATE);
+        }
+        ((TextView) convertView).setText(aggregateText(col));
+        return convertView;
+    }
+
+    //汇总行由渲染器在主线程取文字, 可能开始加载
+    @Override
+    public boolean isDrawThreadSafe(int viewType) {
+        return viewType != VIEW_TYPE_AGGREGATE && mSource.isDrawThreadSafe(viewType);
+    }
+
+    //source能在后台读时, 其他行转发给source的reader; 汇总行只返回已经建好的树的结果, 不在后台开始加载
+    @Override
+    public ExcelView.CellReader newCellReader() {
+        final ExcelView.CellReader reader = mSource.newCellReader();
+        if (reader == null) {
+            return null;
+        }
+        final int aggregateRow = getAggregateRow();
+        return new ExcelView.CellReader() {
+            @Override
+            public ExcelView.Span querySpan(int row, int col) {
+                return row < aggregateRow ? reader.querySpan(row, col) : null;
+            }
+
+            @Override
+            public CharSequence getCellText(int row, int col) {
+                return row < aggregateRow ? reader.getCellText(row, col) : readyText(col);
+            }
+
+            @Override
+            public double getCellValue(int row, int col) {
+                return row < aggregateRow ? reader.getCellValue(row, col) : readyValue(col);
+            }
+        };
+    }
+
+    //树已经建好时整列的汇总, 不读source
+    private boolean readyAggregate(int col, Aggregate out) {
+        AggregateTree tree = col >= 0 && col < mTrees.length ? mTrees[col] : null;
+        if (tree == null || !tree.has(statsFor(getFunction(col)))) {
+            return false;
+        }
+        out.reset();
+        tree.queryBlocks(0, AggregateTree.blockCount(tree.n), out);
+        return true;
+    }
+
+    private synchronized CharSequence readyText(int col) {
+        int function = getFunction(col);
+        if (function == FUNCTION_NONE) {
+            return mLabels.get(col);
+        }
+        CharSequence text = col >= 0 && col < mTexts.length ? mTexts[col] : null;
+        if (text == null && readyAggregate(col, mTmp)) {
+            text = formatAggregate(col, function, mTmp);
+            mTexts[col] = text;
+        }
+        return text;
+    }
+
+    private synchronized double readyValue(int col) {
+        int function = getFunction(col);
+        return function != FUNCTION_NONE && readyAggregate(col, mTmp) ? mTmp.get(function) : Double.NaN;
+    }
+
+    //一个区间的汇总结果, 可以反复使用
+    public static final class Aggregate {
+        public int count;//数值的个数
+        public double sum;
+        public double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+
+        public double getAverage() {
+            return count > 0 ? sum / count : Double.NaN;
+        }
+
+        public double get(int function) {
+            switch (function) {
+                case FUNCTION_SUM:
+                    return sum;
+                case FUNCTION_AVG:
+                    return getAverage();
+                case FUNCTION_MIN:
+                    return count > 0 ? min : Double.NaN;
+                case FUNCTION_MAX:
+                    return count > 0 ? max : Double.NaN;
+                case FUNCTION_COUNT:
+                    return count;
+                default:
+                    return Double.NaN;
+            }
+        }
+
+        void reset() {
+            count = 0;
+            sum = 0;
+            min = Double.POSITIVE_INFINITY;
+            max = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    //自底向上的线段树, 叶子是BLOCK_ROWS行一块的汇总, 在[cap, 2cap), 节点p = 2p和2p+1合并;
+    //[块数, cap)是空的叶子, 末尾追加时直接填进去, 容量不够时翻倍重建. sum/min/max只在stats里有时分配
+    static final class AggregateTree {
+        static final int BLOCK_SHIFT = 6;
+        static final int BLOCK_ROWS = 1 << BLOCK_SHIFT;
+        static final int STAT_SUM = 1;
+        static final int STAT_MIN = 2;
+        static final int STAT_MAX = 4;
+
+        final int stats;
+        int n;//行数
+        int cap;
+        double[] sum, min, max;
+        int[] count;
+        boolean reordered;//source重新排序过, 块里还是旧的顺序, 只有整棵树的汇总是对的
+
+        //不完整的块读源数据
+        interface Values {
+            double get(int i);
+        }
+
+        AggregateTree(int stats, int n) {
+            this.stats = stats;
+            this.n = n;
+            allocate(capacityFor(blockCount(n)));
+        }
+
+        static int blockCount(int n) {
+            return (n + BLOCK_ROWS - 1) >> BLOCK_SHIFT;
+        }
+
+        //第i行所在块的开头
+        static int blockStart(int i) {
+            return i >> BLOCK_SHIFT << BLOCK_SHIFT;
+        }
+
+        private static int capacityFor(int n) {
+            int cap = 1;
+            while (cap < n) {
+                cap <<= 1;
+            }
+            return cap;
+        }
+
+        private void allocate(int cap) {
+            this.cap = cap;
+            count = new int[2 * cap];
+            sum = (stats & STAT_SUM) != 0 ? new double[2 * cap] : null;
+            if ((stats & STAT_MIN) != 0) {
+                min = new double[2 * cap];
+                Arrays.fill(min, Double.POSITIVE_INFINITY);
+            }
+            if ((stats & STAT_MAX) != 0) {
+                max = new double[2 * cap];
+                Arrays.fill(max, Double.NEGATIVE_INFINITY);
+            }
+        }
+
+        boolean has(int stats) {
+            return (this.stats & stats) == stats;
+        }
+
+        //第i行的值加到所在块的叶子, 全部加完调用build或updateBlock
+        void accumulate(int i, double value) {
+            if (Double.isNaN(value)) {
+                return;
+            }
+            int p = (i >> BLOCK_SHIFT) + cap;
+            count[p]++;
+            if (sum != null) {
+                sum[p] += value;
+            }
+            if (min != null && value < min[p]) {
+                min[p] = value;
+            }
+            if (max != null && value > max[p]) {
+                max[p] = value;
+            }
+        }
+
+        void clearBlock(int b) {
+            int p = b + cap;
+            count[p] = 0;
+            if (sum != null) {
+                sum[p] = 0;
+            }
+            if (min != null) {
+                min[p] = Double.POSITIVE_INFINITY;
+            }
+            if (max != null) {
+                max[p] = Double.NEGATIVE_INFINITY;
+            }
+        }
+
+        void build() {
+            for (int p = cap - 1; p > 0; p--) {
+                pull(p);
+            }
+        }
+
+        void updateBlock(int b) {
+            for (int p = (b + cap) >> 1; p > 0; p >>= 1) {
+                pull(p);
+            }
+        }
+
+        //part从第firstBlock块开始, 覆盖这一块之后的叶子, 行数变成newN
+        void append(AggregateTree part, int firstBlock, int newN) {
+            int blocks = blockCount(newN);
+            if (blocks > cap) {
+                int[] oldCount = count;
+                double[] oldSum = sum, oldMin = min, oldMax = max;
+                int oldCap = cap;
+                allocate(capacityFor(blocks));
+                copyLeaves(oldCount, oldSum, oldMin, oldMax, oldCap, 0, firstBlock);
+            }
+            copyLeaves(part.count, part.sum, part.min, part.max, part.cap, firstBlock, blocks - firstBlock);
+            n = newN;
+            build();
+        }
+
+        private void copyLeaves(int[] count, double[] sum, double[] min, double[] max, int cap, int to, int length) {
+            System.arraycopy(count, cap, this.count, this.cap + to, length);
+            if (sum != null) {
+                System.arraycopy(sum, cap, this.sum, this.cap + to, length);
+            }
+            if (min != null) {
+                System.arraycopy(min, cap, this.min, this.cap + to, length);
+            }
+            if (max != null) {
+                System.arraycopy(max, cap, this.max, this.cap + to, length);
+            }
+        }
+
+        private void pull(int p) {
+            int l = p << 1, r = l | 1;
+            count[p] = count[l] + count[r];
+            if (sum != null) {
+                sum[p] = sum[l] + sum[r];
+            }
+            if (min != null) {
+                min[p] = Math.min(min[l], min[r]);
+            }
+            if (max != null) {
+                max[p] = Math.max(max[l], max[r]);
+            }
+        }
+
+        //[start, end)合并到out: 完整的块查树, 两头不完整的块从values逐行读
+        void query(int start, int end, Aggregate out, Values values) {
+            int first = (start + BLOCK_ROWS - 1) >> BLOCK_SHIFT;
+            int last = end >= n ? blockCount(n) : end >> BLOCK_SHIFT;//[first, last)是完整的块
+            if (first >= last) {
+                addValues(start, end, out, values);
+                return;
+            }
+            addValues(start, first << BLOCK_SHIFT, out, values);
+            queryBlocks(first, last, out);
+            addValues(last << BLOCK_SHIFT, end, out, values);
+        }
+
+        private static void addValues(int start, int end, Aggregate out, Values values) {
+            for (int i = start; i < end; i++) {
+                double value = values.get(i);
+                if (!Double.isNaN(value)) {
+                    out.count++;
+                    out.sum += value;
+                    out.min = Math.min(out.min, value);
+                    out.max = Math.max(out.max, value);
+                }
+            }
+        }
+
+        void queryBlocks(int first, int last, Aggregate out) {
+            for (int l = first + cap, r = last + cap; l < r; l >>= 1, r >>= 1) {
+                if ((l & 1) != 0) {
+                    add(l++, out);
+                }
+                if ((r & 1) != 0) {
+                    add(--r, out);
+                }
+            }
+        }
+
+        private void add(int p, Aggregate out) {
+            out.count += count[p];
+            if (sum != null) {
+                out.sum += sum[p];
+            }
+            if (min != null) {
+                out.min = Math.min(out.min, min[p]);
+            }
+            if (max != null) {
+                out.max = Math.max(out.max, max[p]);
+            }
+        }
+    }
+}
@@ -0,0 +1,512 @@
+package com.lhg.excelview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 只读的列式表格文件, 通过FileChannel.map映射, 打开时只读文件头, 单元格在访问时直接从映射区解码.
+ * 行号是数据行号(不含ExcelView的表头行), 行高表包含表头行, 下标0是表头.
+ *
+ * 文件格式(小端):
+ * <pre>
+ * header(64)    magic, version, rowCount, colCount, spanCount, 保留,
+ *               rowHeights, colWidths, spans, columns, names 各区的偏移(long)
+ * columns       每列32字节: type, 保留, data偏移, null位图偏移(0表示没有), 字典偏移(字符串列)
+ * rowHeights    int[rowCount + 1]
+ * colWidths     int[colCount]
+ * spans         int[spanCount * 4], ExcelView坐标的(row, col, rbRow, rbCol)
+ * names         字符串表: count, int[count + 1]相对偏移, utf8字节
+ * 列数据        int/long/double按行排列, 字符串列为字典下标(-1为null), 字典是一个字符串表
+ * </pre>
+ */
+public final class ColumnarSheet implements Closeable {
+    public static final int TYPE_INT = 1;
+    public static final int TYPE_LONG = 2;
+    public static final int TYPE_DOUBLE = 3;
+    public static final int TYPE_STRING = 4;
+
+    private static final int MAGIC = 0x434c5845;//"EXLC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int COLUMN_ENTRY_SIZE = 32;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final int mRowCount, mColCount, mSpanCount;
+    private final ByteBuffer mRowHeights, mColWidths, mSpans;
+    private final StringTable mNames;
+    private final int[] mTypes;
+    private final long[] mDataOffsets, mNullOffsets, mDictOffsets;
+    //按需映射, 没访问过的列不占地址空间
+    private final ByteBuffer[] mData, mNulls;
+    private final StringTable[] mDicts;
+
+    private ColumnarSheet(RandomAccessFile file) throws IOException {
+        mFile = file;
+        mChannel = file.getChannel();
+        ByteBuffer header = map(0, HEADER_SIZE);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("not a columnar sheet file");
+        }
+        mRowCount = header.getInt(8);
+        mColCount = header.getInt(12);
+        mSpanCount = header.getInt(16);
+        mRowHeights = map(header.getLong(24), (mRowCount + 1) * 4L);
+        mColWidths = map(header.getLong(32), mColCount * 4L);
+        mSpans = map(header.getLong(40), mSpanCount * 16L);
+        ByteBuffer columns = map(header.getLong(48), (long) mColCount * COLUMN_ENTRY_SIZE);
+        mNames = new StringTable(header.getLong(56));
+
+        mTypes = new int[mColCount];
+        mDataOffsets = new long[mColCount];
+        mNullOffsets = new long[mColCount];
+        mDictOffsets = new long[mColCount];
+        for (int col = 0; col < mColCount; col++) {
+            int entry = col * COLUMN_ENTRY_SIZE;
+            mTypes[col] = columns.getInt(entry);
+            mDataOffsets[col] = columns.getLong(entry + 8);
+            mNullOffsets[col] = columns.getLong(entry + 16);
+            mDictOffsets[col] = columns.getLong(entry + 24);
+        }
+        mData = new ByteBuffer[mColCount];
+        mNulls = new ByteBuffer[mColCount];
+        mDicts = new StringTable[mColCount];
+    }
+
+    public static ColumnarSheet open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return new ColumnarSheet(raf);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    //映射区在GC回收时才真正释放
+    @Override
+    public void close() throws IOException {
+        mFile.close();
+    }
+
+    private ByteBuffer map(long offset, long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("region too large: " + length);
+        }
+        return mChannel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    //映射失败说明文件已损坏或被截断, 访问单元格时不再抛受检异常
+    private ByteBuffer mapUnchecked(long offset, long length) {
+        try {
+            return map(offset, length);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    public int getColCount() {
+        return mColCount;
+    }
+
+    public int getColumnType(int col) {
+        return mTypes[col];
+    }
+
+    public String getColumnName(int col) {
+        return mNames.get(col);
+    }
+
+    //row为ExcelView的行号, 0是表头
+    public int getRowHeight(int row) {
+        return mRowHeights.getInt(row * 4);
+    }
+
+    public int getColWidth(int col) {
+        return mColWidths.getInt(col * 4);
+    }
+
+    public int getSpanCount() {
+        return mSpanCount;
+    }
+
+    public ExcelView.Span getSpan(int index) {
+        int offset = index * 16;
+        return new ExcelView.Span(mSpans.getInt(offset), mSpans.getInt(offset + 4),
+                mSpans.getInt(offset + 8), mSpans.getInt(offset + 12));
+    }
+
+    private ByteBuffer data(int col) {
+        ByteBuffer data = mData[col];
+        if (data == null) {
+            int width = mTypes[col] == TYPE_LONG || mTypes[col] == TYPE_DOUBLE ? 8 : 4;
+            data = mData[col] = mapUnchecked(mDataOffsets[col], (long) mRowCount * width);
+        }
+        return data;
+    }
+
+    public boolean isNull(int row, int col) {
+        if (mTypes[col] == TYPE_STRING) {
+            return data(col).getInt(row * 4) < 0;
+        }
+        if (mNullOffsets[col] == 0) {
+            return false;
+        }
+        ByteBuffer nulls = mNulls[col];
+        if (nulls == null) {
+            nulls = mNulls[col] = mapUnchecked(mNullOffsets[col], (mRowCount + 7) / 8);
+        }
+        return (nulls.get(row >> 3) & (1 << (row & 7))) != 0;
+    }
+
+    public int getInt(int row, int col) {
+        return data(col).getInt(row * 4);
+    }
+
+    public long getLong(int row, int col) {
+        return data(col).getLong(row * 8);
+    }
+
+    public double getDouble(int row, int col) {
+        return data(col).getDouble(row * 8);
+    }
+
+    public String getString(int row, int col) {
+        int index = data(col).getInt(row * 4);
+        if (index < 0) {
+            return null;
+        }
+        StringTable dict = mDicts[col];
+        if (dict == null) {
+            dict = mDicts[col] = new StringTable(mDictOffsets[col]);
+        }
+        return dict.get(index);
+    }
+
+    //显示用的文字, null返回空串
+    public String format(int row, int col) {
+        if (isNull(row, col)) {
+            return "";
+        }
+        switch (mTypes[col]) {
+            case TYPE_INT:
+                return Integer.toString(getInt(row, col));
+            case TYPE_LONG:
+                return Long.toString(getLong(row, col));
+            case TYPE_DOUBLE:
+                return Double.toString(getDouble(row, col));
+            default:
+                return getString(row, col);
+        }
+    }
+
+    //count, int[count + 1]相对偏移, utf8字节
+    private class StringTable {
+        final int count;
+        final ByteBuffer offsets;
+        final ByteBuffer bytes;
+        private byte[] mScratch = new byte[64];
+
+        StringTable(long offset) {
+            ByteBuffer head = mapUnchecked(offset, 4);
+            count = head.getInt(0);
+            offsets = mapUnchecked(offset + 4, (count + 1) * 4L);
+            bytes = mapUnchecked(offset + 4 + (count + 1) * 4L, offsets.getInt(count * 4));
+        }
+
+        synchronized String get(int index) {
+            int start = offsets.getInt(index * 4), end = offsets.getInt(index * 4 + 4);
+            int length = end - start;
+            if (mScratch.length < length) {
+                mScratch = new byte[Math.max(length, mScratch.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                mScratch[i] = bytes.get(start + i);
+            }
+            return new String(mScratch, 0, length, UTF_8);
+        }
+    }
+
+    /**
+     * 生成列式表格文件, 数据先放在内存里, write时顺序写出.
+     */
+    public static final class Writer {
+        private final int mRowCount, mColCount;
+        private final int[] mRowHeights, mColWidths;
+        private final String[] mNames;
+        private final int[] mTypes;
+        private final Object[] mColumns;
+        private final BitSet[] mNulls;
+        private final List<int[]> mSpans = new ArrayList<>();
+
+        public Writer(int rowCount, int colCount) {
+            mRowCount = rowCount;
+            mColCount = colCount;
+            mRowHeights = new int[rowCount + 1];
+            mColWidths = new int[colCount];
+            mNames = new String[colCount];
+            mTypes = new int[colCount];
+            mColumns = new Object[colCount];
+            mNulls = new BitSet[colCount];
+        }
+
+        public Writer setDefaultSize(int rowHeight, int colWidth) {
+            Arrays.fill(mRowHeights, rowHeight);
+            Arrays.fill(mColWidths, colWidth);
+            return this;
+        }
+
+        //row为ExcelView的行号, 0是表头
+        public Writer setRowHeight(int row, int height) {
+            mRowHeights[row] = height;
+            return this;
+        }
+
+        public Writer setColWidth(int col, int width) {
+            mColWidths[col] = width;
+            return this;
+        }
+
+        public Writer setColumnName(int col, String name) {
+            mNames[col] = name;
+            return this;
+        }
+
+        //ExcelView坐标
+        public Writer addSpan(int row, int col, int rbRow, int rbCol) {
+            mSpans.add(new int[]{row, col, rbRow, rbCol});
+            return this;
+        }
+
+        public Writer setIntColumn(int col, int[] values) {
+            return setColumn(col, TYPE_INT, values, values.length);
+        }
+
+        public Writer setLongColumn(int col, long[] values) {
+            return setColumn(col, TYPE_LONG, values, values.length);
+        }
+
+        public Writer setDoubleColumn(int col, double[] values) {
+            return setColumn(col, TYPE_DOUBLE, values, values.length);
+        }
+
+        //null元素即空单元格
+        public Writer setStringColumn(int col, String[] values) {
+            return setColumn(col, TYPE_STRING, values, values.length);
+        }
+
+        //数值列的空单元格
+        public Writer setNull(int row, int col) {
+            if (mNulls[col] == null) {
+                mNulls[col] = new BitSet(mRowCount);
+            }
+            mNulls[col].set(row);
+            return this;
+        }
+
+        private Writer setColumn(int col, int type, Object values, int length) {
+            if (length != mRowCount) {
+                throw new IllegalArgumentException("column " + col + " has " + length + " rows, expected " + mRowCount);
+            }
+            mTypes[col] = type;
+            mColumns[col] = values;
+            return this;
+        }
+
+        public void write(File file) throws IOException {
+            for (int col = 0; col < mColCount; col++) {
+                if (mColumns[col] == null) {
+                    throw new IllegalStateException("column " + col + " not set");
+                }
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(0);
+                Output out = new Output(raf.getChannel(), HEADER_SIZE + (long) mColCount * COLUMN_ENTRY_SIZE);
+                long rowHeights = out.position();
+                for (int height : mRowHeights) {
+                    out.putInt(height);
+                }
+                long colWidths = out.position();
+                for (int width : mColWidths) {
+                    out.putInt(width);
+                }
+                long spans = out.position();
+                for (int[] span : mSpans) {
+                    for (int v : span) {
+                        out.putInt(v);
+                    }
+                }
+                long names = out.position();
+                writeStringTable(out, mNames);
+
+                ByteBuffer columns = ByteBuffer.allocate(mColCount * COLUMN_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                for (int col = 0; col < mColCount; col++) {
+                    out.align(8);
+                    long data = out.position(), nulls = 0, dict = 0;
+                    switch (mTypes[col]) {
+                        case TYPE_INT:
+                            for (int v : (int[]) mColumns[col]) {
+                                out.putInt(v);
+                            }
+                            break;
+                        case TYPE_LONG:
+                            for (long v : (long[]) mColumns[col]) {
+                                out.putLong(v);
+                            }
+                            break;
+                        case TYPE_DOUBLE:
+                            for (double v : (double[]) mColumns[col]) {
+                                out.putDouble(v);
+                            }
+                            break;
+                        default:
+                            dict = writeStringColumn(out, (String[]) mColumns[col]);
+                            break;
+                    }
+                    if (mTypes[col] != TYPE_STRING && mNulls[col] != null) {
+                        nulls = out.position();
+                        byte[] bits = Arrays.copyOf(mNulls[col].toByteArray(), (mRowCount + 7) / 8);
+                        out.putBytes(bits);
+                    }
+                    columns.putInt(mTypes[col]).putInt(0).putLong(data).putLong(nulls).putLong(dict);
+                }
+                out.flush();
+
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(MAGIC).putInt(VERSION).putInt(mRowCount).putInt(mColCount)
+                        .putInt(mSpans.size()).putInt(0)
+                        .putLong(rowHeights).putLong(colWidths).putLong(spans)
+                        .putLong(HEADER_SIZE).putLong(names);
+                header.flip();
+                columns.flip();
+                FileChannel channel = raf.getChannel();
+                writeFully(channel, header, 0);
+                writeFully(channel, columns, HEADER_SIZE);
+            } finally {
+                raf.close();
+            }
+        }
+
+        //字典编码: 按第一次出现的顺序编号, 先写下标再写字典, 返回字典的偏移
+        private static long writeStringColumn(Output out, String[] values) throws IOException {
+            Map<String, Integer> ids = new HashMap<>();
+            List<String> dict = new ArrayList<>();
+            for (String value : values) {
+                if (value == null) {
+                    out.putInt(-1);
+                    continue;
+                }
+                Integer id = ids.get(value);
+                if (id == null) {
+                    id = dict.size();
+                    ids.put(value, id);
+                    dict.add(value);
+                }
+                out.putInt(id);
+            }
+            long offset = out.position();
+            writeStringTable(out, dict.toArray(new String[0]));
+            return offset;
+        }
+
+        private static void writeStringTable(Output out, String[] strings) throws IOException {
+            byte[][] encoded = new byte[strings.length][];
+            out.putInt(strings.length);
+            int offset = 0;
+            out.putInt(0);
+            for (int i = 0; i < strings.length; i++) {
+                encoded[i] = strings[i] == null ? new byte[0] : strings[i].getBytes(UTF_8);
+                offset += encoded[i].length;
+                out.putInt(offset);
+            }
+            for (byte[] bytes : encoded) {
+                out.putBytes(bytes);
+            }
+        }
+
+        private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+
+        //带缓冲的顺序写
+        private static class Output {
+            final FileChannel channel;
+            final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+            long position;
+
+            Output(FileChannel channel, long start) {
+                this.channel = channel;
+                this.position = start;
+            }
+
+            long position() {
+                return position + buffer.position();
+            }
+
+            void ensure(int size) throws IOException {
+                if (buffer.remaining() < size) {
+                    flush();
+                }
+            }
+
+            void putInt(int v) throws IOException {
+                ensure(4);
+                buffer.putInt(v);
+            }
+
+            void putLong(long v) throws IOException {
+                ensure(8);
+                buffer.putLong(v);
+            }
+
+            void putDouble(double v) throws IOException {
+                ensure(8);
+                buffer.putDouble(v);
+            }
+
+            void putBytes(byte[] bytes) throws IOException {
+                int offset = 0;
+                while (offset < bytes.length) {
+                    ensure(1);
+                    int n = Math.min(buffer.remaining(), bytes.length - offset);
+                    buffer.put(bytes, offset, n);
+                    offset += n;
+                }
+            }
+
+            void align(int alignment) throws IOException {
+                while (position() % alignment != 0) {
+                    ensure(1);
+                    buffer.put((byte) 0);
+                }
+            }
+
+            void flush() throws IOException {
+                buffer.flip();
+                writeFully(channel, buffer, position);
+                position += buffer.limit();
+                buffer.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.TextView;
+
+/**
+ * 直接读ColumnarSheet映射区的adapter, 不为单元格建Java对象.
+ * 第0行是列名, 第1行起是数据行; 默认用TextCellRenderer直接画,
+ * 子类的getCellRenderer返回null时改用getCellView创建的TextView.
+ */
+public class ColumnarSheetAdapter extends ExcelView.ExcelAdapter {
+    public static final int VIEW_TYPE_HEADER = 0;
+    public static final int VIEW_TYPE_CELL = 1;
+
+    private final ColumnarSheet mSheet;
+    private final ExcelView.TextCellRenderer mHeaderRenderer = new ExcelView.TextCellRenderer() {
+        @Override
+        public CharSequence getText(int row, int col) {
+            return getCellText(row, col);
+        }
+    };
+    private final ExcelView.TextCellRenderer mCellRenderer = new ExcelView.TextCellRenderer() {
+        @Override
+        public CharSequence getText(int row, int col) {
+            return getCellText(row, col);
+        }
+    };
+
+    public ColumnarSheetAdapter(ColumnarSheet sheet) {
+        mSheet = sheet;
+        mHeaderRenderer.setBackgroundColor(Color.LTGRAY);
+        mCellRenderer.setGravity(Gravity.RIGHT | Gravity.CENTER_VERTICAL);
+        ExcelView.SpanIndex spans = getSpanIndex();
+        for (int i = 0, n = sheet.getSpanCount(); i < n; i++) {
+            spans.add(sheet.getSpan(i));
+        }
+    }
+
+    public ColumnarSheet getSheet() {
+        return mSheet;
+    }
+
+    public ExcelView.TextCellRenderer getHeaderRenderer() {
+        return mHeaderRenderer;
+    }
+
+    public ExcelView.TextCellRenderer getBodyRenderer() {
+        return mCellRenderer;
+    }
+
+    //每次调用都从映射区解码
+    @Override
+    public CharSequence getCellText(int row, int col) {
+        return row == 0 ? mSheet.getColumnName(col) : mSheet.format(row - 1, col);
+    }
+
+    @Override
+    public double getCellValue(int row, int col) {
+        int data = row - 1;
+        if (row == 0 || mSheet.isNull(data, col)) {
+            return Double.NaN;
+        }
+        switch (mSheet.getColumnType(col)) {
+            case ColumnarSheet.TYPE_INT:
+                return mSheet.getInt(data, col);
+            case ColumnarSheet.TYPE_LONG:
+                return mSheet.getLong(data, col);
+            case ColumnarSheet.TYPE_DOUBLE:
+                return mSheet.getDouble(data, col);
+            default:
+                return Double.NaN;
+        }
+    }
+
+    //映射区只读, 可以直接在后台线程读
+    @Override
+    public ExcelView.CellReader newCellReader() {
+        return new ExcelView.AdapterCellReader(this);
+    }
+
+    @Override
+    public int getColCount() {
+        return mSheet.getColCount();
+    }
+
+    @Override
+    public int getRowCount() {
+        return mSheet.getRowCount() + 1;
+    }
+
+    @Override
+    public int getRowHeight(int row) {
+        return mSheet.getRowHeight(row);
+    }
+
+    @Override
+    public int getColWidth(int col) {
+        return mSheet.getColWidth(col);
+    }
+
+    @Override
+    public int getCellViewType(int row, int col) {
+        return row == 0 ? VIEW_TYPE_HEADER : VIEW_TYPE_CELL;
+    }
+
+    @Override
+    public ExcelView.CellRenderer getCellRenderer(int viewType) {
+        return viewType == VIEW_TYPE_HEADER ? mHeaderRenderer : mCellRenderer;
+    }
+
+    @Override
+    public View createCellView(Context context, int viewType) {
+        TextView view = new TextView(context);
+        view.setSingleLine(true);
+        if (viewType == VIEW_TYPE_HEADER) {
+            view.setGravity(Gravity.CENTER);
+            view.setBackgroundColor(Color.LTGRAY);
+        } else {
+            view.setGravity(Gravity.RIGHT | Gravity.CENTER_VERTICAL);
+            view.setBackgroundColor(Color.WHITE);
+        }
+        return view;
+    }
+
+    @Override
+    public View getCellView(Context context, View convertView, int row, int col) {
+        if (convertView == null) {
+            convertView = createCellView(context, getCellViewType(row, col));
+        }
+        ((TextView) convertView).setText(getCellText(row, col));
+        return convertView;
+    }
+}
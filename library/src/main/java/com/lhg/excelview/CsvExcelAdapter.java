@@ -0,0 +1,452 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.LruCache;
+import android.util.SparseIntArray;
+import android.view.Gravity;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.annotation.MainThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * CSV文件的adapter, 不需要先把整个文件解析到内存.
+ * 后台线程扫一遍文件建立 行号->字节偏移 的索引, 边扫边增加getRowCount()并通知ExcelView;
+ * 显示时只解析可见的行, 解析结果放在LRU里. 第一行作为表头(ExcelView的第0行).
+ * 支持双引号包起来的字段(可包含分隔符和换行, ""转义), 编码需要兼容ASCII(UTF-8, GBK等).
+ */
+public class CsvExcelAdapter extends ExcelView.ExcelAdapter implements Closeable {
+    public static final int VIEW_TYPE_HEADER = 0;
+    public static final int VIEW_TYPE_CELL = 1;
+    public static final int DEFAULT_MAX_CACHED_ROWS = 512;
+
+    private static final int CHUNK_SHIFT = 16;//索引分块, 每块65536行, 增长时不用整体复制
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    private static final long PUBLISH_INTERVAL_MS = 100;
+    private static final int ROW_BATCH = 32;//未命中时连同后面的行一起读
+    private static final int MAX_BATCH_BYTES = 256 * 1024;
+
+    public interface OnIndexListener {
+        //主线程, rows为已索引的行数(含表头)
+        void onIndexProgress(int rows, long bytesIndexed, long totalBytes);
+
+        void onIndexComplete(int rows);
+
+        void onIndexError(IOException e);
+    }
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+    private final Charset mCharset;
+    private final char mDelimiter;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private OnIndexListener mOnIndexListener;
+
+    //后台线程写, 主线程只读已发布的行; 发布通过Handler, 保证可见性
+    private volatile long[][] mOffsets = new long[16][];
+    private int mOffsetCount;//只在后台线程访问
+    private volatile boolean mClosed;
+
+    private volatile int mRowCount;//已发布给ExcelView的行数, 只在主线程修改
+    private int mColCount;
+    private final LruCache<Integer, String[]> mRows = new LruCache<>(DEFAULT_MAX_CACHED_ROWS);
+    private final RowParser mParser = new RowParser();
+
+    private int mDefaultRowHeight = 100, mDefaultColWidth = 200;
+    private final SparseIntArray mColWidths = new SparseIntArray();
+
+    private final ExcelView.TextCellRenderer mHeaderRenderer = new ExcelView.TextCellRenderer() {
+        @Override
+        public CharSequence getText(int row, int col) {
+            return getCellText(row, col);
+        }
+    };
+    private final ExcelView.TextCellRenderer mCellRenderer = new ExcelView.TextCellRenderer() {
+        @Override
+        public CharSequence getText(int row, int col) {
+            return getCellText(row, col);
+        }
+    };
+
+    public CsvExcelAdapter(File file, Charset charset, char delimiter) throws IOException {
+        mFile = new RandomAccessFile(file, "r");
+        mChannel = mFile.getChannel();
+        mCharset = charset;
+        mDelimiter = delimiter;
+        mHeaderRenderer.setBackgroundColor(Color.LTGRAY);
+        mCellRenderer.setGravity(Gravity.LEFT | Gravity.CENTER_VERTICAL);
+    }
+
+    public CsvExcelAdapter(File file) throws IOException {
+        this(file, Charset.forName("UTF-8"), ',');
+    }
+
+    public void setOnIndexListener(OnIndexListener listener) {
+        mOnIndexListener = listener;
+    }
+
+    //在executor上建立索引, 只能调用一次
+    @MainThread
+    public void startIndexing(Executor executor) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    buildIndex();
+                } catch (final IOException e) {
+                    if (mClosed) {
+                        return;
+                    }
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (mOnIndexListener != null) {
+                                mOnIndexListener.onIndexError(e);
+                            }
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    //停止索引并关闭文件
+    @Override
+    public void close() throws IOException {
+        mClosed = true;
+        mMainHandler.removeCallbacksAndMessages(null);
+        mFile.close();
+    }
+
+    public void setDefaultRowHeight(int height) {
+        mDefaultRowHeight = height;
+    }
+
+    public void setDefaultColWidth(int width) {
+        mDefaultColWidth = width;
+    }
+
+    public void setColWidth(int col, int width) {
+        mColWidths.put(col, width);
+        notifyColWidthChanged(col);
+    }
+
+    public void setMaxCachedRows(int maxRows) {
+        mRows.resize(maxRows);
+    }
+
+    public ExcelView.TextCellRenderer getHeaderRenderer() {
+        return mHeaderRenderer;
+    }
+
+    public ExcelView.TextCellRenderer getBodyRenderer() {
+        return mCellRenderer;
+    }
+
+    //后台线程: 顺序读一遍, 记录引号外每个换行之后的位置
+    private void buildIndex() throws IOException {
+        long size = mChannel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        byte[] bytes = buffer.array();
+        boolean inQuotes = false;
+        long position = 0, lastPublish = SystemClock.uptimeMillis();
+        appendOffset(0);
+        while (position < size && !mClosed) {
+            buffer.clear();
+            int n = mChannel.read(buffer, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                byte b = bytes[i];
+                if (b == '"') {
+                    inQuotes = !inQuotes;
+                } else if (b == '\n' && !inQuotes) {
+                    appendOffset(position + i + 1);
+                }
+            }
+            position += n;
+            long now = SystemClock.uptimeMillis();
+            if (now - lastPublish >= PUBLISH_INTERVAL_MS) {
+                lastPublish = now;
+                publish(mOffsetCount - 1, position, size, false);
+            }
+        }
+        if (mClosed) {
+            return;
+        }
+        if (offsetAt(mOffsetCount - 1) < size) {//最后一行没有换行
+            appendOffset(size);
+        }
+        publish(mOffsetCount - 1, size, size, true);
+    }
+
+    private void appendOffset(long offset) {
+        int chunk = mOffsetCount >> CHUNK_SHIFT;
+        long[][] offsets = mOffsets;
+        if (chunk == offsets.length) {
+            long[][] grown = new long[offsets.length * 2][];
+            System.arraycopy(offsets, 0, grown, 0, offsets.length);
+            mOffsets = offsets = grown;
+        }
+        if (offsets[chunk] == null) {
+            offsets[chunk] = new long[CHUNK_SIZE];
+        }
+        offsets[chunk][mOffsetCount & (CHUNK_SIZE - 1)] = offset;
+        mOffsetCount++;
+    }
+
+    //第i行的起始位置, 第i+1行的起始位置就是第i行的结束位置
+    private long offsetAt(int index) {
+        return mOffsets[index >> CHUNK_SHIFT][index & (CHUNK_SIZE - 1)];
+    }
+
+    private void publish(final int rows, final long bytesIndexed, final long totalBytes, final boolean complete) {
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                onRowsIndexed(rows);
+                if (mOnIndexListener != null) {
+                    mOnIndexListener.onIndexProgress(rows, bytesIndexed, totalBytes);
+                    if (complete) {
+                        mOnIndexListener.onIndexComplete(rows);
+                    }
+                }
+            }
+        });
+    }
+
+    private void onRowsIndexed(int rows) {
+        if (rows <= mRowCount) {
+            return;
+        }
+        if (mRowCount == 0) {//第一次有数据, 列数由表头决定
+            mRowCount = rows;
+            mColCount = getRow(0).length;
+            notifyDataSetChanged();
+            return;
+        }
+        //追加在末尾, ExcelView只计算新增行的行高, 已有的排版和查找结果不动
+        int start = mRowCount;
+        mRowCount = rows;
+        notifyRowsInserted(start, rows - start);
+    }
+
+    //解析过的行, 没有缓存时从文件读, 顺便把后面几行也解析了; 只在主线程调用, 后台任务用newCellReader
+    public String[] getRow(int row) {
+        String[] fields = mRows.get(row);
+        if (fields != null) {
+            return fields;
+        }
+        String[][] parsed = mParser.read(row);
+        if (parsed == null) {
+            return new String[0];
+        }
+        for (int i = 0; i < parsed.length; i++) {
+            mRows.put(row + i, parsed[i]);
+        }
+        return parsed[0];
+    }
+
+    //读文件和解析用的缓冲区, 每个线程一个
+    private class RowParser {
+        private byte[] mReadBuffer = new byte[4096];
+        private final List<String> mFields = new ArrayList<>();
+        private final StringBuilder mField = new StringBuilder();
+
+        //从row开始的最多ROW_BATCH行, 读文件失败返回null
+        String[][] read(int row) {
+            int rowEnd = Math.min(row + ROW_BATCH, mRowCount);
+            long start = offsetAt(row);
+            while (rowEnd > row + 1 && offsetAt(rowEnd) - start > MAX_BATCH_BYTES) {
+                rowEnd--;
+            }
+            int length = (int) (offsetAt(rowEnd) - start);
+            if (mReadBuffer.length < length) {
+                mReadBuffer = new byte[Math.max(length, mReadBuffer.length * 2)];
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(mReadBuffer, 0, length);
+            try {
+                while (buffer.hasRemaining()) {
+                    if (mChannel.read(buffer, start + buffer.position()) < 0) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                return null;
+            }
+            String[][] rows = new String[rowEnd - row][];
+            for (int r = row; r < rowEnd; r++) {
+                int from = (int) (offsetAt(r) - start), to = (int) (offsetAt(r + 1) - start);
+                String[] parsed = parseRow(new String(mReadBuffer, from, to - from, mCharset));
+                if (r == 0 && parsed.length > 0 && parsed[0].length() > 0 && parsed[0].charAt(0) == '\uFEFF') {//去掉BOM
+                    parsed[0] = parsed[0].substring(1);
+                }
+                rows[r - row] = parsed;
+            }
+            return rows;
+        }
+
+        private String[] parseRow(String line) {
+            List<String> fields = mFields;
+            StringBuilder field = mField;
+            fields.clear();
+            field.setLength(0);
+            int end = line.length();
+            while (end > 0 && (line.charAt(end - 1) == '\n' || line.charAt(end - 1) == '\r')) {
+                end--;
+            }
+            boolean inQuotes = false;
+            for (int i = 0; i < end; i++) {
+                char c = line.charAt(i);
+                if (inQuotes) {
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i + 1 < end && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        inQuotes = false;
+                    }
+                } else if (c == '"') {
+                    inQuotes = true;
+                } else if (c == mDelimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[fields.size()]);
+        }
+    }
+
+    //后台任务(自动列宽、查找、汇总)自己读文件和解析, 只保留最近读的一批行,
+    //不经过LRU, 不会挤掉显示用的行
+    private class RowReader implements ExcelView.CellReader {
+        private final RowParser mParser = new RowParser();
+        private String[][] mBatch;
+        private int mBatchStart;
+
+        private String[] getRow(int row) {
+            if (mBatch == null || row < mBatchStart || row >= mBatchStart + mBatch.length) {
+                mBatch = mParser.read(row);
+                mBatchStart = row;
+                if (mBatch == null) {
+                    return new String[0];
+                }
+            }
+            return mBatch[row - mBatchStart];
+        }
+
+        @Override
+        public ExcelView.Span querySpan(int row, int col) {
+            return null;//CSV没有合并单元格
+        }
+
+        @Override
+        public CharSequence getCellText(int row, int col) {
+            String[] fields = getRow(row);
+            return col < fields.length ? fields[col] : "";
+        }
+
+        @Override
+        public double getCellValue(int row, int col) {
+            return parseValue(getRow(row), col);
+        }
+    }
+
+    @Override
+    public ExcelView.CellReader newCellReader() {
+        return new RowReader();
+    }
+
+    @Override
+    public CharSequence getCellText(int row, int col) {
+        String[] fields = getRow(row);
+        return col < fields.length ? fields[col] : "";
+    }
+
+    //能解析成数字的字段, 包括表头行
+    @Override
+    public double getCellValue(int row, int col) {
+        return parseValue(getRow(row), col);
+    }
+
+    private static double parseValue(String[] fields, int col) {
+        String field = col < fields.length ? fields[col].trim() : "";
+        if (field.isEmpty()) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(field);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    @Override
+    public int getColCount() {
+        return mColCount;
+    }
+
+    @Override
+    public int getRowCount() {
+        return mRowCount;
+    }
+
+    @Override
+    public int getRowHeight(int row) {
+        return mDefaultRowHeight;
+    }
+
+    @Override
+    public int getColWidth(int col) {
+        return mColWidths.get(col, mDefaultColWidth);
+    }
+
+    @Override
+    public int getCellViewType(int row, int col) {
+        return row == 0 ? VIEW_TYPE_HEADER : VIEW_TYPE_CELL;
+    }
+
+    @Override
+    public ExcelView.CellRenderer getCellRenderer(int viewType) {
+        return viewType == VIEW_TYPE_HEADER ? mHeaderRenderer : mCellRenderer;
+    }
+
+    @Override
+    public View createCellView(Context context, int viewType) {
+        TextView view = new TextView(context);
+        view.setSingleLine(true);
+        view.setGravity(viewType == VIEW_TYPE_HEADER ? Gravity.CENTER : Gravity.LEFT | Gravity.CENTER_VERTICAL);
+        view.setBackgroundColor(viewType == VIEW_TYPE_HEADER ? Color.LTGRAY : Color.WHITE);
+        return view;
+    }
+
+    @Override
+    public View getCellView(Context context, View convertView, int row, int col) {
+        if (convertView == null) {
+            convertView = createCellView(context, getCellViewType(row, col));
+        }
+        ((TextView) convertView).setText(getCellText(row, col));
+        return convertView;
+    }
+}
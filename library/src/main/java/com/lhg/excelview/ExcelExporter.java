@@ -0,0 +1,709 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.pdf.PdfDocument;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.View;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 把任意单元格区域离屏画成PNG分块或多页PDF, 和ExcelView用同一个adapter、合并单元格和分割线规则.
+ * 区域一块一块地画, 每种viewType只保留一个view反复绑定, 同一时间只有一块bitmap,
+ * 行在绘制时逐段计算, 不为所有行建数组; PNG的内存与区域大小无关.
+ * PdfDocument在writeTo之前会保留所有画完的页, 写到一个流时内存随页数增长,
+ * 区域很大时用按页数分文件的exportPdf, 每个文件写完就释放.
+ * adapter的行高、列宽、合并单元格和viewType只在主线程读: 行高每次取一批, 每一块要画的cell在主线程列出来;
+ * 块中的cell都是ExcelAdapter.isDrawThreadSafe的在后台线程画, 否则在列出cell的同一次切换中直接在主线程画.
+ * PNG编码和写PDF都在后台线程.
+ */
+public class ExcelExporter {
+    private static Executor sDefaultExecutor;
+
+    public interface ExportListener {
+        //主线程, 每画完一块/一页回调一次
+        void onProgress(int done, int total);
+
+        //主线程, 结束时回调一次; 取消时cancelled为true, 出错时error不为null
+        void onFinished(boolean cancelled, Exception error);
+    }
+
+    public interface TileCallback {
+        //后台线程, tile是(tileRow, tileCol)这一块, 返回后会被下一块复用
+        void onTile(int tileRow, int tileCol, Bitmap tile) throws IOException;
+    }
+
+    public static class Task {
+        volatile boolean cancelled;
+
+        //画完当前这一块后停止, 已经写出的文件不删除
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final Context mContext;
+    private final ExcelView.ExcelAdapter mAdapter;
+    private final SparseIntArray mColWidths;//ExcelView中setColWidth和自动列宽的结果, 优先于adapter
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final Paint mDividerPaint = new Paint();
+    private final SparseArray<View> mViews = new SparseArray<>();//每种viewType一个, 所有块共用
+    private int mDividerWidth;
+    private int mBackgroundColor = Color.WHITE;
+    private int mPageWidth = 595, mPageHeight = 842;//A4, 单位是点(1/72英寸)
+    private int mPageMargin = 36;
+    private float mPdfScale = 0.5f;//单元格的像素 -> 点
+    private Executor mExecutor;
+
+    public ExcelExporter(Context context, ExcelView.ExcelAdapter adapter) {
+        this(context, adapter, new SparseIntArray(), 2, Color.LTGRAY);
+    }
+
+    //沿用view的分割线和列宽(不含缩放)
+    public ExcelExporter(ExcelView view) {
+        this(view.getContext(), view.getAdapter(), view.mColWidthOverrides.clone(), view.mDividerWidth, view.mDividerColor);
+    }
+
+    private ExcelExporter(Context context, ExcelView.ExcelAdapter adapter, SparseIntArray colWidths,
+                          int dividerWidth, int dividerColor) {
+        if (adapter == null) {
+            throw new IllegalArgumentException("adapter must not be null");
+        }
+        mContext = context;
+        mAdapter = adapter;
+        mColWidths = colWidths;
+        mDividerWidth = dividerWidth;
+        mDividerPaint.setColor(dividerColor);
+    }
+
+    public void setDividerWidth(int dividerWidth) {
+        mDividerWidth = dividerWidth;
+    }
+
+    public void setDividerColor(int dividerColor) {
+        mDividerPaint.setColor(dividerColor);
+    }
+
+    //单元格之外(比如PNG最后一块没画满的部分)的颜色, PNG需要透明时设为Color.TRANSPARENT
+    public void setBackgroundColor(int color) {
+        mBackgroundColor = color;
+    }
+
+    //PDF的页面大小和页边距, 单位是点
+    public void setPageSize(int width, int height, int margin) {
+        if (width - margin * 2 <= 0 || height - margin * 2 <= 0) {
+            throw new IllegalArgumentException("page is smaller than its margins");
+        }
+        mPageWidth = width;
+        mPageHeight = height;
+        mPageMargin = margin;
+    }
+
+    //单元格的1像素在PDF中是多少点
+    public void setPdfScale(float scale) {
+        mPdfScale = scale;
+    }
+
+    //默认所有导出共用一个后台线程; 多线程的executor上同时导出时, 绘制仍然一次一块
+    public void setExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    private Executor getExecutor() {
+        if (mExecutor != null) {
+            return mExecutor;
+        }
+        synchronized (ExcelExporter.class) {
+            if (sDefaultExecutor == null) {
+                sDefaultExecutor = Executors.newSingleThreadExecutor(ExcelView.backgroundThreadFactory("ExcelView-export"));
+            }
+            return sDefaultExecutor;
+        }
+    }
+
+    //[row1, row2]x[col1, col2]按tileWidth x tileHeight像素切块, 从左到右、从上到下交给callback, 拼起来就是整个区域;
+    //最右一列和最下一行的块可能小一些
+    public Task exportTiles(int row1, int col1, int row2, int col2, int tileWidth, int tileHeight,
+                            final TileCallback callback, ExportListener listener) {
+        checkRange(row1, col1, row2, col2);
+        if (tileWidth <= 0 || tileHeight <= 0) {
+            throw new IllegalArgumentException("tile size must be positive");
+        }
+        Task task = new Task();
+        getExecutor().execute(new TileJob(task, listener, row1, col1, row2, col2, tileWidth, tileHeight, callback));
+        return task;
+    }
+
+    //每块写成dir下的tile_<tileRow>_<tileCol>.png
+    public Task exportPng(int row1, int col1, int row2, int col2, int tileWidth, int tileHeight,
+                          final File dir, ExportListener listener) {
+        return exportTiles(row1, col1, row2, col2, tileWidth, tileHeight, new TileCallback() {
+            @Override
+            public void onTile(int tileRow, int tileCol, Bitmap tile) throws IOException {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("cannot create " + dir);
+                }
+                OutputStream out = new FileOutputStream(new File(dir, "tile_" + tileRow + "_" + tileCol + ".png"));
+                try {
+                    tile.compress(Bitmap.CompressFormat.PNG, 100, out);
+                } finally {
+                    out.close();
+                }
+            }
+        }, listener);
+    }
+
+    //多页PDF, 分页在行列的边界上, 先从左到右再从上到下; 比一页还大的单行/单列会被截断; out不会被关闭.
+    //所有页在结束时一起写出, 之前都留在内存里
+    public Task exportPdf(int row1, int col1, int row2, int col2, OutputStream out, ExportListener listener) {
+        return exportPdf(row1, col1, row2, col2, out, null, Integer.MAX_VALUE, listener);
+    }
+
+    //同上, 每pagesPerFile页写成dir下的一个part_<index>.pdf(index从0开始), 内存中最多pagesPerFile页
+    public Task exportPdf(int row1, int col1, int row2, int col2, File dir, int pagesPerFile, ExportListener listener) {
+        if (pagesPerFile <= 0) {
+            throw new IllegalArgumentException("pagesPerFile must be positive");
+        }
+        return exportPdf(row1, col1, row2, col2, null, dir, pagesPerFile, listener);
+    }
+
+    private Task exportPdf(int row1, int col1, int row2, int col2, OutputStream out, File dir, int pagesPerFile,
+                           ExportListener listener) {
+        checkRange(row1, col1, row2, col2);
+        int width = (int) ((mPageWidth - mPageMargin * 2) / mPdfScale);
+        int height = (int) ((mPageHeight - mPageMargin * 2) / mPdfScale);
+        Task task = new Task();
+        getExecutor().execute(new PdfJob(task, listener, row1, col1, row2, col2, Math.max(1, width), Math.max(1, height),
+                out, dir, pagesPerFile));
+        return task;
+    }
+
+    private void checkRange(int row1, int col1, int row2, int col2) {
+        if (row1 < 0 || col1 < 0 || row1 > row2 || col1 > col2 ||
+                row2 >= mAdapter.getRowCount() || col2 >= mAdapter.getColCount()) {
+            throw new IllegalArgumentException("invalid range " + row1 + "," + col1 + " - " + row2 + "," + col2);
+        }
+    }
+
+    private int colWidth(int col) {
+        int width = mColWidths.get(col, -1);
+        return width >= 0 ? width : mAdapter.getColWidth(col);
+    }
+
+    //在主线程执行r并等它完成; 已经在主线程时直接执行
+    private void runOnMain(final Runnable r) throws IOException {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            r.run();
+            return;
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final RuntimeException[] thrown = new RuntimeException[1];
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    r.run();
+                } catch (RuntimeException e) {
+                    thrown[0] = e;
+                } finally {
+                    latch.countDown();
+                }
+            }
+        });
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        if (thrown[0] != null) {
+            throw thrown[0];
+        }
+    }
+
+    //按行号递增读行高, 每次在主线程取一批
+    private class RowHeights {
+        static final int BATCH = 4096;
+        final int lastRow;
+        final int[] heights = new int[BATCH];
+        int start, end;//缓存的是[start, end)
+
+        RowHeights(int lastRow) {
+            this.lastRow = lastRow;
+        }
+
+        int get(final int row) throws IOException {
+            if (row < start || row >= end) {
+                final int n = Math.min(BATCH, lastRow + 1 - row);
+                runOnMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < n; i++) {
+                            heights[i] = mAdapter.getRowHeight(row + i);
+                        }
+                    }
+                });
+                start = row;
+                end = row + n;
+            }
+            return heights[row - start];
+        }
+    }
+
+    //一段连续的行: firstRow开始的count行, 第i行的顶部和高度; [top, bottom)是这一段要画的范围
+    private static class Band {
+        int top, bottom;
+        int firstRow, count;
+        int[] tops = new int[64], heights = new int[64];
+        int nextRow, nextTop;//下一段的第一行和它的顶部
+
+        void add(int top, int height) {
+            if (count == tops.length) {
+                tops = Arrays.copyOf(tops, count * 2);
+                heights = Arrays.copyOf(heights, count * 2);
+            }
+            tops[count] = top;
+            heights[count] = height;
+            count++;
+        }
+    }
+
+    //一块中要画的cell, 每个占STRIDE个int: row, col, x, y, w, h, viewType(合并单元格是左上角的), 位置相对区域左上角
+    private static class CellList {
+        static final int STRIDE = 7;
+        int[] data = new int[64 * STRIDE];
+        int count;
+        boolean threadSafe;//都可以在后台线程画
+
+        void add(int row, int col, int x, int y, int w, int h, int viewType) {
+            int i = count * STRIDE;
+            if (i + STRIDE > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[i] = row;
+            data[i + 1] = col;
+            data[i + 2] = x;
+            data[i + 3] = y;
+            data[i + 4] = w;
+            data[i + 5] = h;
+            data[i + 6] = viewType;
+            count++;
+        }
+    }
+
+    //按块遍历区域: align为true时块的边界在行列之间(PDF分页), 否则按固定像素切(PNG拼接)
+    private abstract class Job implements Runnable {
+        final Task task;
+        final ExportListener listener;
+        final int row1, col1, row2, col2;
+        final int tileWidth, tileHeight;
+        final boolean align;
+        final Band band = new Band();
+        final CellList cells = new CellList();
+        final RowHeights rowHeights;
+        int[] colX;//区域内各列的左边, 相对区域左边, 最后一个是总宽度
+        int[] colBreaks;//各块的左边, 最后一个是总宽度
+        int total, done;
+
+        Job(Task task, ExportListener listener, int row1, int col1, int row2, int col2,
+            int tileWidth, int tileHeight, boolean align) {
+            this.task = task;
+            this.listener = listener;
+            this.row1 = row1;
+            this.col1 = col1;
+            this.row2 = row2;
+            this.col2 = col2;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.align = align;
+            rowHeights = new RowHeights(row2);
+        }
+
+        @Override
+        public void run() {
+            Exception error = null;
+            try {
+                colX = new int[col2 - col1 + 2];
+                runOnMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int col = col1; col <= col2; col++) {
+                            colX[col - col1 + 1] = colX[col - col1] + colWidth(col);
+                        }
+                    }
+                });
+                colBreaks = breakCols();
+                total = countBands() * (colBreaks.length - 1);
+                begin();
+                int row = row1, rowTop = 0, top = 0, tileRow = 0;
+                while (row <= row2 && !task.cancelled) {
+                    fillBand(band, rowHeights, row, rowTop, top);
+                    for (int i = 0; i + 1 < colBreaks.length && !task.cancelled; i++) {
+                        drawTile(tileRow, i, colBreaks[i], colBreaks[i + 1]);
+                        done++;
+                        postProgress(done);
+                    }
+                    row = band.nextRow;
+                    rowTop = band.nextTop;
+                    top = band.bottom;
+                    tileRow++;
+                }
+                if (!task.cancelled) {
+                    end();
+                }
+            } catch (Exception e) {
+                error = e;
+            } finally {
+                release();
+            }
+            final Exception result = error;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (listener != null) {
+                        listener.onFinished(task.cancelled && result == null, result);
+                    }
+                }
+            });
+        }
+
+        private void postProgress(final int done) {
+            if (listener == null) {
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onProgress(done, total);
+                }
+            });
+        }
+
+        abstract void begin() throws IOException;
+
+        //画(tileRow, tileCol)这一块, 用drawRegion画内容
+        abstract void drawTile(int tileRow, int tileCol, int x0, int x1) throws IOException;
+
+        abstract void end() throws IOException;
+
+        abstract void release();
+
+        private int[] breakCols() {
+            int totalWidth = colX[colX.length - 1];
+            int[] breaks = new int[16];
+            int n = 0;
+            int x = 0, i = 0;
+            while (x < totalWidth) {
+                if (n + 1 >= breaks.length) {
+                    breaks = Arrays.copyOf(breaks, breaks.length * 2);
+                }
+                breaks[n++] = x;
+                if (align) {//至少一列, 放得下就继续加
+                    int j = i + 1;
+                    while (j < colX.length - 1 && colX[j + 1] - colX[i] <= tileWidth) {
+                        j++;
+                    }
+                    i = j;
+                    x = colX[i];
+                } else {
+                    x += tileWidth;
+                }
+            }
+            breaks[n++] = totalWidth;
+            return Arrays.copyOf(breaks, n);
+        }
+
+        //从row开始(顶部在rowTop)取出与[top, top + tileHeight)相交的行;
+        //align时只取完整放得下的行(至少一行), 否则跨过下边界的行留给下一段继续画
+        void fillBand(Band band, RowHeights heights, int row, int rowTop, int top) throws IOException {
+            band.top = top;
+            band.firstRow = row;
+            band.count = 0;
+            int end = top + tileHeight;
+            int r = row, t = rowTop;
+            while (r <= row2) {
+                int h = heights.get(r);
+                if (align ? band.count > 0 && t + h > end : t >= end) {
+                    break;
+                }
+                band.add(t, h);
+                if (!align && t + h > end) {
+                    break;
+                }
+                r++;
+                t += h;
+            }
+            band.nextRow = r;
+            band.nextTop = t;
+            band.bottom = align ? t : r > row2 ? Math.min(t, end) : end;
+        }
+
+        //先走一遍算出总块数, 只用于进度
+        private int countBands() throws IOException {
+            Band counter = new Band();
+            RowHeights heights = new RowHeights(row2);
+            int count = 0;
+            int row = row1, rowTop = 0, top = 0;
+            while (row <= row2 && !task.cancelled) {
+                fillBand(counter, heights, row, rowTop, top);
+                row = counter.nextRow;
+                rowTop = counter.nextTop;
+                top = counter.bottom;
+                count++;
+            }
+            return count;
+        }
+
+        //区域中[x0, x1)x[band.top, band.bottom)的部分画到canvas的(0, 0)处;
+        //主线程列出要画的cell, 有不能在后台画的就在同一次切换中画完
+        void drawRegion(final Canvas canvas, final int x0, final int x1) throws IOException {
+            final boolean[] drawn = new boolean[1];
+            runOnMain(new Runnable() {
+                @Override
+                public void run() {
+                    collectCells(x0, x1);
+                    if (!cells.threadSafe) {
+                        drawCells(canvas, x0, x1);
+                        drawn[0] = true;
+                    }
+                }
+            });
+            if (!drawn[0]) {
+                drawCells(canvas, x0, x1);
+            }
+        }
+
+        //x所在的列, 相对col1
+        private int firstCol(int x) {
+            int i = Arrays.binarySearch(colX, x);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        //主线程; 合并单元格在这一块中第一个出现的位置画一次, 超出块和区域的部分画的时候被裁掉
+        private void collectCells(int x0, int x1) {
+            CellList cells = this.cells;
+            cells.count = 0;
+            cells.threadSafe = true;
+            int k0 = firstCol(x0);
+            for (int i = 0; i < band.count; i++) {
+                int row = band.firstRow + i, y = band.tops[i];
+                for (int k = k0; k < colX.length - 1 && colX[k] < x1; k++) {
+                    int col = col1 + k;
+                    ExcelView.Span span = mAdapter.querySpan(row, col);
+                    int viewType;
+                    if (!ExcelView.Span.isSpan(span)) {
+                        viewType = mAdapter.getCellViewType(row, col);
+                        cells.add(row, col, colX[k], y, colX[k + 1] - colX[k], band.heights[i], viewType);
+                    } else {
+                        int firstRow = span.getFirstRow(), firstCol = span.getFirstCol();
+                        if (row != Math.max(firstRow, band.firstRow) || k != Math.max(firstCol - col1, k0)) {
+                            continue;
+                        }
+                        viewType = mAdapter.getCellViewType(firstRow, firstCol);
+                        int x = colX[k] - colsWidth(firstCol, col), top = y - rowsHeight(firstRow, row);
+                        cells.add(firstRow, firstCol, x, top, colsWidth(firstCol, span.getLastCol() + 1),
+                                rowsHeight(firstRow, span.getLastRow() + 1), viewType);
+                    }
+                    if (cells.threadSafe && !mAdapter.isDrawThreadSafe(viewType)) {
+                        cells.threadSafe = false;
+                    }
+                }
+            }
+        }
+
+        private void drawCells(Canvas canvas, int x0, int x1) {
+            synchronized (mViews) {
+                int saveCount = canvas.save();
+                canvas.translate(-x0, -band.top);
+                canvas.clipRect(x0, band.top, x1, band.bottom);
+                canvas.drawColor(mBackgroundColor);
+                int[] data = cells.data;
+                for (int i = 0, n = cells.count * CellList.STRIDE; i < n; i += CellList.STRIDE) {
+                    drawCell(canvas, data[i], data[i + 1], data[i + 2], data[i + 3], data[i + 4], data[i + 5], data[i + 6]);
+                }
+                canvas.restoreToCount(saveCount);
+            }
+        }
+
+        private int colsWidth(int from, int to) {
+            int width = 0;
+            for (int col = from; col < to; col++) {
+                width += colWidth(col);
+            }
+            return width;
+        }
+
+        private int rowsHeight(int from, int to) {
+            int height = 0;
+            for (int row = from; row < to; row++) {
+                height += mAdapter.getRowHeight(row);
+            }
+            return height;
+        }
+
+        //和ExcelView一样: 内容占去掉分割线的部分, 分割线在右边和下边
+        private void drawCell(Canvas canvas, int row, int col, int x, int y, int w, int h, int viewType) {
+            int right = x + w - mDividerWidth, bottom = y + h - mDividerWidth;
+            ExcelView.CellRenderer renderer = mAdapter.getCellRenderer(viewType);
+            if (renderer != null) {
+                renderer.drawCell(canvas, row, col, x, y, right, bottom);
+            } else if (right > x && bottom > y) {
+                View view = mAdapter.getCellView(mContext, mViews.get(viewType), row, col);
+                mViews.put(viewType, view);
+                view.measure(View.MeasureSpec.makeMeasureSpec(right - x, View.MeasureSpec.EXACTLY),
+                        View.MeasureSpec.makeMeasureSpec(bottom - y, View.MeasureSpec.EXACTLY));
+                view.layout(0, 0, right - x, bottom - y);
+                int saveCount = canvas.save();
+                canvas.translate(x, y);
+                view.draw(canvas);
+                canvas.restoreToCount(saveCount);
+            }
+            if (mDividerWidth > 0) {
+                canvas.drawRect(right, y, x + w, y + h, mDividerPaint);
+                canvas.drawRect(x, bottom, right, y + h, mDividerPaint);
+            }
+        }
+    }
+
+    private class TileJob extends Job {
+        final TileCallback callback;
+        Bitmap bitmap;//所有块复用, 小的块用reconfigure缩小
+        final Canvas canvas = new Canvas();
+
+        TileJob(Task task, ExportListener listener, int row1, int col1, int row2, int col2,
+                int tileWidth, int tileHeight, TileCallback callback) {
+            super(task, listener, row1, col1, row2, col2, tileWidth, tileHeight, false);
+            this.callback = callback;
+        }
+
+        @Override
+        void begin() {
+            int width = Math.min(tileWidth, colX[colX.length - 1]);
+            bitmap = Bitmap.createBitmap(Math.max(1, width), tileHeight, Bitmap.Config.ARGB_8888);
+        }
+
+        @Override
+        void drawTile(int tileRow, int tileCol, int x0, int x1) throws IOException {
+            int width = x1 - x0, height = band.bottom - band.top;
+            if (width <= 0 || height <= 0) {
+                return;
+            }
+            if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+                bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            }
+            bitmap.eraseColor(Color.TRANSPARENT);
+            canvas.setBitmap(bitmap);
+            drawRegion(canvas, x0, x1);
+            canvas.setBitmap(null);
+            callback.onTile(tileRow, tileCol, bitmap);
+        }
+
+        @Override
+        void end() {
+        }
+
+        @Override
+        void release() {
+            if (bitmap != null) {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+    }
+
+    //out不为null时写成一个文档, 否则每pagesPerFile页一个文件
+    private class PdfJob extends Job {
+        final OutputStream out;
+        final File dir;
+        final int pagesPerFile;
+        PdfDocument document;
+        int pageNumber;//当前文档中的页号
+        int fileIndex;
+
+        PdfJob(Task task, ExportListener listener, int row1, int col1, int row2, int col2,
+               int tileWidth, int tileHeight, OutputStream out, File dir, int pagesPerFile) {
+            super(task, listener, row1, col1, row2, col2, tileWidth, tileHeight, true);
+            this.out = out;
+            this.dir = dir;
+            this.pagesPerFile = pagesPerFile;
+        }
+
+        @Override
+        void begin() {
+        }
+
+        @Override
+        void drawTile(int tileRow, int tileCol, int x0, int x1) throws IOException {
+            if (document == null) {
+                document = new PdfDocument();
+                pageNumber = 0;
+            }
+            PdfDocument.PageInfo info = new PdfDocument.PageInfo.Builder(mPageWidth, mPageHeight, ++pageNumber).create();
+            PdfDocument.Page page = document.startPage(info);
+            Canvas canvas = page.getCanvas();
+            canvas.translate(mPageMargin, mPageMargin);
+            canvas.scale(mPdfScale, mPdfScale);
+            try {
+                drawRegion(canvas, x0, x1);
+            } finally {
+                document.finishPage(page);
+            }
+            if (pageNumber >= pagesPerFile) {
+                flush();
+            }
+        }
+
+        @Override
+        void end() throws IOException {
+            if (document != null) {
+                flush();
+            }
+        }
+
+        //写出当前文档并释放它的页
+        private void flush() throws IOException {
+            if (out != null) {
+                document.writeTo(out);
+            } else {
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    throw new IOException("cannot create " + dir);
+                }
+                OutputStream file = new FileOutputStream(new File(dir, "part_" + fileIndex++ + ".pdf"));
+                try {
+                    document.writeTo(file);
+                } finally {
+                    file.close();
+                }
+            }
+            document.close();
+            document = null;
+        }
+
+        @Override
+        void release() {
+            if (document != null) {
+                document.close();
+                document = null;
+            }
+        }
+    }
+}
@@ -1,15 +1,29 @@
 package com.lhg.excelview;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.database.DataSetObservable;
 import android.database.DataSetObserver;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Point;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.os.Process;
+import android.text.Layout;
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.util.AttributeSet;
-import android.util.Log;
+import android.util.LruCache;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import android.view.Display;
+import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.VelocityTracker;
 import android.view.View;
 import android.view.ViewConfiguration;
@@ -19,33 +33,83 @@ import android.widget.Scroller;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.lhg.excelview.core.CellRange;
+import com.lhg.excelview.core.LayoutState;
+import com.lhg.excelview.core.LongObjectMap;
+import com.lhg.excelview.core.RangeIndex;
+import com.lhg.excelview.core.ScrollHelper;
+import com.lhg.excelview.core.SizeIndex;
+import com.lhg.excelview.core.WindowDiff;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ExcelView extends ViewGroup {
 
-    private static final String TAG = "ExcelView";
     private final int mMinimumVelocity;
     private final int mMaximumVelocity;
 
     boolean mIsLayouting = false;
     final LayoutState mPreLayoutState = new LayoutState();
     final LayoutState mVisibleState = new LayoutState();
-    final Map<Position, Cell> mVisibleCells = new HashMap<>();
+    final LayoutState mLastState = new LayoutState();//增量排版时的上一个窗口
+    private final LayoutDiff mWindowDiff = new LayoutDiff();
+    final LongCellMap mVisibleCells = new LongCellMap();
     final Recycler mRecycler = new Recycler();
 
     boolean mIsDragging = false;
     Scroller mScroller;
     int mTouchSlop;
-    Point mLastMotion;
+    int mLastMotionX, mLastMotionY;
     VelocityTracker mVelocityTracker;
 
     ExcelAdapter mAdapter;
     int mDividerColor = Color.LTGRAY;
     int mDividerWidth = 2;
     Paint mDividerPaint = new Paint();
+    final GridLines mGridLines = new GridLines();
+    final List<Cell> mVisibleSpanCells = new ArrayList<>();//mVisibleCells中的合并单元格
+    final List<Cell> mSpanCellsByX = new ArrayList<>();
+    final List<Cell> mSpanCellsByY = new ArrayList<>();
+    final Prefetcher mPrefetcher = new Prefetcher();
+    int mRendererCellCount;//mVisibleCells中没有view, 直接画的cell数量
+    final List<TextLayoutCellRenderer> mTextLayoutRenderers = new ArrayList<>();//出现过的, 排版后给它们预先计算文字
+    private int mPremeasureRowStart = -1, mPremeasureRowEnd, mPremeasureColStart, mPremeasureColEnd;
+    boolean mPrefetchEnabled = true;
+    final SparseIntArray mColWidthOverrides = new SparseIntArray();//setColWidth和自动列宽的结果, 优先于adapter
+    AutoFitConfig mAutoFitConfig;
+    volatile int mAutoFitGeneration;//新的自动列宽或换adapter时丢掉还没完成的结果
+    private long mLastDownTime;
+    private int mLastDownX, mLastDownY;
+    private final int mDoubleTapSlop;
+    float mZoom = 1f;//行高列宽的缩放比例, cell按原大小measure, 用setScale缩放
+    float mMinZoom = 0.25f, mMaxZoom = 4f;
+    boolean mZoomEnabled = true;
+    boolean mZoomedInGesture;//本次触摸缩放过, 抬起前不再滚动
+    final ZoomSnapshot mZoomSnapshot = new ZoomSnapshot(this);
+    ScaleGestureDetector mScaleDetector;
+    FastScroller mFastScroller;
+    final Finder mFinder = new Finder(this);
+    final SelectionTracker mSelectionTracker;
+    //按层的绘制顺序: body, 冻结列, 冻结行, 左上角; 增删view时只标记, 绘制前重新计算
+    private int[] mDrawingOrder = new int[0];
+    private boolean mDrawingOrderDirty = true;
+    //冻结层中的cell, 滚动时整体平移, 不用重新查找和排版; body层不登记
+    @SuppressWarnings("unchecked")
+    final List<Cell>[] mLayerCells = new List[LAYER_COUNT];
+    //5.0之前触摸分发不按绘制顺序, 表头view需要放在child数组末尾才能先收到事件
+    private static final boolean TOUCH_FOLLOWS_DRAWING_ORDER = Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    OnMetricsListener mMetricsListener;
+    Metrics mMetrics;//没有listener时为null
 
     ScrollHelper mScrollHelperY = new ScrollHelper() {
         @Override
@@ -55,7 +119,8 @@ public class ExcelView extends ViewGroup {
 
         @Override
         public int getViewSize(int index) {
-            return mAdapter.getRowHeight(index);
+            int height = mAdapter.getRowHeight(index);
+            return mZoom == 1f ? height : Math.round(height * mZoom);
         }
     };
     ScrollHelper mScrollHelperX = new ScrollHelper() {
@@ -66,7 +131,11 @@ public class ExcelView extends ViewGroup {
 
         @Override
         public int getViewSize(int index) {
-            return mAdapter.getColWidth(index);
+            int width = mColWidthOverrides.get(index, -1);
+            if (width < 0) {
+                width = mAdapter.getColWidth(index);
+            }
+            return mZoom == 1f ? width : Math.round(width * mZoom);
         }
     };
 
@@ -82,11 +151,20 @@ public class ExcelView extends ViewGroup {
     public ExcelView(@NonNull Context context, @Nullable AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
         setChildrenDrawingOrderEnabled(true);
+        for (int layer = LAYER_BODY + 1; layer < LAYER_COUNT; layer++) {
+            mLayerCells[layer] = new ArrayList<>();
+        }
         mScroller = new Scroller(context);
         ViewConfiguration viewConfiguration = ViewConfiguration.get(context);
         mTouchSlop = viewConfiguration.getScaledTouchSlop();
         mMinimumVelocity = viewConfiguration.getScaledMinimumFlingVelocity();
         mMaximumVelocity = viewConfiguration.getScaledMaximumFlingVelocity();
+        mDoubleTapSlop = viewConfiguration.getScaledDoubleTapSlop();
+        mScaleDetector = new ScaleGestureDetector(context, mZoomSnapshot);
+        mFastScroller = new FastScroller(this, context);
+        mSelectionTracker = new SelectionTracker(this, context);
+        mAutoFitConfig = new AutoFitConfig();
+        mAutoFitConfig.paint.setTextSize(14 * getResources().getDisplayMetrics().scaledDensity);
         mDividerPaint.setAntiAlias(true);
         mDividerPaint.setColor(mDividerColor);
         mDividerPaint.setStrokeWidth(mDividerWidth);
@@ -106,430 +184,3118 @@ public class ExcelView extends ViewGroup {
         invalidate();
     }
 
-    private DataSetObserver mObserver = new DataSetObserver() {
-        @Override
-        public void onChanged() {
-            mPreLayoutState.invalid = true;
-            mVisibleState.invalid = true;
-            requestLayout();
+    //设置后每次排版回调一次统计数据, 不设置时不做任何统计
+    public void setOnMetricsListener(OnMetricsListener listener) {
+        mMetricsListener = listener;
+        mMetrics = listener != null ? new Metrics() : null;
+    }
+
+    private void dispatchMetrics(Metrics metrics, long layoutTimeNanos) {
+        metrics.layoutTimeNanos = layoutTimeNanos;
+        metrics.visibleCells = mVisibleCells.size();
+        metrics.pooledViews = mRecycler.pool.size();
+        metrics.pooledCells = mRecycler.cells.size();
+        mMetricsListener.onLayoutMetrics(this, metrics);
+        metrics.reset();
+    }
+
+    //开头冻结的行数, 默认1; 合并单元格不能跨过冻结区域的边界
+    public void setFrozenRows(int count) {
+        mScrollHelperY.headCount = checkFrozenCount(count);
+        onFrozenChanged();
+    }
+
+    public int getFrozenRows() {
+        return mScrollHelperY.headCount;
+    }
+
+    //开头冻结的列数, 默认1
+    public void setFrozenCols(int count) {
+        mScrollHelperX.headCount = checkFrozenCount(count);
+        onFrozenChanged();
+    }
+
+    public int getFrozenCols() {
+        return mScrollHelperX.headCount;
+    }
+
+    //末尾冻结的行数(比如合计行), 默认0, 始终显示在底部
+    public void setFrozenFooterRows(int count) {
+        mScrollHelperY.footCount = checkFrozenCount(count);
+        onFrozenChanged();
+    }
+
+    public int getFrozenFooterRows() {
+        return mScrollHelperY.footCount;
+    }
+
+    private static int checkFrozenCount(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("frozen count must not be negative");
         }
-    };
+        return count;
+    }
 
-    @Override
-    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
-        super.onSizeChanged(w, h, oldw, oldh);
+    //可见cell保留, 排版时换到新的层
+    private void onFrozenChanged() {
+        mPrefetcher.clear();
+        mPremeasureRowStart = -1;
+        mPreLayoutState.invalid = true;
+        mVisibleState.dirty = true;
         requestLayout();
+        invalidate();
     }
 
-    public ExcelAdapter getAdapter() {
-        return mAdapter;
+    //只有一行的高度变化, 单点更新索引
+    public void notifyRowHeightChanged(int row) {
+        mScrollHelperY.updateIndex(row);
+        mPreLayoutState.invalid = true;
+        mVisibleState.dirty = true;
+        requestLayout();
     }
 
-    public void setAdapter(ExcelAdapter adapter) {
-        mRecycler.clear();
-        mVisibleCells.clear();
-        mVisibleState.init();
-        mPreLayoutState.init();
-        removeAllViews();
+    //只有一列的宽度变化, 单点更新索引
+    public void notifyColWidthChanged(int col) {
+        mScrollHelperX.updateIndex(col);
+        mPreLayoutState.invalid = true;
+        mVisibleState.dirty = true;
+        requestLayout();
+    }
 
-        if (mAdapter != null) {
-            mAdapter.unregisterDataSetObserver(mObserver);
+    //scrollToCell的对齐方式
+    public static final int ALIGN_NEAREST = 0;//已完整可见时不动, 否则滚动最少的距离
+    public static final int ALIGN_START = 1;
+    public static final int ALIGN_CENTER = 2;
+    public static final int ALIGN_END = 3;
+    private static final int SMOOTH_SCROLL_MAX_SCREENS = 2;
+
+    //内容总宽度(含冻结列), 与当前缩放比例一致
+    public int getContentWidth() {
+        return mAdapter != null ? mScrollHelperX.getIndex().total() : 0;
+    }
+
+    public int getContentHeight() {
+        return mAdapter != null ? mScrollHelperY.getIndex().total() : 0;
+    }
+
+    public int getMaxScrollX() {
+        return mAdapter != null ? mScrollHelperX.maxScroll(getWidth()) : 0;
+    }
+
+    public int getMaxScrollY() {
+        return mAdapter != null ? mScrollHelperY.maxScroll(getHeight()) : 0;
+    }
+
+    //直接算出目标位置, 只排版目标窗口; 冻结的行/列对应方向不滚动
+    public void scrollToCell(int row, int col, int alignment) {
+        if (mAdapter == null) {
+            return;
         }
-        mAdapter = adapter;
-        if (mAdapter != null) {
-            mAdapter.registerDataSetObserver(mObserver);
+        mScroller.forceFinished(true);
+        scrollTo(targetScroll(mScrollHelperX, col, getWidth(), getScrollX(), alignment),
+                targetScroll(mScrollHelperY, row, getHeight(), getScrollY(), alignment));
+    }
+
+    //距离超过两屏时先直接跳到目标附近, 只动画最后一段, 中间的窗口不排版
+    public void smoothScrollToCell(int row, int col, int alignment) {
+        if (mAdapter == null) {
+            return;
         }
-        requestLayout();
+        mScroller.forceFinished(true);
+        int x = targetScroll(mScrollHelperX, col, getWidth(), getScrollX(), alignment);
+        int y = targetScroll(mScrollHelperY, row, getHeight(), getScrollY(), alignment);
+        int maxDx = getWidth() * SMOOTH_SCROLL_MAX_SCREENS, maxDy = getHeight() * SMOOTH_SCROLL_MAX_SCREENS;
+        int dx = x - getScrollX(), dy = y - getScrollY();
+        if (Math.abs(dx) > maxDx || Math.abs(dy) > maxDy) {
+            scrollTo(x - Integer.signum(dx) * Math.min(Math.abs(dx), maxDx),
+                    y - Integer.signum(dy) * Math.min(Math.abs(dy), maxDy));
+        }
+        mScroller.startScroll(getScrollX(), getScrollY(), x - getScrollX(), y - getScrollY());
+        postInvalidateOnAnimation();
     }
 
-    @Override
-    protected void onDetachedFromWindow() {
-        super.onDetachedFromWindow();
-        if (mAdapter != null) {
-            mAdapter.unregisterDataSetObserver(mObserver);
+    private int targetScroll(ScrollHelper helper, int index, int visibleSize, int current, int alignment) {
+        SizeIndex sizes = helper.getIndex();
+        int headEnd = helper.headEnd(sizes.count), footStart = helper.footStart(sizes.count);
+        if (index < headEnd || index >= footStart) {
+            return current;
+        }
+        int head = sizes.offsetOf(headEnd);
+        int bodyEnd = visibleSize - (sizes.total() - sizes.offsetOf(footStart));//末尾冻结部分的起点
+        int start = sizes.offsetOf(index), size = sizes.sizeOf(index);
+        int alignStart = start - head, alignEnd = start + size - bodyEnd;
+        int target;
+        switch (alignment) {
+            case ALIGN_START:
+                target = alignStart;
+                break;
+            case ALIGN_END:
+                target = alignEnd;
+                break;
+            case ALIGN_CENTER:
+                target = start + size / 2 - (head + (bodyEnd - head) / 2);
+                break;
+            default:
+                if (alignStart < current) {
+                    target = alignStart;
+                } else if (alignEnd > current) {
+                    target = Math.min(alignStart, alignEnd);//比body还大时对齐开头
+                } else {
+                    target = current;
+                }
+                break;
         }
+        return Math.max(0, Math.min(helper.maxScroll(visibleSize), target));
+    }
+
+    public void setFastScrollEnabled(boolean enabled) {
+        mFastScroller.enabled = enabled;
+        invalidate();
     }
 
     @Override
-    public boolean onInterceptTouchEvent(MotionEvent ev) {
-        if (mVelocityTracker == null) {
-            mVelocityTracker = VelocityTracker.obtain();
+    protected int computeHorizontalScrollRange() {
+        return getContentWidth();
+    }
+
+    @Override
+    protected int computeHorizontalScrollOffset() {
+        return getScrollX();
+    }
+
+    @Override
+    protected int computeHorizontalScrollExtent() {
+        return getWidth();
+    }
+
+    @Override
+    protected int computeVerticalScrollRange() {
+        return getContentHeight();
+    }
+
+    @Override
+    protected int computeVerticalScrollOffset() {
+        return getScrollY();
+    }
+
+    @Override
+    protected int computeVerticalScrollExtent() {
+        return getHeight();
+    }
+
+    public void setZoomEnabled(boolean enabled) {
+        mZoomEnabled = enabled;
+    }
+
+    public void setZoomRange(float minZoom, float maxZoom) {
+        mMinZoom = minZoom;
+        mMaxZoom = maxZoom;
+        setZoom(mZoom);
+    }
+
+    public float getZoom() {
+        return mZoom;
+    }
+
+    //缩放后body左上角仍然是原来第一个可见的内容
+    public void setZoom(float zoom) {
+        //冻结的行列也按同样比例缩放, 以视图左上角为中心时body左上角的内容正好落在新的body左上角
+        applyZoom(zoom, 0, 0);
+    }
+
+    //按新比例重新排版, (focusX, focusY)是视图坐标中不动的点: body中x = 内容坐标 - scroll
+    void applyZoom(float zoom, float focusX, float focusY) {
+        zoom = Math.max(mMinZoom, Math.min(mMaxZoom, zoom));
+        if (zoom == mZoom) {
+            invalidate();
+            return;
         }
-        mVelocityTracker.addMovement(ev);
-        switch (ev.getAction() & MotionEvent.ACTION_MASK) {
-            case MotionEvent.ACTION_DOWN:
-                mLastMotion = new Point((int) ev.getX(), (int) ev.getY());
-                if (mScroller != null) {
-                    if (!mScroller.isFinished()) {
-                        mScroller.forceFinished(true);
-                    }
+        float scale = zoom / mZoom;
+        int scrollX = Math.round(getScrollX() * scale + focusX * (scale - 1));
+        int scrollY = Math.round(getScrollY() * scale + focusY * (scale - 1));
+        mZoom = zoom;
+        mPrefetcher.clear();
+        mScrollHelperX.invalidIndex();
+        mScrollHelperY.invalidIndex();
+        mPreLayoutState.invalid = true;
+        mVisibleState.dirty = true;
+        scrollTo(scrollX, scrollY);
+        requestLayout();
+        invalidate();
+    }
+
+    //cell去掉分割线后按原比例的大小, 用于measure
+    private int contentSize(int size) {
+        int content = size - mDividerWidth;
+        return mZoom == 1f ? content : Math.max(0, Math.round(content / mZoom));
+    }
+
+    //覆盖adapter给出的列宽, width < 0时恢复adapter的列宽
+    public void setColWidth(int col, int width) {
+        if (width < 0) {
+            mColWidthOverrides.delete(col);
+        } else {
+            mColWidthOverrides.put(col, width);
+        }
+        notifyColWidthChanged(col);
+    }
+
+    //清除setColWidth和自动列宽设置的宽度
+    public void clearColWidths() {
+        mAutoFitGeneration++;
+        mColWidthOverrides.clear();
+        mScrollHelperX.invalidIndex();
+        mPreLayoutState.invalid = true;
+        mVisibleState.dirty = true;
+        requestLayout();
+    }
+
+    public void setAutoFitConfig(@NonNull AutoFitConfig config) {
+        mAutoFitConfig = config;
+    }
+
+    public AutoFitConfig getAutoFitConfig() {
+        return mAutoFitConfig;
+    }
+
+    //所有列按内容自动调整宽度
+    public void autoFitColumns() {
+        if (mAdapter == null) {
+            return;
+        }
+        int[] cols = new int[mAdapter.getColCount()];
+        for (int i = 0; i < cols.length; i++) {
+            cols[i] = i;
+        }
+        autoFit(cols);
+    }
+
+    public void autoFitColumn(int col) {
+        if (mAdapter != null && col >= 0 && col < mAdapter.getColCount()) {
+            autoFit(new int[]{col});
+        }
+    }
+
+    private void autoFit(int[] cols) {
+        if (cols.length == 0 || mAdapter.getRowCount() <= 0) {
+            return;
+        }
+        new AutoFitTask(cols, sampleRows(mAutoFitConfig)).start();
+    }
+
+    //返回null表示所有行
+    private int[] sampleRows(AutoFitConfig config) {
+        int rowCount = mAdapter.getRowCount();
+        int sampleSize = config.sampleSize;
+        switch (config.sampleMode) {
+            case AutoFitConfig.SAMPLE_VISIBLE_ROWS: {
+                //开头冻结的、body中可见的、末尾冻结的, 三段按顺序不重叠
+                LayoutState state = mVisibleState;
+                if (state.height == 0) {//还没有排版过
+                    return new int[]{0};
                 }
-                break;
-            case MotionEvent.ACTION_MOVE: {
-                int dx = (int) (ev.getX() - mLastMotion.x);
-                int dy = (int) (ev.getY() - mLastMotion.y);
-                if (Math.max(Math.abs(dx), Math.abs(dy)) >= mTouchSlop) {
-                    mIsDragging = true;
+                int headEnd = Math.min(rowCount, state.headRowCount);
+                int footStart = Math.max(headEnd, Math.min(rowCount, state.footRowStart));
+                int bodyStart = Math.max(headEnd, state.firstBodyRow);
+                int bodyEnd = Math.max(bodyStart, Math.min(footStart, state.firstBodyRow + state.bodyRowCount));
+                boolean addHeader = headEnd == 0 && bodyStart > 0;//没有冻结行时第0行也要测量
+                int[] rows = new int[(addHeader ? 1 : 0) + headEnd + bodyEnd - bodyStart + rowCount - footStart];
+                int i = 0;
+                if (addHeader) {
+                    rows[i++] = 0;
                 }
-                return mIsDragging;//必须 拦截move, 否则 自视图中如果设置了onclick事件,则无法滚动
+                for (int row = 0; row < headEnd; row++) {
+                    rows[i++] = row;
+                }
+                for (int row = bodyStart; row < bodyEnd; row++) {
+                    rows[i++] = row;
+                }
+                for (int row = footStart; row < rowCount; row++) {
+                    rows[i++] = row;
+                }
+                return rows;
             }
+            case AutoFitConfig.SAMPLE_RANDOM: {
+                if (sampleSize >= rowCount - 1) {
+                    return null;
+                }
+                //Floyd抽样, 不重复, 第0行总是包含
+                Random random = new Random(config.seed);
+                Set<Integer> picked = new HashSet<>();
+                for (int j = rowCount - sampleSize; j < rowCount; j++) {
+                    int r = 1 + random.nextInt(j);
+                    picked.add(picked.contains(r) ? j : r);
+                }
+                int[] rows = new int[picked.size() + 1];
+                int i = 1;
+                for (int r : picked) {
+                    rows[i++] = r;
+                }
+                Arrays.sort(rows);
+                return rows;
+            }
+            case AutoFitConfig.SAMPLE_FIRST_ROWS: {
+                if (sampleSize >= rowCount - 1) {
+                    return null;
+                }
+                int[] rows = new int[sampleSize + 1];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = i;
+                }
+                return rows;
+            }
+            default:
+                return null;
         }
-        return super.onInterceptTouchEvent(ev);
     }
 
-    @Override
-    public boolean onTouchEvent(MotionEvent ev) {
-        if (mVelocityTracker == null) {
-            mVelocityTracker = VelocityTracker.obtain();
+    //每列一个任务在线程池里并行测量, 全部完成后一次性更新列宽;
+    //adapter不能在后台读时, 主线程分批取出文字的副本, 每批一个测量任务
+    private class AutoFitTask {
+        final ExcelAdapter adapter = mAdapter;
+        final AutoFitConfig config = mAutoFitConfig;
+        final int generation = ++mAutoFitGeneration;
+        final int dividerWidth = mDividerWidth;
+        final int[] cols;
+        final int[] rows;//null表示所有行
+        final int rowCount;
+        final float[] maxWidths;//-1表示还没有有文字的单元格
+        final AtomicInteger remaining;
+
+        AutoFitTask(int[] cols, int[] rows) {
+            this.cols = cols;
+            this.rows = rows;
+            rowCount = rows != null ? rows.length : adapter.getRowCount();
+            maxWidths = new float[cols.length];
+            Arrays.fill(maxWidths, -1);
+            remaining = new AtomicInteger(cols.length);
         }
-        mVelocityTracker.addMovement(ev);
-        switch (ev.getAction() & MotionEvent.ACTION_MASK) {
-            case MotionEvent.ACTION_MOVE: {
-                int dx = (int) (ev.getX() - mLastMotion.x);
-                int dy = (int) (ev.getY() - mLastMotion.y);
-                if (Math.max(Math.abs(dx), Math.abs(dy)) > mTouchSlop) {
-                    mIsDragging = true;
+
+        void start() {
+            Executor executor = config.getExecutor();
+            for (int i = 0; i < cols.length; i++) {
+                final int index = i;
+                final CellReader reader = adapter.newCellReader();
+                if (reader != null) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (!isCancelled()) {
+                                onMeasured(index, config.measureColumn(reader, cols[index], rows, rowCount));
+                            }
+                        }
+                    });
+                    continue;
                 }
-                if (mIsDragging) {
-                    Log.i(TAG, "move " + (getScrollX() - dx) + ", " + (getScrollY() - dy));
-                    scrollTo(getScrollX() - dx, getScrollY() - dy);
-                    mLastMotion = new Point((int) ev.getX(), (int) ev.getY());
+                TextSnapshot snapshot = new TextSnapshot(adapter, executor, rows, 0, rowCount, cols[i], cols[i] + 1, true) {
+                    @Override
+                    boolean isCancelled() {
+                        return AutoFitTask.this.isCancelled();
+                    }
+
+                    @Override
+                    void onBatch(int batch, int start, int end, CharSequence[] texts) {
+                        onMeasured(index, config.measureTexts(texts));
+                    }
+                };
+                remaining.addAndGet(snapshot.batchCount() - 1);
+                post(snapshot);
+            }
+        }
+
+        boolean isCancelled() {
+            return generation != mAutoFitGeneration;
+        }
+
+        //后台线程, 一列或一列中的一批测量完
+        void onMeasured(int index, float width) {
+            synchronized (maxWidths) {
+                maxWidths[index] = Math.max(maxWidths[index], width);
+            }
+            if (remaining.decrementAndGet() == 0) {
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        apply();
+                    }
+                });
+            }
+        }
+
+        void apply() {
+            if (isCancelled() || adapter != mAdapter) {
+                return;
+            }
+            int colCount = adapter.getColCount();
+            synchronized (maxWidths) {
+                for (int i = 0; i < cols.length; i++) {
+                    if (maxWidths[i] >= 0 && cols[i] < colCount) {
+                        mColWidthOverrides.put(cols[i], config.clampWidth(maxWidths[i], dividerWidth));
+                    }
                 }
-                break;
             }
-            case MotionEvent.ACTION_CANCEL:
-            case MotionEvent.ACTION_UP: {
-                mVelocityTracker.computeCurrentVelocity(1000);
-                int velocityX = (int) mVelocityTracker.getXVelocity();
-                int velocityY = (int) mVelocityTracker.getYVelocity();
-                Log.i(TAG, "1velocityX=" + velocityX + ", velocityY=" + velocityY);
-                if (Math.abs(velocityX) >= Math.abs(velocityY)) {
-                    velocityY = 0;
-                } else {
-                    velocityX = 0;
+            mScrollHelperX.invalidIndex();
+            mPreLayoutState.invalid = true;
+            mVisibleState.dirty = true;
+            requestLayout();
+        }
+    }
+
+    //主线程分批取出[rowStart, rowEnd) x [colStart, colEnd)的文字(不可变的副本)交给executor处理,
+    //用于newCellReader返回null的adapter; 每批不超过BATCH_CELLS个单元格, 不会长时间占用主线程
+    abstract class TextSnapshot implements Runnable {
+        static final int BATCH_CELLS = 2048;
+        final ExcelAdapter adapter;
+        final Executor executor;
+        final int[] rows;//不为null时读取rows[rowStart, rowEnd)这些行
+        final int rowStart, rowEnd;
+        final int colStart, colEnd;
+        final boolean skipSpans;//合并单元格的文字为null
+        final int batchRows;
+        int next;
+
+        TextSnapshot(ExcelAdapter adapter, Executor executor, int[] rows, int rowStart, int rowEnd,
+                     int colStart, int colEnd, boolean skipSpans) {
+            this.adapter = adapter;
+            this.executor = executor;
+            this.rows = rows;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+            this.colStart = colStart;
+            this.colEnd = colEnd;
+            this.skipSpans = skipSpans;
+            batchRows = Math.max(1, BATCH_CELLS / Math.max(1, colEnd - colStart));
+            next = rowStart;
+        }
+
+        int batchCount() {
+            return Math.max(1, (rowEnd - rowStart + batchRows - 1) / batchRows);
+        }
+
+        abstract boolean isCancelled();
+
+        //executor上调用, texts[(i - start) * (colEnd - colStart) + col - colStart]为第i行(rows不为null时是rows[i])的文字
+        abstract void onBatch(int batch, int start, int end, CharSequence[] texts);
+
+        @Override
+        public void run() {
+            if (isCancelled() || adapter != mAdapter) {
+                return;
+            }
+            final int batch = (next - rowStart) / batchRows;
+            final int start = next, end = Math.min(rowEnd, start + batchRows);
+            int width = colEnd - colStart;
+            int rowCount = adapter.getRowCount(), colCount = adapter.getColCount();
+            final CharSequence[] texts = new CharSequence[(end - start) * width];
+            for (int i = start; i < end; i++) {
+                int row = rows != null ? rows[i] : i;
+                if (row >= rowCount) {//数据变少了
+                    continue;
                 }
-                if ((Math.abs(velocityX) <= mMinimumVelocity)) {
-                    velocityX = 0;
+                for (int col = colStart; col < Math.min(colEnd, colCount); col++) {
+                    if (skipSpans && Span.isSpan(adapter.querySpan(row, col))) {
+                        continue;
+                    }
+                    texts[(i - start) * width + col - colStart] = immutableText(adapter.getCellText(row, col));
                 }
-                if ((Math.abs(velocityY) <= mMinimumVelocity)) {
-                    velocityY = 0;
+            }
+            next = end;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!isCancelled()) {
+                        onBatch(batch, start, end, texts);
+                    }
                 }
+            });
+            if (end < rowEnd) {
+                post(this);
+            }
+        }
+    }
 
-                Log.i(TAG, "2velocityX=" + velocityX + ", velocityY=" + velocityY);
-                if ((velocityX !=0 || velocityY != 0) && getChildCount() > 0) {
-                    mScroller.fling(getScrollX(), getScrollY(), -velocityX, -velocityY,
-                            0, Integer.MAX_VALUE, 0, Integer.MAX_VALUE);
-                    invalidate();
-                }
-                mIsDragging = false;
-                if (mVelocityTracker != null) {
-                    mVelocityTracker.clear();
-                    mVelocityTracker.recycle();
-                    mVelocityTracker = null;
+    //getCellText返回的可能是会被复用的StringBuilder等, 交给后台线程前复制一份
+    static CharSequence immutableText(CharSequence text) {
+        if (text == null || text instanceof String) {
+            return text;
+        }
+        return text instanceof Spanned ? new SpannedString(text) : text.toString();
+    }
+
+    //行列插入删除移动后, 覆盖的列宽跟着列走
+    private void remapColWidths(int op, int start, int count, int to) {
+        if (mColWidthOverrides.size() == 0) {
+            return;
+        }
+        int size = mColWidthOverrides.size();
+        int[] cols = new int[size], widths = new int[size];
+        for (int i = 0; i < size; i++) {
+            cols[i] = mColWidthOverrides.keyAt(i);
+            widths[i] = mColWidthOverrides.valueAt(i);
+        }
+        mColWidthOverrides.clear();
+        for (int i = 0; i < size; i++) {
+            int col = ExcelObserver.mapIndex(op, cols[i], start, count, to);
+            if (col >= 0) {
+                mColWidthOverrides.put(col, widths[i]);
+            }
+        }
+    }
+
+    //双击表头中列的分割线, 返回分割线左边的列, 不在分割线上返回-1
+    private int findColumnEdge(int x, int y) {
+        if (mAdapter == null || mVisibleCells.size() == 0) {
+            return -1;
+        }
+        LayoutState state = mVisibleState;
+        SizeIndex cols = mScrollHelperX.getIndex();
+        if (y < 0 || y >= state.headHeight) {
+            return -1;
+        }
+        int slop = mTouchSlop;
+        if (state.headColCount > 0 && Math.abs(x - state.headWidth) <= slop) {
+            return state.headColCount - 1;
+        }
+        int contentX = contentX(x);
+        int col = cols.indexAt(contentX);
+        if (col < 0 || col >= cols.count) {
+            return -1;
+        }
+        if (Math.abs(cols.offsetOf(col) + cols.sizeOf(col) - contentX) <= slop) {
+            return col;
+        }
+        //冻结区域边界上左边的列不是col - 1
+        if (col > 0 && col != state.headColCount && col != state.footColStart &&
+                Math.abs(contentX - cols.offsetOf(col)) <= slop) {
+            return col - 1;
+        }
+        return -1;
+    }
+
+    //find的选项
+    public static final int FIND_MATCH_CASE = 1;//区分大小写
+    public static final int FIND_WHOLE_CELL = 2;//整个单元格的文字等于query
+
+    //在后台并行扫描所有单元格的文字(通过ExcelAdapter.newCellReader), 结果分批回调并高亮;
+    //新的find会取消上一次, 数据变化后自动重新扫描受影响的部分
+    public void find(String query, int flags) {
+        if (query == null || query.isEmpty()) {
+            mFinder.clear();
+            return;
+        }
+        mFinder.start(query, flags);
+        invalidate();
+    }
+
+    //停止扫描, 已找到的匹配保留
+    public void cancelFind() {
+        mFinder.cancel();
+    }
+
+    //停止扫描并去掉所有高亮
+    public void clearFind() {
+        mFinder.clear();
+    }
+
+    //跳到当前匹配之后的一个(没有当前匹配时从可见区域开始), 到末尾后从头开始;
+    //扫描还没到那里时返回false, 结果出来后再跳, 通过OnFindListener.onMatchSelected通知
+    public boolean findNext() {
+        return mFinder.move(1);
+    }
+
+    public boolean findPrevious() {
+        return mFinder.move(-1);
+    }
+
+    public int getFindMatchCount() {
+        return mFinder.matchCount;
+    }
+
+    //当前匹配, 没有时为-1
+    public int getCurrentMatchRow() {
+        return mFinder.currentRow;
+    }
+
+    public int getCurrentMatchCol() {
+        return mFinder.currentCol;
+    }
+
+    public void setOnFindListener(OnFindListener listener) {
+        mFinder.listener = listener;
+    }
+
+    //一般用半透明的颜色, 盖在单元格内容上
+    public void setFindHighlightColors(int matchColor, int currentColor) {
+        mFinder.matchPaint.setColor(matchColor);
+        mFinder.currentPaint.setColor(currentColor);
+        invalidate();
+    }
+
+    //视图中的x对应的内容坐标(不含冻结列的滚动), 用于查找所在的列
+    int contentX(int x) {
+        LayoutState state = mVisibleState;
+        if (x < state.headWidth) {
+            return x;
+        } else if (x >= state.footX) {
+            return x - state.footX + mScrollHelperX.getIndex().offsetOf(state.footColStart);
+        }
+        return x + getScrollX();
+    }
+
+    int contentY(int y) {
+        LayoutState state = mVisibleState;
+        if (y < state.headHeight) {
+            return y;
+        } else if (y >= state.footY) {
+            return y - state.footY + mScrollHelperY.getIndex().offsetOf(state.footRowStart);
+        }
+        return y + getScrollY();
+    }
+
+    //选择模式
+    public static final int SELECTION_NONE = 0;//默认, 触摸只滚动
+    public static final int SELECTION_SINGLE = 1;//单击/长按拖动替换选区
+    public static final int SELECTION_MULTIPLE = 2;//单击/长按拖动加入新的矩形
+
+    public void setSelectionMode(int mode) {
+        mSelectionTracker.mode = mode;
+        if (mode == SELECTION_NONE) {
+            mSelectionTracker.clear();
+        }
+    }
+
+    public int getSelectionMode() {
+        return mSelectionTracker.mode;
+    }
+
+    //当前选区, 只读; 需要保存时用Selection.set复制
+    public Selection getSelection() {
+        return mSelectionTracker.selection;
+    }
+
+    //替换选区
+    public void selectRange(int row1, int col1, int row2, int col2) {
+        mSelectionTracker.selection.clear();
+        addSelectionRange(row1, col1, row2, col2);
+    }
+
+    public void addSelectionRange(int row1, int col1, int row2, int col2) {
+        mSelectionTracker.selection.add(row1, col1, row2, col2);
+        mSelectionTracker.onChanged();
+    }
+
+    public void selectRow(int row) {
+        if (mAdapter != null) {
+            selectRange(row, 0, row, mAdapter.getColCount() - 1);
+        }
+    }
+
+    public void selectCol(int col) {
+        if (mAdapter != null) {
+            selectRange(0, col, mAdapter.getRowCount() - 1, col);
+        }
+    }
+
+    //只是一个矩形, 与表格大小无关
+    public void selectAll() {
+        if (mAdapter != null && mAdapter.getRowCount() > 0 && mAdapter.getColCount() > 0) {
+            selectRange(0, 0, mAdapter.getRowCount() - 1, mAdapter.getColCount() - 1);
+        }
+    }
+
+    public void clearSelection() {
+        mSelectionTracker.clear();
+    }
+
+    //按行优先的顺序逐个给出选中的单元格, 用于复制/导出
+    public void forEachSelectedCell(CellVisitor visitor) {
+        mSelectionTracker.selection.forEachCell(visitor);
+    }
+
+    public void setSelectionColors(int fillColor, int borderColor) {
+        mSelectionTracker.fillPaint.setColor(fillColor);
+        mSelectionTracker.borderPaint.setColor(borderColor);
+        invalidate();
+    }
+
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        mSelectionTracker.listener = listener;
+    }
+
+    private ExcelObserver mObserver = new ExcelObserver() {
+        @Override
+        public void onChanged() {
+            mPrefetcher.clear();
+            clearTextLayouts();
+            mScrollHelperX.invalidIndex();
+            mScrollHelperY.invalidIndex();
+            mPreLayoutState.invalid = true;
+            mVisibleState.invalid = true;
+            mFinder.rescanAll();
+            if (mAdapter != null && !mSelectionTracker.selection.isEmpty()) {
+                mSelectionTracker.selection.clamp(mAdapter.getRowCount(), mAdapter.getColCount());
+                mSelectionTracker.onChanged();
+            }
+            requestLayout();
+        }
+
+        @Override
+        public void onCellRangeChanged(int row1, int col1, int row2, int col2) {
+            mPrefetcher.clearRange(row1, col1, row2, col2);
+            mFinder.rescanRows(row1, row2);
+            for (int i = 0, n = mTextLayoutRenderers.size(); i < n; i++) {
+                mTextLayoutRenderers.get(i).invalidateRange(row1, col1, row2, col2);
+            }
+            mPremeasureRowStart = -1;
+            rebindCells(row1, col1, row2, col2);
+        }
+
+        @Override
+        public void onRowsChanged(int op, int start, int count, int to) {
+            if (op == INSERT && mAdapter != null && start + count == mAdapter.getRowCount()) {
+                //追加在末尾(比如边加载边显示): 已有的行号都不变, 缓存、查找结果和选区都保留
+                mFinder.onRowsAppended();
+                onStructureChanged(true, op, start, count, to);
+                return;
+            }
+            mPrefetcher.clear();
+            clearTextLayouts();
+            mFinder.onStructureChanged(true, op, start, count, to);
+            remapSelection(true, op, start, count, to);
+            onStructureChanged(true, op, start, count, to);
+        }
+
+        @Override
+        public void onColsChanged(int op, int start, int count, int to) {
+            mPrefetcher.clear();
+            clearTextLayouts();
+            remapColWidths(op, start, count, to);
+            mFinder.onStructureChanged(false, op, start, count, to);
+            remapSelection(false, op, start, count, to);
+            onStructureChanged(false, op, start, count, to);
+        }
+
+        @Override
+        public void onRowHeightChanged(int row) {
+            notifyRowHeightChanged(row);
+        }
+
+        @Override
+        public void onColWidthChanged(int col) {
+            notifyColWidthChanged(col);
+        }
+    };
+
+    private void remapSelection(boolean isRow, int op, int start, int count, int to) {
+        Selection selection = mSelectionTracker.selection;
+        if (!selection.isEmpty()) {
+            mSelectionTracker.onUp();
+            selection.mapIndex(isRow, op, start, count, to);
+            mSelectionTracker.onChanged();
+        }
+    }
+
+    //缓存的文字排版按行列号索引, 行列变化后全部作废
+    private void clearTextLayouts() {
+        for (int i = 0, n = mTextLayoutRenderers.size(); i < n; i++) {
+            mTextLayoutRenderers.get(i).clearCache();
+        }
+        mPremeasureRowStart = -1;
+    }
+
+    //重新绑定[row1, row2]x[col1, col2]中可见的cell, 其他cell不动
+    private void rebindCells(int row1, int col1, int row2, int col2) {
+        LayoutState state = mVisibleState;
+        if (mAdapter == null || mVisibleCells.size() == 0) {
+            return;
+        }
+        int rowCount = mScrollHelperY.getIndex().count;
+        rebindRows(Math.max(row1, 0), Math.min(row2 + 1, state.headRowCount), col1, col2);
+        rebindRows(Math.max(row1, state.firstBodyRow), Math.min(row2 + 1, state.firstBodyRow + state.bodyRowCount), col1, col2);
+        rebindRows(Math.max(row1, state.footRowStart), Math.min(row2 + 1, rowCount), col1, col2);
+        for (int i = mVisibleSpanCells.size() - 1; i >= 0; i--) {
+            Cell cell = mVisibleSpanCells.get(i);
+            if (cell.row <= row2 && cell.rbRow >= row1 && cell.col <= col2 && cell.rbCol >= col1) {
+                rebindCell(cell);
+            }
+        }
+    }
+
+    //[rowStart, rowEnd)中冻结列和body列里落在[col1, col2]的
+    private void rebindRows(int rowStart, int rowEnd, int col1, int col2) {
+        LayoutState state = mVisibleState;
+        int colCount = mScrollHelperX.getIndex().count;
+        int headEnd = Math.min(col2 + 1, state.headColCount);
+        int bodyStart = Math.max(col1, state.firstBodyCol);
+        int bodyEnd = Math.min(col2 + 1, state.firstBodyCol + state.bodyColCount);
+        int footStart = Math.max(col1, state.footColStart), footEnd = Math.min(col2 + 1, colCount);
+        for (int row = rowStart; row < rowEnd; row++) {
+            for (int col = Math.max(col1, 0); col < headEnd; col++) {
+                rebindCell(row, col);
+            }
+            for (int col = bodyStart; col < bodyEnd; col++) {
+                rebindCell(row, col);
+            }
+            for (int col = footStart; col < footEnd; col++) {
+                rebindCell(row, col);
+            }
+        }
+    }
+
+    private void rebindCell(int row, int col) {
+        Cell cell = mVisibleCells.get(LongCellMap.key(row, col));
+        if (cell != null && !cell.isSpan()) {//合并单元格单独处理
+            rebindCell(cell);
+        }
+    }
+
+    private void rebindCell(Cell cell) {
+        if (mAdapter.getCellViewType(cell.row, cell.col) != cell.viewType) {
+            //类型变了, 回收掉重新排版
+            mVisibleCells.remove(LongCellMap.key(cell.row, cell.col));
+            recycleCell(cell);
+            mVisibleState.dirty = true;
+            requestLayout();
+            return;
+        }
+        bindCell(cell);
+        if (cell.view == null) {
+            invalidate();
+        } else if (cell.view.getParent() == null) {
+            mVisibleState.dirty = true;
+            requestLayout();
+        } else if (cell.view.isLayoutRequested()) {
+            measureAndLayout(cell, true);
+        }
+    }
+
+    //行/列的插入/删除/移动: 可见cell按新的行列号重新登记, view保留, 不重新绑定
+    private void onStructureChanged(boolean isRow, int op, int start, int count, int to) {
+        if (mAdapter == null) {
+            return;
+        }
+        ScrollHelper helper = isRow ? mScrollHelperY : mScrollHelperX;
+        LayoutState state = mVisibleState;
+        int firstBody = isRow ? state.firstBodyRow : state.firstBodyCol;
+        int firstBodyOffset = isRow ? state.firstBodyRowOffset : state.firstBodyColOffset;
+
+        //保持第一个可见行/列的内容不动
+        int scrollDelta = 0;
+        if (op == ExcelObserver.REMOVE && start < firstBody && !helper.indexInvalid) {
+            SizeIndex index = helper.getIndex();
+            scrollDelta = index.offsetOf(start) - index.offsetOf(Math.min(start + count, firstBody));
+        }
+        //只平移受影响的部分, 不重建整个索引
+        switch (op) {
+            case ExcelObserver.INSERT:
+                helper.insertIndex(start, count);
+                break;
+            case ExcelObserver.REMOVE:
+                helper.removeIndex(start, count);
+                break;
+            case ExcelObserver.MOVE:
+                helper.moveIndex(start, count, to);
+                break;
+        }
+        if (op == ExcelObserver.INSERT && (start < firstBody || (start == firstBody && firstBodyOffset > 0))) {
+            SizeIndex index = helper.getIndex();
+            scrollDelta = index.offsetOf(start + count) - index.offsetOf(start);
+        }
+
+        //遍历的时候不能修改, 先取出所有cell
+        List<Cell> cells = mRecycler.tmpCells;
+        cells.clear();
+        for (int i = 0, n = mVisibleCells.capacity(); i < n; i++) {
+            Cell cell = mVisibleCells.valueAt(i);
+            if (cell != null) {
+                cells.add(cell);
+            }
+        }
+        mVisibleCells.clear();
+        for (int i = 0, n = cells.size(); i < n; i++) {
+            Cell cell = cells.get(i);
+            int index = ExcelObserver.mapIndex(op, isRow ? cell.row : cell.col, start, count, to);
+            if (index < 0 || cell.isSpan()) {//被删除的直接回收, 合并单元格由adapter重新给出
+                recycleCell(cell);
+                continue;
+            }
+            if (isRow) {
+                cell.row = index;
+            } else {
+                cell.col = index;
+            }
+            mVisibleCells.put(LongCellMap.key(cell.row, cell.col), cell);
+        }
+        cells.clear();
+
+        mPreLayoutState.invalid = true;
+        state.dirty = true;
+        if (scrollDelta != 0) {
+            if (isRow) {
+                scrollTo(getScrollX(), getScrollY() + scrollDelta);
+            } else {
+                scrollTo(getScrollX() + scrollDelta, getScrollY());
+            }
+        }
+        requestLayout();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        requestLayout();
+    }
+
+    public ExcelAdapter getAdapter() {
+        return mAdapter;
+    }
+
+    public void setAdapter(ExcelAdapter adapter) {
+        mPrefetcher.clear();
+        mRecycler.clear(mRecycler.pool.mAttachCount <= (isAttachedToWindow() ? 1 : 0));
+        mVisibleCells.clear();
+        mVisibleSpanCells.clear();
+        clearLayerCells();
+        mTextLayoutRenderers.clear();
+        mPremeasureRowStart = -1;
+        mColWidthOverrides.clear();
+        mAutoFitGeneration++;
+        mFinder.clear();
+        mSelectionTracker.clear();
+        mVisibleState.init();
+        mPreLayoutState.init();
+        mScrollHelperX.invalidIndex();
+        mScrollHelperY.invalidIndex();
+        removeAllViews();
+        mDrawingOrderDirty = true;
+
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mObserver);
+        }
+        mAdapter = adapter;
+        if (mAdapter != null) {
+            mAdapter.registerDataSetObserver(mObserver);
+        }
+        requestLayout();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mAdapter != null) {
+            mAdapter.unregisterDataSetObserver(mObserver);
+        }
+        mRecycler.pool.detach(getContext());
+        removeCallbacks(mPrefetcher);
+        mPrefetcher.posted = false;
+        mPrefetcher.clear();
+        mZoomSnapshot.release();
+        removeCallbacks(mFastScroller);
+        mFastScroller.visible = false;
+        mSelectionTracker.onUp();
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        mRecycler.pool.attach(getContext());
+        Display display = getDisplay();
+        if (display != null && display.getRefreshRate() >= 30) {
+            mPrefetcher.frameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / display.getRefreshRate());
+        }
+    }
+
+    //拖动和惯性滑动时, 在帧与帧之间的空闲时间预先绑定即将移入的行列, 默认开启
+    public void setPrefetchEnabled(boolean enabled) {
+        mPrefetchEnabled = enabled;
+        if (!enabled) {
+            mPrefetcher.clear();
+        }
+    }
+
+    public RecycledViewPool getRecycledViewPool() {
+        return mRecycler.pool;
+    }
+
+    //多个ExcelView(例如ViewPager中的多个表格)可以共用一个pool
+    public void setRecycledViewPool(@NonNull RecycledViewPool pool) {
+        if (pool == mRecycler.pool) {
+            return;
+        }
+        if (isAttachedToWindow()) {
+            mRecycler.pool.detach(getContext());
+            pool.attach(getContext());
+        }
+        mRecycler.pool = pool;
+    }
+
+    //第一次排版之前预先创建count个viewType类型的view放入pool, 需要adapter实现createCellView
+    public void prewarmViews(int viewType, int count) {
+        if (mAdapter == null) {
+            return;
+        }
+        RecycledViewPool pool = mRecycler.pool;
+        count = Math.min(count, pool.getMaxRecycledViews(viewType));
+        for (int i = pool.getRecycledViewCount(viewType); i < count; i++) {
+            View view = mAdapter.createCellView(getContext(), viewType);
+            if (view == null) {
+                break;
+            }
+            pool.putRecycledView(viewType, view);
+        }
+    }
+
+    @Override
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(ev);
+        if (mZoomEnabled) {
+            mScaleDetector.onTouchEvent(ev);
+            if (mZoomSnapshot.active) {//双指缩放从子view手里拿走事件
+                return true;
+            }
+        }
+        switch (ev.getAction() & MotionEvent.ACTION_MASK) {
+            case MotionEvent.ACTION_DOWN: {
+                mLastMotionX = (int) ev.getX();
+                mLastMotionY = (int) ev.getY();
+                mZoomedInGesture = false;
+                if (mScroller != null) {
+                    if (!mScroller.isFinished()) {
+                        mScroller.forceFinished(true);
+                    }
+                }
+                if (mFastScroller.onDown(ev.getX(), ev.getY())) {
+                    return true;
+                }
+                //两次按下足够近时算双击, 在表头的列分割线上则自动调整该列宽度
+                boolean doubleTap = ev.getEventTime() - mLastDownTime <= ViewConfiguration.getDoubleTapTimeout() &&
+                        Math.abs(mLastMotionX - mLastDownX) <= mDoubleTapSlop &&
+                        Math.abs(mLastMotionY - mLastDownY) <= mDoubleTapSlop;
+                mLastDownTime = doubleTap ? 0 : ev.getEventTime();
+                mLastDownX = mLastMotionX;
+                mLastDownY = mLastMotionY;
+                if (doubleTap) {
+                    int col = findColumnEdge(mLastMotionX, mLastMotionY);
+                    if (col >= 0) {
+                        autoFitColumn(col);
+                        return true;
+                    }
+                }
+                mSelectionTracker.onDown(mLastMotionX, mLastMotionY);
+                break;
+            }
+            case MotionEvent.ACTION_MOVE: {
+                if (mSelectionTracker.dragging) {//长按后从子view手里拿走事件
+                    return true;
+                }
+                int dx = (int) (ev.getX() - mLastMotionX);
+                int dy = (int) (ev.getY() - mLastMotionY);
+                if (Math.max(Math.abs(dx), Math.abs(dy)) >= mTouchSlop) {
+                    mIsDragging = true;
+                }
+                return mIsDragging;//必须 拦截move, 否则 自视图中如果设置了onclick事件,则无法滚动
+            }
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mSelectionTracker.onUp();
+                break;
+        }
+        return super.onInterceptTouchEvent(ev);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent ev) {
+        if (mVelocityTracker == null) {
+            mVelocityTracker = VelocityTracker.obtain();
+        }
+        mVelocityTracker.addMovement(ev);
+        int action = ev.getAction() & MotionEvent.ACTION_MASK;
+        if (mFastScroller.dragAxis != 0) {
+            if (action == MotionEvent.ACTION_MOVE) {
+                mFastScroller.onDrag(ev.getX(), ev.getY());
+            } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                mFastScroller.onUp();
+                mVelocityTracker.recycle();
+                mVelocityTracker = null;
+            }
+            return true;
+        }
+        if (mSelectionTracker.dragging) {
+            if (action == MotionEvent.ACTION_MOVE) {
+                mSelectionTracker.onDrag((int) ev.getX(), (int) ev.getY());
+            } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+                mSelectionTracker.onUp();
+                mVelocityTracker.recycle();
+                mVelocityTracker = null;
+            }
+            return true;
+        }
+        if (mZoomEnabled && action != MotionEvent.ACTION_DOWN) {//DOWN已经在onInterceptTouchEvent中处理
+            mScaleDetector.onTouchEvent(ev);
+        }
+        if (mZoomedInGesture && action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL) {
+            return true;
+        }
+        switch (action) {
+            case MotionEvent.ACTION_MOVE: {
+                int dx = (int) (ev.getX() - mLastMotionX);
+                int dy = (int) (ev.getY() - mLastMotionY);
+                if (Math.max(Math.abs(dx), Math.abs(dy)) > mTouchSlop) {
+                    mIsDragging = true;
+                }
+                if (mIsDragging) {
+                    scrollTo(getScrollX() - dx, getScrollY() - dy);
+                    mLastMotionX = (int) ev.getX();
+                    mLastMotionY = (int) ev.getY();
+                }
+                break;
+            }
+            case MotionEvent.ACTION_CANCEL:
+            case MotionEvent.ACTION_UP: {
+                mSelectionTracker.onUp();
+                if (action == MotionEvent.ACTION_UP && !mIsDragging && !mZoomedInGesture) {
+                    mSelectionTracker.onTap((int) ev.getX(), (int) ev.getY());
+                }
+                mVelocityTracker.computeCurrentVelocity(1000);
+                int velocityX = (int) mVelocityTracker.getXVelocity();
+                int velocityY = (int) mVelocityTracker.getYVelocity();
+                if (Math.abs(velocityX) >= Math.abs(velocityY)) {
+                    velocityY = 0;
+                } else {
+                    velocityX = 0;
+                }
+                if ((Math.abs(velocityX) <= mMinimumVelocity)) {
+                    velocityX = 0;
+                }
+                if ((Math.abs(velocityY) <= mMinimumVelocity)) {
+                    velocityY = 0;
+                }
+                if ((velocityX !=0 || velocityY != 0) && mVisibleCells.size() > 0 && !mZoomedInGesture) {
+                    mScroller.fling(getScrollX(), getScrollY(), -velocityX, -velocityY,
+                            0, getMaxScrollX(), 0, getMaxScrollY());
+                    invalidate();
+                }
+                mIsDragging = false;
+                if (mVelocityTracker != null) {
+                    mVelocityTracker.clear();
+                    mVelocityTracker.recycle();
+                    mVelocityTracker = null;
+                }
+                break;
+            }
+        }
+        return true;
+    }
+
+
+    @Override
+    public void scrollTo(int x, int y) {
+        preLayoutAndAdjustScroll(x, y);
+        if (mPreLayoutState.scrollX != x || mPreLayoutState.scrollY != y) {
+            //被调整了,取消接下来的滑动
+            if (!mScroller.isFinished()) {
+                mScroller.forceFinished(true);
+            }
+        }
+        super.scrollTo(mPreLayoutState.scrollX, mPreLayoutState.scrollY);
+    }
+
+    @Override
+    public void computeScroll() {
+        super.computeScroll();
+        if (mScroller.computeScrollOffset()) {
+            scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        layoutChildren();
+        mFastScroller.show();
+        if (mPrefetchEnabled && (mIsDragging || !mScroller.isFinished())) {
+            mPrefetcher.schedule(l - oldl, t - oldt);
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        layoutChildren();
+    }
+
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (mZoomSnapshot.active) {
+            mZoomSnapshot.draw(canvas);
+        } else {
+            drawContent(canvas);
+        }
+        mFastScroller.draw(canvas);
+    }
+
+    void drawContent(Canvas canvas) {
+        if (mVisibleCells.size() == 0) {
+            super.dispatchDraw(canvas);
+            return;
+        }
+        boolean drawRenderers = mRendererCellCount > 0;
+        if (drawRenderers) {//body在所有view下面
+            drawRendererCells(canvas, LAYER_BODY);
+        }
+        super.dispatchDraw(canvas);
+        if (drawRenderers) {//冻结行/列盖住body
+            drawRendererCells(canvas, LAYER_COL);
+            drawRendererCells(canvas, LAYER_ROW);
+            drawRendererCells(canvas, LAYER_CORNER);
+        }
+        mFinder.draw(canvas);
+        drawDividers(canvas);
+        mSelectionTracker.draw(canvas);
+    }
+
+    //数值即绘制顺序
+    static final int LAYER_BODY = 0, LAYER_COL = 1, LAYER_ROW = 2, LAYER_CORNER = 3;
+    static final int LAYER_COUNT = 4;
+
+    @Override
+    protected int getChildDrawingOrder(int childCount, int i) {
+        if (mDrawingOrderDirty || mDrawingOrder.length != childCount) {
+            buildDrawingOrder(childCount);
+        }
+        return mDrawingOrder[i];
+    }
+
+    //按层计数排序, 同一层内保持child数组中的顺序
+    private void buildDrawingOrder(int childCount) {
+        if (mDrawingOrder.length != childCount) {
+            mDrawingOrder = new int[childCount];
+        }
+        int[] starts = new int[LAYER_COUNT + 1];
+        for (int i = 0; i < childCount; i++) {
+            starts[layerOf(getChildAt(i)) + 1]++;
+        }
+        for (int layer = 0; layer < LAYER_COUNT; layer++) {
+            starts[layer + 1] += starts[layer];
+        }
+        for (int i = 0; i < childCount; i++) {
+            mDrawingOrder[starts[layerOf(getChildAt(i))]++] = i;
+        }
+        mDrawingOrderDirty = false;
+    }
+
+    private static int layerOf(View child) {
+        ViewGroup.LayoutParams lp = child.getLayoutParams();
+        return lp instanceof LayoutParams ? ((LayoutParams) lp).layer : LAYER_BODY;
+    }
+
+    //每层裁剪到自己的区域, body不会画到表头下面
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        int layer = layerOf(child);
+        if (layer == LAYER_CORNER) {
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        int saveCount = canvas.save();
+        clipLayer(canvas, layer);
+        boolean more = super.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return more;
+    }
+
+    //body在中间区域; 冻结行只挡在冻结列之间, 上下的冻结行互不重叠; 冻结列同理
+    void clipLayer(Canvas canvas, int layer) {
+        LayoutState state = mVisibleState;
+        int left = state.scrollX, top = state.scrollY;
+        int bodyLeft = left + state.headWidth, bodyRight = left + state.footX;
+        int bodyTop = top + state.headHeight, bodyBottom = top + state.footY;
+        switch (layer) {
+            case LAYER_BODY:
+                canvas.clipRect(bodyLeft, bodyTop, bodyRight, bodyBottom);
+                break;
+            case LAYER_ROW:
+                canvas.clipRect(bodyLeft, top, bodyRight, top + getHeight());
+                break;
+            case LAYER_COL:
+                canvas.clipRect(left, bodyTop, left + getWidth(), bodyBottom);
+                break;
+        }
+    }
+
+    @Override
+    protected LayoutParams generateDefaultLayoutParams() {
+        return new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT);
+    }
+
+    @Override
+    protected LayoutParams generateLayoutParams(ViewGroup.LayoutParams p) {
+        return new LayoutParams(p);
+    }
+
+    @Override
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    @Override
+    protected boolean checkLayoutParams(ViewGroup.LayoutParams p) {
+        return p instanceof LayoutParams;
+    }
+
+    //cell view的LayoutParams, 记录所在的层
+    public static class LayoutParams extends ViewGroup.LayoutParams {
+        int layer = LAYER_BODY;
+
+        public LayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public LayoutParams(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        public LayoutParams(ViewGroup.LayoutParams source) {
+            super(source);
+        }
+    }
+
+    //冻结行和冻结列相交的是左上角层, 包括底部冻结行的两端
+    private int layerOf(int row, int col) {
+        LayoutState state = mVisibleState;
+        if (state.isFrozenRow(row)) {
+            return state.isFrozenCol(col) ? LAYER_CORNER : LAYER_ROW;
+        }
+        return state.isFrozenCol(col) ? LAYER_COL : LAYER_BODY;
+    }
+
+    //登记到新的层, 从原来的层中移除(和最后一个交换)
+    private void setCellLayer(Cell cell, int layer) {
+        if (cell.layer == layer) {
+            return;
+        }
+        removeFromLayer(cell);
+        cell.layer = layer;
+        if (layer != LAYER_BODY) {
+            List<Cell> cells = mLayerCells[layer];
+            cell.layerIndex = cells.size();
+            cells.add(cell);
+        }
+    }
+
+    private void removeFromLayer(Cell cell) {
+        if (cell.layer != LAYER_BODY) {
+            List<Cell> cells = mLayerCells[cell.layer];
+            Cell last = cells.remove(cells.size() - 1);
+            if (last != cell) {
+                cells.set(cell.layerIndex, last);
+                last.layerIndex = cell.layerIndex;
+            }
+        }
+        cell.layer = LAYER_BODY;
+        cell.layerIndex = -1;
+    }
+
+    private void clearLayerCells() {
+        for (int layer = LAYER_BODY + 1; layer < LAYER_COUNT; layer++) {
+            mLayerCells[layer].clear();
+        }
+    }
+
+    //冻结层的cell整体平移
+    private void offsetLayer(int layer, int dx, int dy) {
+        if (dx == 0 && dy == 0) {
+            return;
+        }
+        List<Cell> cells = mLayerCells[layer];
+        for (int i = 0, n = cells.size(); i < n; i++) {
+            Cell cell = cells.get(i);
+            cell.x += dx;
+            cell.y += dy;
+            if (cell.view != null) {
+                cell.view.offsetLeftAndRight(dx);
+                cell.view.offsetTopAndBottom(dy);
+            }
+        }
+    }
+
+    private void drawRendererCells(Canvas canvas, int layer) {
+        int saveCount = canvas.save();
+        if (layer != LAYER_CORNER) {
+            clipLayer(canvas, layer);
+        }
+        if (layer == LAYER_BODY) {
+            LongCellMap cells = mVisibleCells;
+            for (int i = 0, n = cells.capacity(); i < n; i++) {
+                Cell cell = cells.valueAt(i);
+                if (cell != null && cell.renderer != null && cell.layer == LAYER_BODY) {
+                    drawRendererCell(canvas, cell);
+                }
+            }
+        } else {
+            List<Cell> cells = mLayerCells[layer];
+            for (int i = 0, n = cells.size(); i < n; i++) {
+                Cell cell = cells.get(i);
+                if (cell.renderer != null) {
+                    drawRendererCell(canvas, cell);
+                }
+            }
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void drawRendererCell(Canvas canvas, Cell cell) {
+        if (mZoom == 1f) {
+            cell.renderer.drawCell(canvas, cell.row, cell.col, cell.x, cell.y,
+                    cell.x + cell.w - mDividerWidth, cell.y + cell.h - mDividerWidth);
+        } else {//按原大小画, 再缩放
+            int count = canvas.save();
+            canvas.translate(cell.x, cell.y);
+            canvas.scale(mZoom, mZoom);
+            cell.renderer.drawCell(canvas, cell.row, cell.col, 0, 0, contentSize(cell.w), contentSize(cell.h));
+            canvas.restoreToCount(count);
+        }
+    }
+
+    //网格线批量绘制, 行列各分为开头冻结、body、末尾冻结三段, 共九个区域一次drawLines
+    //每个区域的线段裁剪到该区域内, 不需要clipRect
+    private void drawDividers(Canvas canvas) {
+        SizeIndex rows = mScrollHelperY.getIndex();
+        SizeIndex cols = mScrollHelperX.getIndex();
+        if (mDividerWidth <= 0 || rows.count == 0 || cols.count == 0) {
+            return;
+        }
+        collectSpanCells();
+        LayoutState state = mVisibleState;
+        int top = state.scrollY;
+        int bodyRowEnd = state.firstBodyRow + state.bodyRowCount;
+        GridLines lines = mGridLines;
+        lines.reset();
+        addRowBandLines(0, state.headRowCount, top, top, top + state.headHeight);
+        addRowBandLines(state.firstBodyRow, bodyRowEnd, rows.offsetOf(state.firstBodyRow),
+                top + state.headHeight, top + state.footY);
+        addRowBandLines(state.footRowStart, rows.count, top + state.footY, top + state.footY, top + getHeight());
+        lines.draw(canvas, mDividerPaint);
+    }
+
+    //[row0, row1)在y0开始, 裁剪到[t, b], 分别加上三段列的分割线
+    private void addRowBandLines(int row0, int row1, int y0, int t, int b) {
+        if (row0 >= row1) {
+            return;
+        }
+        SizeIndex cols = mScrollHelperX.getIndex();
+        LayoutState state = mVisibleState;
+        int left = state.scrollX;
+        int bodyLeft = left + state.headWidth, bodyRight = left + state.footX;
+        addLayerLines(row0, row1, y0, 0, state.headColCount, left, left, t, bodyLeft, b);
+        addLayerLines(row0, row1, y0, state.firstBodyCol, state.firstBodyCol + state.bodyColCount,
+                cols.offsetOf(state.firstBodyCol), bodyLeft, t, bodyRight, b);
+        addLayerLines(row0, row1, y0, state.footColStart, cols.count, bodyRight, bodyRight, t, left + getWidth(), b);
+    }
+
+    //[row0, row1)x[col0, col1)的分割线, 每行底部一条横线, 每列右侧一条竖线, 裁剪到(l, t, r, b)
+    private void addLayerLines(int row0, int row1, int y0, int col0, int col1, int x0,
+                               int l, int t, int r, int b) {
+        SizeIndex rows = mScrollHelperY.getIndex();
+        SizeIndex cols = mScrollHelperX.getIndex();
+        float half = mDividerWidth / 2f;
+        int x1 = x0 + cols.offsetOf(col1) - cols.offsetOf(col0);
+        int y1 = y0 + rows.offsetOf(row1) - rows.offsetOf(row0);
+        int lineLeft = Math.max(x0, l), lineRight = Math.min(x1, r);
+        int lineTop = Math.max(y0, t), lineBottom = Math.min(y1, b);
+        if (lineLeft >= lineRight || lineTop >= lineBottom) {
+            return;
+        }
+
+        int y = y0;
+        for (int row = row0; row < row1; row++) {
+            y += rows.sizeOf(row);
+            float lineY = y - half;
+            if (lineY >= t && lineY <= b) {
+                addHorizontalLine(row, lineY, lineLeft, lineRight);
+            }
+        }
+        int x = x0;
+        for (int col = col0; col < col1; col++) {
+            x += cols.sizeOf(col);
+            float lineX = x - half;
+            if (lineX >= l && lineX <= r) {
+                addVerticalLine(col, lineX, lineTop, lineBottom);
+            }
+        }
+    }
+
+    //跳过合并单元格内部的横线
+    private void addHorizontalLine(int row, float y, int from, int to) {
+        List<Cell> spans = mSpanCellsByX;
+        int cur = from;
+        for (int i = 0, n = spans.size(); i < n && cur < to; i++) {
+            Cell cell = spans.get(i);
+            if (cell.row <= row && row < cell.rbRow) {
+                int start = cell.x, end = cell.x + cell.w - mDividerWidth;
+                if (start > cur) {
+                    mGridLines.add(cur, y, Math.min(start, to), y);
+                }
+                cur = Math.max(cur, end);
+            }
+        }
+        if (cur < to) {
+            mGridLines.add(cur, y, to, y);
+        }
+    }
+
+    //跳过合并单元格内部的竖线
+    private void addVerticalLine(int col, float x, int from, int to) {
+        List<Cell> spans = mSpanCellsByY;
+        int cur = from;
+        for (int i = 0, n = spans.size(); i < n && cur < to; i++) {
+            Cell cell = spans.get(i);
+            if (cell.col <= col && col < cell.rbCol) {
+                int start = cell.y, end = cell.y + cell.h - mDividerWidth;
+                if (start > cur) {
+                    mGridLines.add(x, cur, x, Math.min(start, to));
+                }
+                cur = Math.max(cur, end);
+            }
+        }
+        if (cur < to) {
+            mGridLines.add(x, cur, x, to);
+        }
+    }
+
+    //可见的合并单元格, 分别按x和y排序(数量很少, 插入排序)
+    private void collectSpanCells() {
+        List<Cell> byX = mSpanCellsByX, byY = mSpanCellsByY;
+        byX.clear();
+        byY.clear();
+        for (int i = 0, n = mVisibleSpanCells.size(); i < n; i++) {
+            Cell cell = mVisibleSpanCells.get(i);
+            int j = byX.size();
+            while (j > 0 && byX.get(j - 1).x > cell.x) {
+                j--;
+            }
+            byX.add(j, cell);
+            j = byY.size();
+            while (j > 0 && byY.get(j - 1).y > cell.y) {
+                j--;
+            }
+            byY.add(j, cell);
+        }
+    }
+
+    //计算bodycell和调整scrollxy
+    private void preLayoutAndAdjustScroll(int scrollX, int scrollY) {
+        LayoutState state = mPreLayoutState;
+        if (state.invalid || state.width != getWidth() || state.scrollX != scrollX) {
+            mScrollHelperX.scroll(getWidth(), scrollX);
+            state.applyCols(mScrollHelperX, getWidth());
+        }
+
+        if (state.invalid || state.height != getHeight() || state.scrollY != scrollY) {
+            mScrollHelperY.scroll(getHeight(), scrollY);
+            state.applyRows(mScrollHelperY, getHeight());
+        }
+        state.invalid = false;
+    }
+
+    protected void layoutChildren() {
+        if (mAdapter == null || mAdapter.getColCount() <= 0 || mAdapter.getRowCount() <= 0) {
+            recycleAllCells();
+            return;
+        }
+
+        if (mIsLayouting) {
+            return;
+        }
+
+        preLayoutAndAdjustScroll(getScrollX(), getScrollY());
+        if (mVisibleState.equals(mPreLayoutState) && !mVisibleState.invalid && !mVisibleState.dirty) {
+            return;
+        }
+
+        Metrics metrics = mMetrics;
+        long startTime = metrics != null ? System.nanoTime() : 0;
+        //只是滚动且新旧窗口有重叠时, 只处理移入移出的行列
+        boolean incremental = !mVisibleState.invalid && !mVisibleState.dirty &&
+                mVisibleState.overlaps(mPreLayoutState);
+        mLastState.copyFrom(mVisibleState);
+        mVisibleState.copyFrom(mPreLayoutState);
+        mIsLayouting = true;
+        if (incremental) {
+            layoutIncremental(mLastState);
+        } else {
+            layoutAll();
+        }
+        mVisibleState.invalid = false;
+        mVisibleState.dirty = false;
+        mIsLayouting = false;
+        if (!mTextLayoutRenderers.isEmpty()) {
+            premeasureText(!incremental);
+        }
+        mRecycler.pool.trim();
+        invalidate();
+        if (metrics != null) {
+            dispatchMetrics(metrics, System.nanoTime() - startTime);
+        }
+        //排版完之后自动滚动,防止越界
+        scrollTo(mVisibleState.scrollX, mVisibleState.scrollY);
+    }
+
+    //可视区域上下各一屏的文字交给后台线程排版, 滚动到的时候直接用缓存
+    private void premeasureText(boolean force) {
+        LayoutState state = mVisibleState;
+        int ahead = Math.max(state.bodyRowCount, 1);
+        int rowStart = Math.max(state.headRowCount, state.firstBodyRow - ahead);
+        int rowEnd = Math.min(state.footRowStart, state.firstBodyRow + state.bodyRowCount + ahead);
+        int colStart = state.firstBodyCol, colEnd = state.firstBodyCol + state.bodyColCount;
+        if (!force && rowStart == mPremeasureRowStart && rowEnd == mPremeasureRowEnd &&
+                colStart == mPremeasureColStart && colEnd == mPremeasureColEnd) {
+            return;
+        }
+        mPremeasureRowStart = rowStart;
+        mPremeasureRowEnd = rowEnd;
+        mPremeasureColStart = colStart;
+        mPremeasureColEnd = colEnd;
+        //先排下面的, 大多数时候是往下滚
+        int below = state.firstBodyRow + state.bodyRowCount;
+        premeasureRows(below, rowEnd, colStart, colEnd);
+        premeasureRows(rowStart, state.firstBodyRow, colStart, colEnd);
+        for (int i = 0, n = mTextLayoutRenderers.size(); i < n; i++) {
+            mTextLayoutRenderers.get(i).flush();
+        }
+    }
+
+    private void premeasureRows(int rowStart, int rowEnd, int colStart, int colEnd) {
+        SizeIndex cols = mScrollHelperX.getIndex();
+        LayoutState state = mVisibleState;
+        for (int row = rowStart; row < rowEnd; row++) {
+            for (int col = 0; col < state.headColCount; col++) {
+                premeasureCell(row, col, cols);
+            }
+            for (int col = colStart; col < colEnd; col++) {
+                premeasureCell(row, col, cols);
+            }
+            for (int col = state.footColStart; col < cols.count; col++) {
+                premeasureCell(row, col, cols);
+            }
+        }
+    }
+
+    private void premeasureCell(int row, int col, SizeIndex cols) {
+        CellRenderer renderer = mAdapter.getCellRenderer(mAdapter.getCellViewType(row, col));
+        if (renderer instanceof TextLayoutCellRenderer && !Span.isSpan(mAdapter.querySpan(row, col))) {
+            ((TextLayoutCellRenderer) renderer).enqueue(row, col, contentSize(cols.sizeOf(col)));
+        }
+    }
+
+    private void layoutAll() {
+        recycleCells();//TODO mVisibleState.invalid应该全部回收掉,
+        LayoutState state = mVisibleState;
+        int rowCount = mScrollHelperY.getIndex().count;
+        layoutRowBand(0, state.headRowCount);
+        layoutRowBand(state.firstBodyRow, state.firstBodyRow + state.bodyRowCount);
+        layoutRowBand(state.footRowStart, rowCount);
+        bringCornersToFront();
+    }
+
+    //[rowStart, rowEnd)属于同一段, 排版所有可见列
+    private void layoutRowBand(int rowStart, int rowEnd) {
+        if (rowStart >= rowEnd) {
+            return;
+        }
+        LayoutState state = mVisibleState;
+        SizeIndex rows = mScrollHelperY.getIndex();
+        int colCount = mScrollHelperX.getIndex().count;
+        int colEnd = state.firstBodyCol + state.bodyColCount;
+        int y = cellY(rowStart);
+        for (int row = rowStart; row < rowEnd; row++) {
+            layoutRow(row, y, 0, state.headColCount);
+            layoutRow(row, y, state.firstBodyCol, colEnd);
+            layoutRow(row, y, state.footColStart, colCount);
+            y += rows.sizeOf(row);
+        }
+    }
+
+    //body单元格的位置只和行列有关, 滚动时不用动, 只需回收移出的、排版移入的,
+    //冻结层的cell跟着滚动整体平移, 不重新查找和排版
+    private void layoutIncremental(LayoutState old) {
+        LayoutState state = mVisibleState;
+        int rowCount = mScrollHelperY.getIndex().count, colCount = mScrollHelperX.getIndex().count;
+
+        //回收移出的行列, 冻结行只有body列会移出
+        mWindowDiff.removeCount = 0;
+        mWindowDiff.diffLeaving(old, state, rowCount, colCount);
+        int removeCount = mWindowDiff.removeCount;
+        for (int i = mVisibleSpanCells.size() - 1; i >= 0; i--) {
+            Cell cell = mVisibleSpanCells.get(i);
+            if (!state.isRangeVisible(cell.row, cell.col, cell.rbRow, cell.rbCol)) {
+                removeCount = mRecycler.addTmpKey(removeCount, LongCellMap.key(cell.row, cell.col));
+            }
+        }
+        removeCells(removeCount);
+
+        //留下的冻结cell先平移, 之后排版的已经是新位置
+        int dx = state.scrollX - old.scrollX, dy = state.scrollY - old.scrollY;
+        offsetLayer(LAYER_ROW, 0, dy);
+        offsetLayer(LAYER_COL, dx, 0);
+        offsetLayer(LAYER_CORNER, dx, dy);
+
+        //排版移入的行列
+        mWindowDiff.diffEntering(old, state, rowCount, colCount);
+        bringCornersToFront();
+    }
+
+    //增量排版: 移出的登记到mRecycler.tmpKeys, 移入的直接排版
+    private class LayoutDiff extends WindowDiff {
+        int removeCount;
+
+        @Override
+        protected void onLeave(int row, int colStart, int colEnd) {
+            removeCount = collectRange(removeCount, row, colStart, colEnd);
+        }
+
+        @Override
+        protected void onEnter(int row, int colStart, int colEnd) {
+            layoutRow(row, cellY(row), colStart, colEnd);
+        }
+    }
+
+    //行/列在内容中的位置: 冻结的跟着滚动贴在视口边缘, body的与滚动无关
+    int cellY(int row) {
+        SizeIndex rows = mScrollHelperY.getIndex();
+        LayoutState state = mVisibleState;
+        if (row < state.headRowCount) {
+            return state.scrollY + rows.offsetOf(row);
+        } else if (row >= state.footRowStart) {
+            return state.scrollY + state.footY + rows.offsetOf(row) - rows.offsetOf(state.footRowStart);
+        }
+        return rows.offsetOf(row);
+    }
+
+    int cellX(int col) {
+        SizeIndex cols = mScrollHelperX.getIndex();
+        LayoutState state = mVisibleState;
+        if (col < state.headColCount) {
+            return state.scrollX + cols.offsetOf(col);
+        } else if (col >= state.footColStart) {
+            return state.scrollX + state.footX + cols.offsetOf(col) - cols.offsetOf(state.footColStart);
+        }
+        return cols.offsetOf(col);
+    }
+
+    //合并单元格只处理左上角, [colStart, colEnd)中被合并的单元格都排版到左上角的cell上
+    private void layoutRow(final int row, final int y, final int colStart, final int colEnd) {
+        if (colStart >= colEnd) {
+            return;
+        }
+        SizeIndex rows = mScrollHelperY.getIndex();
+        SizeIndex cols = mScrollHelperX.getIndex();
+        int x = cellX(colStart);//[colStart, colEnd)属于同一段
+        int rowHeight = rows.sizeOf(row);
+        for (int col = colStart; col < colEnd;) {
+            Span span = mAdapter.querySpan(row, col);
+            if (mMetrics != null) {
+                mMetrics.spanLookups++;
+            }
+            if (Span.isSpan(span)) {
+                int spanX = x - (cols.offsetOf(col) - cols.offsetOf(span.lt.col));
+                int spanY = y - (rows.offsetOf(row) - rows.offsetOf(span.lt.row));
+                int spanWidth = cols.offsetOf(span.rb.col + 1) - cols.offsetOf(span.lt.col);
+                int spanHeight = rows.offsetOf(span.rb.row + 1) - rows.offsetOf(span.lt.row);
+
+                Cell cell = layoutCell(span.lt.row, span.lt.col, spanX, spanY, spanWidth, spanHeight);
+                if (!cell.isSpan()) {
+                    mVisibleSpanCells.add(cell);
+                }
+                cell.rbRow = span.rb.row;
+                cell.rbCol = span.rb.col;
+                col = span.rb.col + 1;
+                x = cell.x + cell.w;
+            } else {
+                int colWidth = cols.sizeOf(col);
+                Cell cell = layoutCell(row, col, x, y, colWidth, rowHeight);
+                if (cell.isSpan()) {//数据变化后不再是合并单元格
+                    mVisibleSpanCells.remove(cell);
+                    cell.rbRow = -1;
+                    cell.rbCol = -1;
+                }
+                x += colWidth;
+                col++;
+            }
+        }
+    }
+
+    //5.0之前左上角层的view要在child数组末尾, 才能比冻结行/列先收到触摸事件
+    private void bringCornersToFront() {
+        if (TOUCH_FOLLOWS_DRAWING_ORDER) {
+            return;
+        }
+        List<Cell> corners = mLayerCells[LAYER_CORNER];
+        int viewCount = 0;
+        for (int i = 0, n = corners.size(); i < n; i++) {
+            if (corners.get(i).view != null) {
+                viewCount++;
+            }
+        }
+        int frontStart = getChildCount() - viewCount;
+        for (int i = 0, n = corners.size(); i < n; i++) {
+            View view = corners.get(i).view;
+            if (view != null && indexOfChild(view) < frontStart) {
+                for (int j = 0; j < n; j++) {
+                    if (corners.get(j).view != null) {
+                        bringChildToFront(corners.get(j).view);
+                    }
+                }
+                mDrawingOrderDirty = true;
+                return;
+            }
+        }
+    }
+
+    private Cell layoutCell(int row, int col, int x, int y, int w, int h) {
+        long key = LongCellMap.key(row, col);
+        Cell cell = mVisibleCells.get(key);
+        boolean needLayout = false;
+        if (cell == null) {
+            cell = mPrefetcher.cells.size() > 0 ? mPrefetcher.cells.remove(key) : null;//预取过的已经绑定和measure
+            if (cell == null) {
+                cell = createCell(row, col);
+            } else if (mMetrics != null) {
+                mMetrics.prefetchHits++;
+            }
+            mVisibleCells.put(key, cell);
+            if (cell.renderer != null) {
+                mRendererCellCount++;
+            }
+            needLayout = true;
+        } else if (mVisibleState.invalid) {
+            bindCell(cell);
+        }
+        int layer = layerOf(row, col);
+        setCellLayer(cell, layer);
+
+        if (cell.view == null) {//直接画在canvas上, 只记录位置
+            cell.x = x;
+            cell.y = y;
+            cell.w = w;
+            cell.h = h;
+            return cell;
+        }
+        if (cell.view.getParent() == null) {
+            //不触发child.requestLayout, 预取的view不用重新measure
+            ViewGroup.LayoutParams params = cell.view.getLayoutParams();
+            LayoutParams lp = params instanceof LayoutParams ? (LayoutParams) params :
+                    params != null ? new LayoutParams(params) : generateDefaultLayoutParams();
+            lp.layer = layer;
+            //只追加到末尾, 绘制顺序由getChildDrawingOrder决定
+            int index = TOUCH_FOLLOWS_DRAWING_ORDER || lp.layer != LAYER_BODY ? -1 : 0;
+            addViewInLayout(cell.view, index, lp, true);
+            mDrawingOrderDirty = true;
+            needLayout = true;
+        } else if (cell.view.getParent() != this) {
+            throw new IllegalStateException("view.parent != this");
+        } else {
+            LayoutParams lp = (LayoutParams) cell.view.getLayoutParams();
+            if (lp.layer != layer) {//行列插入删除后换了层
+                lp.layer = layer;
+                mDrawingOrderDirty = true;
+            }
+        }
+
+        //缩放只改变位置和scale, 原大小不变时不重新measure
+        boolean needMeasure = cell.view.getMeasuredWidth() != contentSize(w) ||
+                cell.view.getMeasuredHeight() != contentSize(h) || cell.view.isLayoutRequested();
+        if (needMeasure || needLayout || cell.w != w || cell.h != h) {
+            cell.x = x;
+            cell.y = y;
+            cell.w = w;
+            cell.h = h;
+            measureAndLayout(cell, needMeasure);
+        } else if (cell.x != x || cell.y != y) {//只是平移, 不需要重新layout
+            cell.view.offsetLeftAndRight(x - cell.x);
+            cell.view.offsetTopAndBottom(y - cell.y);
+            cell.x = x;
+            cell.y = y;
+        }
+
+        return cell;
+    }
+
+
+    private Cell createCell(int row, int col) {
+        int viewType = mAdapter.getCellViewType(row, col);
+        CellRenderer renderer = mAdapter.getCellRenderer(viewType);
+        if (renderer != null) {
+            if (renderer instanceof TextLayoutCellRenderer && !mTextLayoutRenderers.contains(renderer)) {
+                mTextLayoutRenderers.add((TextLayoutCellRenderer) renderer);
+            }
+            Cell cell = mRecycler.obtainCell(null, viewType);
+            cell.renderer = renderer;
+            cell.row = row;
+            cell.col = col;
+            return cell;
+        }
+        View view = mRecycler.pool.getRecycledView(viewType);
+        if (mMetrics != null) {
+            if (view != null) {
+                mMetrics.cellsReused++;
+            } else {
+                mMetrics.cellsCreated++;
+            }
+            mMetrics.cellsBound++;
+        }
+        view = mAdapter.getCellView(getContext(), view, row, col);
+        Cell cell = mRecycler.obtainCell(view, viewType);
+        cell.row = row;
+        cell.col = col;
+        return cell;
+    }
+
+    //绑定已有的cell, adapter没有复用convertView时换成新的view
+    private void bindCell(Cell cell) {
+        if (cell.renderer != null) {//没有view, 重画即可
+            return;
+        }
+        View old = cell.view;
+        cell.view = mAdapter.getCellView(getContext(), old, cell.row, cell.col);
+        if (cell.view != old) {
+            removeViewInLayout(old);
+            mDrawingOrderDirty = true;
+            mRecycler.pool.putRecycledView(cell.viewType, old);
+        }
+        if (mMetrics != null) {
+            mMetrics.cellsBound++;
+        }
+    }
+
+    private void measureAndLayout(Cell cell, boolean measure) {
+        int w = contentSize(cell.w), h = contentSize(cell.h);
+        if (measure) {
+            cell.view.measure(
+                    MeasureSpec.makeMeasureSpec(w, MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(h, MeasureSpec.EXACTLY)
+            );
+            if (mMetrics != null) {
+                mMetrics.cellsMeasured++;
+            }
+        }
+        View view = cell.view;
+        view.layout(cell.x, cell.y, cell.x + w, cell.y + h);
+        float scaleX = w > 0 ? (cell.w - mDividerWidth) / (float) w : 1f;
+        float scaleY = h > 0 ? (cell.h - mDividerWidth) / (float) h : 1f;
+        if (view.getScaleX() != scaleX || view.getScaleY() != scaleY) {
+            view.setPivotX(0);
+            view.setPivotY(0);
+            view.setScaleX(scaleX);
+            view.setScaleY(scaleY);
+        }
+    }
+
+    private void recycleAllCells() {
+        mPrefetcher.clear();
+        LongCellMap cells = mVisibleCells;
+        for (int i = 0, n = cells.capacity(); i < n; i++) {
+            Cell cell = cells.valueAt(i);
+            if (cell != null) {
+                mRecycler.recycleCell(cell);
+            }
+        }
+        mRendererCellCount = 0;
+        removeAllViews();
+        mDrawingOrderDirty = true;
+        mVisibleCells.clear();
+        mVisibleSpanCells.clear();
+        clearLayerCells();
+        mVisibleState.init();
+        mPreLayoutState.init();
+    }
+
+    //合并单元格需要改造layoutRow和recycleCells
+    private void recycleCells() {
+        LayoutState state = mPreLayoutState;
+        LongCellMap cells = mVisibleCells;
+        int removeCount = 0;
+        for (int i = 0, n = cells.capacity(); i < n; i++) {
+            Cell cell = cells.valueAt(i);
+            if (cell == null) {
+                continue;
+            }
+            boolean cellVisible;
+            if (cell.isSpan()) {//合并单元格只要和可视区域有交集就保留, 左上角和右下角可能都不可见
+                cellVisible = state.isRangeVisible(cell.row, cell.col, cell.rbRow, cell.rbCol);
+            } else {
+                cellVisible = state.isCellVisible(cell.row, cell.col);
+            }
+            if (!cellVisible) {
+                removeCount = mRecycler.addTmpKey(removeCount, cells.keyAt(i));
+            }
+        }
+        //遍历的时候不能删除, 开放寻址删除会移动元素
+        removeCells(removeCount);
+    }
+
+    //第row行[colStart, colEnd)中的普通单元格加入待回收, 合并单元格单独处理
+    private int collectRange(int removeCount, int row, int colStart, int colEnd) {
+        for (int col = colStart; col < colEnd; col++) {
+            long key = LongCellMap.key(row, col);
+            Cell cell = mVisibleCells.get(key);
+            if (cell != null && !cell.isSpan()) {
+                removeCount = mRecycler.addTmpKey(removeCount, key);
+            }
+        }
+        return removeCount;
+    }
+
+    //回收mRecycler.tmpKeys中的前removeCount个
+    private void removeCells(int removeCount) {
+        for (int i = 0; i < removeCount; i++) {
+            recycleCell(mVisibleCells.remove(mRecycler.tmpKeys[i]));
+        }
+    }
+
+    //cell已经从mVisibleCells中移除
+    private void recycleCell(Cell cell) {
+        if (cell.isSpan()) {
+            mVisibleSpanCells.remove(cell);
+        }
+        removeFromLayer(cell);
+        if (cell.view != null) {
+            removeViewInLayout(cell.view);
+            mDrawingOrderDirty = true;
+        } else {
+            mRendererCellCount--;
+        }
+        mRecycler.recycleCell(cell);
+        if (mMetrics != null) {
+            mMetrics.cellsRecycled++;
+        }
+    }
+
+    //滚动方向上即将移入的行列, 在当前帧绘制完到下一帧开始之前创建/绑定/measure, 不加入ViewGroup
+    //下一帧layoutCell时直接取用
+    class Prefetcher implements Runnable {
+        static final int MAX_LINES = 3;//最多预取几行/列
+        static final int LOOKAHEAD_FRAMES = 2;//按当前速度预取几帧内会移入的
+        final LongCellMap cells = new LongCellMap();
+        long frameIntervalNanos = TimeUnit.SECONDS.toNanos(1) / 60;
+        long avgBindNanos;
+        boolean posted;
+        int dx, dy;
+
+        void schedule(int dx, int dy) {
+            this.dx = dx;
+            this.dy = dy;
+            if (!posted) {
+                posted = true;
+                post(this);
+            }
+        }
+
+        void clear() {
+            for (int i = 0, n = cells.capacity(); i < n; i++) {
+                Cell cell = cells.valueAt(i);
+                if (cell != null) {
+                    mRecycler.recycleCell(cell);
+                }
+            }
+            cells.clear();
+        }
+
+        //只丢掉[row1, row2]x[col1, col2]内的, 滑动中数据陆续到达时其他预取的cell仍可用
+        void clearRange(int row1, int col1, int row2, int col2) {
+            if (cells.size() == 0) {
+                return;
+            }
+            int removeCount = 0;
+            for (int i = 0, n = cells.capacity(); i < n; i++) {
+                Cell cell = cells.valueAt(i);
+                if (cell != null && cell.row >= row1 && cell.row <= row2 && cell.col >= col1 && cell.col <= col2) {
+                    removeCount = mRecycler.addTmpKey(removeCount, cells.keyAt(i));
+                }
+            }
+            for (int i = 0; i < removeCount; i++) {
+                mRecycler.recycleCell(cells.remove(mRecycler.tmpKeys[i]));
+            }
+        }
+
+        @Override
+        public void run() {
+            posted = false;
+            LayoutState state = mVisibleState;
+            if (mAdapter == null || mIsLayouting || state.invalid || state.dirty ||
+                    state.bodyRowCount == 0 || state.bodyColCount == 0) {
+                return;
+            }
+            long deadline = TimeUnit.MILLISECONDS.toNanos(getDrawingTime()) + frameIntervalNanos;
+            prune();
+            SizeIndex rows = mScrollHelperY.getIndex();
+            SizeIndex cols = mScrollHelperX.getIndex();
+            int rowEnd = state.firstBodyRow + state.bodyRowCount;
+            int colEnd = state.firstBodyCol + state.bodyColCount;
+            if (dy != 0) {
+                int distance = Math.abs(dy) * LOOKAHEAD_FRAMES;
+                int limit = dy > 0 ? state.scrollY + state.footY + distance : state.scrollY + state.headHeight - distance;
+                for (int i = 0; i < MAX_LINES; i++) {
+                    int row = dy > 0 ? rowEnd + i : state.firstBodyRow - 1 - i;
+                    if (row < 0 || row >= rows.count || state.isFrozenRow(row) ||
+                            (i > 0 && (dy > 0 ? rows.offsetOf(row) >= limit : rows.offsetOf(row + 1) <= limit))) {
+                        break;
+                    }
+                    int y = rows.offsetOf(row), h = rows.sizeOf(row);
+                    if (!prefetchRow(row, y, h, 0, state.headColCount, deadline) ||
+                            !prefetchRow(row, y, h, state.footColStart, cols.count, deadline) ||
+                            !prefetchRow(row, y, h, state.firstBodyCol, colEnd, deadline)) {
+                        return;
+                    }
+                }
+            }
+            if (dx != 0) {
+                int distance = Math.abs(dx) * LOOKAHEAD_FRAMES;
+                int limit = dx > 0 ? state.scrollX + state.footX + distance : state.scrollX + state.headWidth - distance;
+                for (int i = 0; i < MAX_LINES; i++) {
+                    int col = dx > 0 ? colEnd + i : state.firstBodyCol - 1 - i;
+                    if (col < 0 || col >= cols.count || state.isFrozenCol(col) ||
+                            (i > 0 && (dx > 0 ? cols.offsetOf(col) >= limit : cols.offsetOf(col + 1) <= limit))) {
+                        break;
+                    }
+                    int x = cols.offsetOf(col), w = cols.sizeOf(col);
+                    if (!prefetchCol(col, x, w, 0, state.headRowCount, deadline) ||
+                            !prefetchCol(col, x, w, state.footRowStart, rows.count, deadline) ||
+                            !prefetchCol(col, x, w, state.firstBodyRow, rowEnd, deadline)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        //[colStart, colEnd)属于同一段
+        private boolean prefetchRow(int row, int y, int h, int colStart, int colEnd, long deadline) {
+            SizeIndex cols = mScrollHelperX.getIndex();
+            int x = colStart < colEnd ? cellX(colStart) : 0;
+            for (int col = colStart; col < colEnd; col++) {
+                int w = cols.sizeOf(col);
+                if (!prefetch(row, col, x, y, w, h, deadline)) {
+                    return false;
+                }
+                x += w;
+            }
+            return true;
+        }
+
+        //[rowStart, rowEnd)属于同一段
+        private boolean prefetchCol(int col, int x, int w, int rowStart, int rowEnd, long deadline) {
+            SizeIndex rows = mScrollHelperY.getIndex();
+            int y = rowStart < rowEnd ? cellY(rowStart) : 0;
+            for (int row = rowStart; row < rowEnd; row++) {
+                int h = rows.sizeOf(row);
+                if (!prefetch(row, col, x, y, w, h, deadline)) {
+                    return false;
+                }
+                y += h;
+            }
+            return true;
+        }
+
+        //超过deadline返回false
+        private boolean prefetch(int row, int col, int x, int y, int w, int h, long deadline) {
+            long key = LongCellMap.key(row, col);
+            if (mVisibleCells.get(key) != null || cells.get(key) != null) {
+                return true;
+            }
+            long start = System.nanoTime();
+            if (start + avgBindNanos > deadline) {
+                return false;
+            }
+            if (Span.isSpan(mAdapter.querySpan(row, col))) {//合并单元格不预取
+                return true;
+            }
+            if (mAdapter.getCellRenderer(mAdapter.getCellViewType(row, col)) != null) {//直接画的cell不需要预取
+                return true;
+            }
+            Cell cell = createCell(row, col);
+            cell.x = x;
+            cell.y = y;
+            cell.w = w;
+            cell.h = h;
+            measureAndLayout(cell, true);
+            cells.put(key, cell);
+            long bindNanos = System.nanoTime() - start;
+            avgBindNanos = avgBindNanos == 0 ? bindNanos : (avgBindNanos * 3 + bindNanos) / 4;
+            return true;
+        }
+
+        //丢掉离可视区域太远的
+        private void prune() {
+            if (cells.size() == 0) {
+                return;
+            }
+            LayoutState state = mVisibleState;
+            int rowStart = state.firstBodyRow - MAX_LINES, rowEnd = state.firstBodyRow + state.bodyRowCount + MAX_LINES;
+            int colStart = state.firstBodyCol - MAX_LINES, colEnd = state.firstBodyCol + state.bodyColCount + MAX_LINES;
+            int removeCount = 0;
+            for (int i = 0, n = cells.capacity(); i < n; i++) {
+                Cell cell = cells.valueAt(i);
+                if (cell != null && ((!state.isFrozenRow(cell.row) && (cell.row < rowStart || cell.row >= rowEnd)) ||
+                        (!state.isFrozenCol(cell.col) && (cell.col < colStart || cell.col >= colEnd)))) {
+                    removeCount = mRecycler.addTmpKey(removeCount, cells.keyAt(i));
+                }
+            }
+            for (int i = 0; i < removeCount; i++) {
+                mRecycler.recycleCell(cells.remove(mRecycler.tmpKeys[i]));
+            }
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+    }
+
+
+    public static abstract class ExcelAdapter {
+        private final ExcelObservable mDataSetObservable = new ExcelObservable();
+
+        public void registerDataSetObserver(DataSetObserver observer) {
+            mDataSetObservable.registerObserver(observer);
+        }
+
+        public void unregisterDataSetObserver(DataSetObserver observer) {
+            mDataSetObservable.unregisterObserver(observer);
+        }
+
+        public void notifyDataSetChanged() {
+            mDataSetObservable.notifyChanged();
+        }
+
+        //以下通知只重新绑定受影响的可见cell, 保留滚动位置和已有的view,
+        //普通的DataSetObserver收到的仍是onChanged()
+        public void notifyCellChanged(int row, int col) {
+            notifyRangeChanged(row, col, row, col);
+        }
+
+        public void notifyRangeChanged(int row1, int col1, int row2, int col2) {
+            mDataSetObservable.notify(ExcelObservable.CELL_RANGE, row1, col1, row2, col2);
+        }
+
+        public void notifyRowsInserted(int start, int count) {
+            mDataSetObservable.notify(ExcelObservable.ROWS, ExcelObserver.INSERT, start, count, 0);
+        }
+
+        public void notifyRowsRemoved(int start, int count) {
+            mDataSetObservable.notify(ExcelObservable.ROWS, ExcelObserver.REMOVE, start, count, 0);
+        }
+
+        //[from, from+count)移动到to, to为移动之后的位置
+        public void notifyRowsMoved(int from, int to, int count) {
+            mDataSetObservable.notify(ExcelObservable.ROWS, ExcelObserver.MOVE, from, count, to);
+        }
+
+        public void notifyColsInserted(int start, int count) {
+            mDataSetObservable.notify(ExcelObservable.COLS, ExcelObserver.INSERT, start, count, 0);
+        }
+
+        public void notifyColsRemoved(int start, int count) {
+            mDataSetObservable.notify(ExcelObservable.COLS, ExcelObserver.REMOVE, start, count, 0);
+        }
+
+        public void notifyColsMoved(int from, int to, int count) {
+            mDataSetObservable.notify(ExcelObservable.COLS, ExcelObserver.MOVE, from, count, to);
+        }
+
+        public void notifyRowHeightChanged(int row) {
+            mDataSetObservable.notify(ExcelObservable.ROW_HEIGHT, row, 0, 0, 0);
+        }
+
+        public void notifyColWidthChanged(int col) {
+            mDataSetObservable.notify(ExcelObservable.COL_WIDTH, col, 0, 0, 0);
+        }
+
+        //行数和行的集合都没变, 只是顺序变了(比如重新排序)
+        public void notifyRowsReordered() {
+            mDataSetObservable.notify(ExcelObservable.ROWS_REORDERED, 0, 0, 0, 0);
+        }
+
+        private SpanIndex mSpanIndex;
+
+        //合并单元格较多时, 一次性填充到索引中, 之后增量add/remove, 不用再重写querySpan
+        public SpanIndex getSpanIndex() {
+            if (mSpanIndex == null) {
+                mSpanIndex = new SpanIndex();
+            }
+            return mSpanIndex;
+        }
+
+        public Span querySpan(int row, int col) {
+            return mSpanIndex != null ? mSpanIndex.find(row, col) : null;
+        }
+
+        public abstract int getColCount();
+
+        public abstract int getRowCount();
+
+        public abstract int getRowHeight(int row);
+
+        public abstract int getColWidth(int col);
+
+        public abstract int getCellViewType(int row, int col);
+
+        public abstract View getCellView(Context context, View convertView, int row, int col);
+
+        //单元格的文字, 用于自动列宽、查找等; 没有文字返回null
+        public CharSequence getCellText(int row, int col) {
+            return null;
+        }
+
+        //单元格的数值, 用于汇总行等; 不是数字返回NaN
+        public double getCellValue(int row, int col) {
+            return Double.NaN;
+        }
+
+        //返回非null时该viewType的cell不创建view, 直接用renderer画在ExcelView上, getCellView不会被调用
+        public CellRenderer getCellRenderer(int viewType) {
+            return null;
+        }
+
+        //只创建不绑定, 用于ExcelView.prewarmViews, 不支持时返回null
+        public View createCellView(Context context, int viewType) {
+            return null;
+        }
+
+        //ExcelExporter能否在后台线程绘制该viewType的cell: renderer和getCellView不碰主线程的状态(比如共用的Paint)时返回true,
+        //否则导出时含有这种cell的块切到主线程绘制
+        public boolean isDrawThreadSafe(int viewType) {
+            return false;
+        }
+
+        //后台任务(自动列宽、查找等)读数据用, 在主线程上为每个任务取一个, 之后只在该任务的线程里使用.
+        //默认返回null: 数据只能在主线程访问, 这时由主线程分批取出不可变的副本交给后台;
+        //数据不可变或自己做了同步的adapter可以返回new AdapterCellReader(this), 有缓存的adapter可以绕过缓存直接读
+        public CellReader newCellReader() {
+            return null;
+        }
+    }
+
+    //在后台线程读取adapter的数据, 见ExcelAdapter.newCellReader
+    public interface CellReader {
+        Span querySpan(int row, int col);
+
+        CharSequence getCellText(int row, int col);
+
+        double getCellValue(int row, int col);
+    }
+
+    //直接调用adapter的方法, adapter需要自己保证线程安全
+    public static class AdapterCellReader implements CellReader {
+        private final ExcelAdapter mAdapter;
+
+        public AdapterCellReader(ExcelAdapter adapter) {
+            mAdapter = adapter;
+        }
+
+        @Override
+        public Span querySpan(int row, int col) {
+            return mAdapter.querySpan(row, col);
+        }
+
+        @Override
+        public CharSequence getCellText(int row, int col) {
+            return mAdapter.getCellText(row, col);
+        }
+
+        @Override
+        public double getCellValue(int row, int col) {
+            return mAdapter.getCellValue(row, col);
+        }
+    }
+
+    //后台任务用的低优先级daemon线程
+    static ThreadFactory backgroundThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull final Runnable r) {
+                Thread thread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    //不使用View, 直接在dispatchDraw中绘制单元格, 适合大量只读的数值单元格
+    public interface CellRenderer {
+        //(left, top, right, bottom)为单元格去掉分割线后的区域, 坐标系与子view相同
+        void drawCell(Canvas canvas, int row, int col, int left, int top, int right, int bottom);
+    }
+
+    //画背景和单行文字的CellRenderer, 文字超出单元格时裁剪
+    public static abstract class TextCellRenderer implements CellRenderer {
+        protected final Paint mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        protected final Paint mBackgroundPaint = new Paint();
+        private final Paint.FontMetricsInt mFontMetrics = new Paint.FontMetricsInt();
+        private int mBackgroundColor = Color.WHITE;
+        private int mGravity = Gravity.CENTER;
+        private int mPadding;
+
+        public abstract CharSequence getText(int row, int col);
+
+        public int getBackgroundColor(int row, int col) {
+            return mBackgroundColor;
+        }
+
+        public void setBackgroundColor(int color) {
+            mBackgroundColor = color;
+        }
+
+        public void setTextColor(int color) {
+            mTextPaint.setColor(color);
+        }
+
+        public void setTextSize(float px) {
+            mTextPaint.setTextSize(px);
+        }
+
+        public void setGravity(int gravity) {
+            mGravity = gravity;
+        }
+
+        public void setPadding(int padding) {
+            mPadding = padding;
+        }
+
+        @Override
+        public void drawCell(Canvas canvas, int row, int col, int left, int top, int right, int bottom) {
+            int background = getBackgroundColor(row, col);
+            if (Color.alpha(background) != 0) {
+                mBackgroundPaint.setColor(background);
+                canvas.drawRect(left, top, right, bottom, mBackgroundPaint);
+            }
+            CharSequence text = getText(row, col);
+            if (text == null || text.length() == 0) {
+                return;
+            }
+            int l = left + mPadding, r = right - mPadding;
+            float textWidth = mTextPaint.measureText(text, 0, text.length());
+            float x;
+            switch (mGravity & Gravity.HORIZONTAL_GRAVITY_MASK) {
+                case Gravity.LEFT:
+                    x = l;
+                    break;
+                case Gravity.RIGHT:
+                    x = r - textWidth;
+                    break;
+                default:
+                    x = (l + r - textWidth) / 2;
+                    break;
+            }
+            Paint.FontMetricsInt fm = mFontMetrics;
+            mTextPaint.getFontMetricsInt(fm);
+            float baseline;
+            switch (mGravity & Gravity.VERTICAL_GRAVITY_MASK) {
+                case Gravity.TOP:
+                    baseline = top + mPadding - fm.ascent;
+                    break;
+                case Gravity.BOTTOM:
+                    baseline = bottom - mPadding - fm.descent;
+                    break;
+                default:
+                    baseline = (top + bottom - (fm.descent - fm.ascent)) / 2f - fm.ascent;
+                    break;
+            }
+            boolean clip = textWidth > r - l;
+            if (clip) {
+                canvas.save();
+                canvas.clipRect(l, top, r, bottom);
+            }
+            canvas.drawText(text, 0, text.length(), x, baseline, mTextPaint);
+            if (clip) {
+                canvas.restore();
+            }
+        }
+    }
+
+    //多行文字的CellRenderer, StaticLayout按(row, col, version, width)缓存在LRU里,
+    //ExcelView每次排版后把可视区域附近的cell交给后台线程预先排好, 滚动时只是取缓存
+    public static abstract class TextLayoutCellRenderer implements CellRenderer {
+        public static final int DEFAULT_MAX_CACHED_LAYOUTS = 512;
+        private static Executor sDefaultExecutor;
+
+        protected final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        protected final Paint mBackgroundPaint = new Paint();
+        private int mBackgroundColor = Color.WHITE;
+        private int mGravity = Gravity.CENTER;
+        private int mPadding;
+        private Executor mExecutor;
+
+        private final LruCache<LayoutKey, Layout> mCache;
+        private final Set<LayoutKey> mPending = new HashSet<>();//已交给后台还没排完的
+        private final LayoutKey mLookupKey = new LayoutKey();//只在主线程用
+        private final List<LayoutKey> mBatchKeys = new ArrayList<>();
+        private final List<CharSequence> mBatchTexts = new ArrayList<>();
+        private volatile int mGeneration;//清空缓存时+1, 丢掉后台还没排完的旧结果
+        private int mHitCount, mMissCount;
+        private int mStyleVersion;//影响排版的样式变化时+1
+        private TextLayoutCellRenderer mStyleSource;//syncStyle复制过的
+        private int mSyncedStyleVersion;
+
+        public TextLayoutCellRenderer() {
+            this(DEFAULT_MAX_CACHED_LAYOUTS);
+        }
+
+        public TextLayoutCellRenderer(int maxCachedLayouts) {
+            mCache = new LruCache<>(maxCachedLayouts);
+        }
+
+        //在主线程调用, 返回的文字交给后台排版, 之后不能再修改
+        public abstract CharSequence getText(int row, int col);
+
+        //文字内容的版本, 内容变了版本也要变; 只通过notifyCellChanged等通知更新的可以一直返回0
+        public long getTextVersion(int row, int col) {
+            return 0;
+        }
+
+        public int getBackgroundColor(int row, int col) {
+            return mBackgroundColor;
+        }
+
+        public void setBackgroundColor(int color) {
+            mBackgroundColor = color;
+        }
+
+        public void setTextColor(int color) {
+            mTextPaint.setColor(color);
+            onStyleChanged();
+        }
+
+        public void setTextSize(float px) {
+            mTextPaint.setTextSize(px);
+            onStyleChanged();
+        }
+
+        public void setGravity(int gravity) {
+            mGravity = gravity;
+            onStyleChanged();
+        }
+
+        public void setPadding(int padding) {
+            mPadding = padding;
+            onStyleChanged();
+        }
+
+        //默认所有renderer共用一个后台线程
+        public void setExecutor(Executor executor) {
+            mExecutor = executor;
+        }
+
+        public int getHitCount() {
+            return mHitCount;
+        }
+
+        public int getMissCount() {
+            return mMissCount;
+        }
+
+        private void onStyleChanged() {
+            mStyleVersion++;
+            clearCache();
+        }
+
+        //使用source的样式, 给按行号映射后再画source内容的renderer用(见SortFilterExcelAdapter); 只在主线程调用
+        void syncStyle(TextLayoutCellRenderer source) {
+            if (mStyleSource == source && mSyncedStyleVersion == source.mStyleVersion) {
+                return;
+            }
+            mStyleSource = source;
+            mSyncedStyleVersion = source.mStyleVersion;
+            mTextPaint.set(source.mTextPaint);
+            mGravity = source.mGravity;
+            mPadding = source.mPadding;
+            mExecutor = source.mExecutor;
+            clearCache();
+        }
+
+        public void clearCache() {
+            mGeneration++;
+            mCache.evictAll();
+            synchronized (mPending) {
+                mPending.clear();
+            }
+        }
+
+        //[row1, row2]x[col1, col2]的内容变了
+        public void invalidateRange(int row1, int col1, int row2, int col2) {
+            mGeneration++;
+            synchronized (mPending) {
+                mPending.clear();
+            }
+            for (LayoutKey key : mCache.snapshot().keySet()) {
+                if (key.row >= row1 && key.row <= row2 && key.col >= col1 && key.col <= col2) {
+                    mCache.remove(key);
+                }
+            }
+        }
+
+        //取排好的layout, 没有缓存时在当前线程排版
+        public Layout getLayout(int row, int col, int width) {
+            LayoutKey key = mLookupKey.set(row, col, getTextVersion(row, col), width);
+            Layout layout = mCache.get(key);
+            if (layout != null) {
+                mHitCount++;
+                return layout;
+            }
+            CharSequence text = getText(row, col);
+            if (text == null || text.length() == 0) {
+                return null;
+            }
+            mMissCount++;
+            layout = makeLayout(text, mTextPaint, width, getAlignment());
+            mCache.put(key.copy(), layout);
+            return layout;
+        }
+
+        //cellWidth不含分割线
+        void enqueue(int row, int col, int cellWidth) {
+            int width = cellWidth - mPadding * 2;
+            if (width <= 0) {
+                return;
+            }
+            LayoutKey key = mLookupKey.set(row, col, getTextVersion(row, col), width);
+            synchronized (mPending) {
+                if (mPending.contains(key)) {
+                    return;
+                }
+            }
+            if (mCache.get(key) != null) {
+                return;
+            }
+            CharSequence text = getText(row, col);
+            if (text == null || text.length() == 0) {
+                return;
+            }
+            key = key.copy();
+            synchronized (mPending) {
+                mPending.add(key);
+            }
+            mBatchKeys.add(key);
+            mBatchTexts.add(text);
+        }
+
+        //enqueue的cell打包交给后台线程
+        void flush() {
+            if (mBatchKeys.isEmpty()) {
+                return;
+            }
+            final LayoutKey[] keys = mBatchKeys.toArray(new LayoutKey[0]);
+            final CharSequence[] texts = mBatchTexts.toArray(new CharSequence[0]);
+            mBatchKeys.clear();
+            mBatchTexts.clear();
+            //paint复制一份, 主线程改样式不影响后台
+            final TextPaint paint = new TextPaint(mTextPaint);
+            final Layout.Alignment alignment = getAlignment();
+            final int generation = mGeneration;
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < keys.length; i++) {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        Layout layout = makeLayout(texts[i], paint, keys[i].width, alignment);
+                        if (generation == mGeneration) {
+                            mCache.put(keys[i], layout);
+                        }
+                        synchronized (mPending) {
+                            mPending.remove(keys[i]);
+                        }
+                    }
                 }
-                break;
+            });
+        }
+
+        //API 23起构造函数已废弃, 用Builder; 参数和构造函数的一样
+        @SuppressWarnings("deprecation")
+        protected Layout makeLayout(CharSequence text, TextPaint paint, int width, Layout.Alignment alignment) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                return StaticLayout.Builder.obtain(text, 0, text.length(), paint, width)
+                        .setAlignment(alignment)
+                        .setLineSpacing(0f, 1f)
+                        .setIncludePad(false)
+                        .build();
             }
+            return new StaticLayout(text, paint, width, alignment, 1f, 0f, false);
         }
-        return true;
-    }
 
+        private Layout.Alignment getAlignment() {
+            switch (mGravity & Gravity.HORIZONTAL_GRAVITY_MASK) {
+                case Gravity.LEFT:
+                    return Layout.Alignment.ALIGN_NORMAL;
+                case Gravity.RIGHT:
+                    return Layout.Alignment.ALIGN_OPPOSITE;
+                default:
+                    return Layout.Alignment.ALIGN_CENTER;
+            }
+        }
 
-    @Override
-    public void scrollTo(int x, int y) {
-        preLayoutAndAdjustScroll(x, y);
-        if (mPreLayoutState.scrollX != x || mPreLayoutState.scrollY != y) {
-            //被调整了,取消接下来的滑动
-            if (!mScroller.isFinished()) {
-                mScroller.forceFinished(true);
+        private Executor getExecutor() {
+            if (mExecutor != null) {
+                return mExecutor;
+            }
+            synchronized (TextLayoutCellRenderer.class) {
+                if (sDefaultExecutor == null) {
+                    sDefaultExecutor = Executors.newSingleThreadExecutor(backgroundThreadFactory("ExcelView-text"));
+                }
+                return sDefaultExecutor;
             }
         }
-        super.scrollTo(mPreLayoutState.scrollX, mPreLayoutState.scrollY);
-    }
 
-    @Override
-    public void computeScroll() {
-        super.computeScroll();
-        if (mScroller.computeScrollOffset()) {
-            scrollTo(mScroller.getCurrX(), mScroller.getCurrY());
-            requestLayout();
-            invalidate();
+        @Override
+        public void drawCell(Canvas canvas, int row, int col, int left, int top, int right, int bottom) {
+            int background = getBackgroundColor(row, col);
+            if (Color.alpha(background) != 0) {
+                mBackgroundPaint.setColor(background);
+                canvas.drawRect(left, top, right, bottom, mBackgroundPaint);
+            }
+            int width = right - left - mPadding * 2;
+            if (width <= 0) {
+                return;
+            }
+            Layout layout = getLayout(row, col, width);
+            if (layout == null) {
+                return;
+            }
+            int height = layout.getHeight();
+            int y;
+            switch (mGravity & Gravity.VERTICAL_GRAVITY_MASK) {
+                case Gravity.TOP:
+                    y = top + mPadding;
+                    break;
+                case Gravity.BOTTOM:
+                    y = bottom - mPadding - height;
+                    break;
+                default:
+                    y = (top + bottom - height) / 2;
+                    break;
+            }
+            y = Math.max(y, top + mPadding);//放不下时从第一行开始显示
+            int saveCount = canvas.save();
+            canvas.clipRect(left, top, right, bottom);
+            canvas.translate(left + mPadding, y);
+            layout.draw(canvas);
+            canvas.restoreToCount(saveCount);
         }
-    }
 
-    @Override
-    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
-        super.onScrollChanged(l, t, oldl, oldt);
-        layoutChildren();
-    }
+        private static class LayoutKey {
+            int row, col, width;
+            long version;
 
-    @Override
-    protected void onLayout(boolean changed, int l, int t, int r, int b) {
-        layoutChildren();
-    }
+            LayoutKey set(int row, int col, long version, int width) {
+                this.row = row;
+                this.col = col;
+                this.version = version;
+                this.width = width;
+                return this;
+            }
 
-    @Override
-    protected void dispatchDraw(Canvas canvas) {
-        super.dispatchDraw(canvas);
-        Cell cell = mVisibleCells.get(new Position(0,0));
-        if (cell == null) {
-            return;
-        }
-        LayoutState state = mVisibleState;
+            LayoutKey copy() {
+                return new LayoutKey().set(row, col, version, width);
+            }
 
-        //画body
-        canvas.save();
-        canvas.clipRect(cell.w + state.scrollX, cell.h + state.scrollY,
-                state.scrollX + getWidth(), state.scrollY + getHeight());
-        for (Position pos : mVisibleCells.keySet()) {
-            if (pos.col == 0 || pos.row == 0) {
-                continue;
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) {
+                    return true;
+                }
+                if (!(o instanceof LayoutKey)) {
+                    return false;
+                }
+                LayoutKey key = (LayoutKey) o;
+                return row == key.row && col == key.col && width == key.width && version == key.version;
             }
-            drawCellDivider(canvas, mVisibleCells.get(pos));
-        }
-        canvas.restore();
 
-        //画header
-        for (Position pos : mVisibleCells.keySet()) {
-            if (pos.col == 0 || pos.row == 0) {
-               drawCellDivider(canvas, mVisibleCells.get(pos));
+            @Override
+            public int hashCode() {
+                int result = row;
+                result = 31 * result + col;
+                result = 31 * result + width;
+                result = 31 * result + (int) (version ^ (version >>> 32));
+                return result;
             }
         }
     }
 
-    private void drawCellDivider(Canvas canvas, Cell cell) {
-        View v = cell.view;
-        float w = mDividerWidth;
-        //底部横线
-        canvas.drawLine(v.getLeft(), v.getBottom() + w / 2, v.getRight() + w, v.getBottom() + w / 2, mDividerPaint);
-        //右侧竖线
-        canvas.drawLine(v.getRight() + w / 2, v.getTop(), v.getRight() + w / 2, v.getBottom() + mDividerWidth, mDividerPaint);
-    }
+    //可以接收细粒度通知的observer, 默认都退化为onChanged()
+    public static abstract class ExcelObserver extends DataSetObserver {
+        public static final int INSERT = 0;
+        public static final int REMOVE = 1;
+        public static final int MOVE = 2;
 
-    //计算bodycell和调整scrollxy
-    private void preLayoutAndAdjustScroll(int scrollX, int scrollY) {
-        boolean layout = false;
-        LayoutState state = mPreLayoutState;
-        if (state.invalid || state.width != getWidth() || state.scrollX != scrollX) {
-            mScrollHelperX.scroll(state.firstBodyColOffset, state.firstBodyCol, getWidth(), state.scrollX, scrollX);
-            state.firstBodyCol = mScrollHelperX.startIndex;
-            state.firstBodyColOffset = mScrollHelperX.startOffset;
-            state.bodyColCount = mScrollHelperX.bodyCount;
-            state.scrollX = mScrollHelperX.scroll;
-            state.width = getWidth();
-            layout = true;
+        public void onCellRangeChanged(int row1, int col1, int row2, int col2) {
+            onChanged();
         }
 
-        if (state.invalid || state.height != getHeight() || state.scrollY != scrollY) {
-            mScrollHelperY.scroll(state.firstBodyRowOffset, state.firstBodyRow, getHeight(), state.scrollY, scrollY);
-            state.firstBodyRow = mScrollHelperY.startIndex;
-            state.firstBodyRowOffset = mScrollHelperY.startOffset;
-            state.bodyRowCount = mScrollHelperY.bodyCount;
-            state.scrollY = mScrollHelperY.scroll;
-            state.height = getHeight();
-            layout = true;
-        }
-        state.invalid = false;
-        if (layout) {
-            Log.i(TAG, "prelayout = " + state);
+        //op为INSERT/REMOVE/MOVE, to只在MOVE时有效
+        public void onRowsChanged(int op, int start, int count, int to) {
+            onChanged();
         }
-    }
 
-    protected void layoutChildren() {
-        if (mAdapter == null || mAdapter.getColCount() <= 0 || mAdapter.getRowCount() <= 0) {
-            recycleAllCells();
-            return;
+        public void onColsChanged(int op, int start, int count, int to) {
+            onChanged();
         }
 
-        if (mIsLayouting) {
-            return;
+        public void onRowHeightChanged(int row) {
+            onChanged();
         }
 
-        preLayoutAndAdjustScroll(getScrollX(), getScrollY());
-        if (mVisibleState.equals(mPreLayoutState) && !mVisibleState.invalid) {
-            return;
+        public void onColWidthChanged(int col) {
+            onChanged();
         }
 
-        mVisibleState.copyFrom(mPreLayoutState);
-        Log.i(TAG, "layoutChildren " + mVisibleState);
-        mIsLayouting = true;
-        recycleCells();//TODO mVisibleState.invalid应该全部回收掉,
-        LayoutState state = mVisibleState;
+        public void onRowsReordered() {
+            onChanged();
+        }
 
-        int firstRowHeight = mAdapter.getRowHeight(0);
-        int firstColWidth = mAdapter.getColWidth(0);
-        int rowY = mVisibleState.scrollY - state.firstBodyRowOffset + firstRowHeight;
-        for (int row = state.firstBodyRow; row < state.firstBodyRow + state.bodyRowCount; row++) {
-            layoutRow(firstColWidth, row, rowY);
-            rowY += mAdapter.getRowHeight(row);
+        //变化之前的index在变化之后的位置, 被删除返回-1
+        public static int mapIndex(int op, int index, int start, int count, int to) {
+            switch (op) {
+                case INSERT:
+                    return index >= start ? index + count : index;
+                case REMOVE:
+                    if (index < start) {
+                        return index;
+                    }
+                    return index >= start + count ? index - count : -1;
+                case MOVE:
+                    if (index >= start && index < start + count) {
+                        return to + index - start;
+                    }
+                    int i = index >= start + count ? index - count : index;
+                    return i >= to ? i + count : i;
+                default:
+                    return index;
+            }
         }
-        //head row
-        layoutRow(firstColWidth, 0, state.scrollY);
-        mVisibleState.invalid = false;
-        mIsLayouting = false;
-        //排版完之后自动滚动,防止越界
-        scrollTo(mVisibleState.scrollX, mVisibleState.scrollY);
     }
 
-    //合并单元格需要改造layoutRow和recycleCells, 合并单元格只处理左上角
-    private void layoutRow(final int firstColWidth, final int row, final int y) {
-        LayoutState state = mVisibleState;
-        int x = state.scrollX - state.firstBodyColOffset + firstColWidth;//内部起点
-        int rowHeight = mAdapter.getRowHeight(row);
-        for (int col = state.firstBodyCol; col < state.firstBodyCol + state.bodyColCount;) {
-            Span span = mAdapter.querySpan(row, col);
-            if (Span.isSpan(span)) {
-                int spanX = x, spanY = y;
-                int spanWidth = 0, spanHeight = 0;
-                for (int i = span.lt.col; i <= span.rb.col; i++) {
-                    int w = mAdapter.getColWidth(i);
-                    spanWidth += w;
-                    if (i < col) {
-                        spanX -= w;
+    private static class ExcelObservable extends DataSetObservable {
+        static final int CELL_RANGE = 0;
+        static final int ROWS = 1;
+        static final int COLS = 2;
+        static final int ROW_HEIGHT = 3;
+        static final int COL_WIDTH = 4;
+        static final int ROWS_REORDERED = 5;
+
+        public void notify(int type, int a, int b, int c, int d) {
+            synchronized (mObservers) {
+                for (int i = mObservers.size() - 1; i >= 0; i--) {
+                    DataSetObserver observer = mObservers.get(i);
+                    if (!(observer instanceof ExcelObserver)) {
+                        observer.onChanged();
+                        continue;
                     }
-                }
-                for (int i = span.lt.row; i <= span.rb.row; i++) {
-                    int h = mAdapter.getRowHeight(i);
-                    spanHeight += h;
-                    if (i < row) {
-                        spanY -= h;
+                    ExcelObserver excelObserver = (ExcelObserver) observer;
+                    switch (type) {
+                        case CELL_RANGE:
+                            excelObserver.onCellRangeChanged(a, b, c, d);
+                            break;
+                        case ROWS:
+                            excelObserver.onRowsChanged(a, b, c, d);
+                            break;
+                        case COLS:
+                            excelObserver.onColsChanged(a, b, c, d);
+                            break;
+                        case ROW_HEIGHT:
+                            excelObserver.onRowHeightChanged(a);
+                            break;
+                        case COL_WIDTH:
+                            excelObserver.onColWidthChanged(a);
+                            break;
+                        case ROWS_REORDERED:
+                            excelObserver.onRowsReordered();
+                            break;
                     }
                 }
-
-                Cell cell = layoutCell(span.lt, spanX, spanY, spanWidth, spanHeight);
-                cell.rb = span.rb;
-                col = span.rb.col + 1;
-                x = cell.x + cell.w;
-            } else {
-                int colWidth = mAdapter.getColWidth(col);
-                layoutCell(new Position(row, col), x, y, colWidth, rowHeight);
-                x += colWidth;
-                col++;
             }
         }
-        //最左侧列
-        Cell cell = layoutCell(new Position(row, 0), state.scrollX, y, firstColWidth, rowHeight);
-        if (row == 0 && getChildAt(getChildCount()-1) != cell.view) {
-            bringChildToFront(cell.view);
-        }
     }
 
-    private Cell layoutCell(Position pos, int x, int y, int w, int h) {
-        Cell cell = mVisibleCells.get(pos);
-        boolean needLayout = false;
-        if (cell == null) {
-            int viewType = mAdapter.getCellViewType(pos.row, pos.col);
-            View view = mRecycler.reuse(viewType);
-            view = mAdapter.getCellView(getContext(), view, pos.row, pos.col);
-            mVisibleCells.put(pos, cell = new Cell(view, viewType));
-            needLayout = true;
-        } else if (mVisibleState.invalid) {
-            cell.view = mAdapter.getCellView(getContext(), cell.view, pos.row, pos.col);
-        }
+    public interface OnSelectionChangedListener {
+        //拖动中每经过一个新的单元格回调一次
+        void onSelectionChanged(ExcelView view, Selection selection);
+    }
 
-        cell.lt = pos;
-        cell.rb = null;
+    public interface OnFindListener {
+        //每扫描完一块回调一次, scannedRows == totalRows时扫描结束
+        void onFindProgress(ExcelView view, int matchCount, int scannedRows, int totalRows);
 
-        if (cell.view.getParent() == null) {
-            addView(cell.view, (pos.row == 0 || pos.col == 0) ? -1 : 0);
-            needLayout = true;
-        } else if (cell.view.getParent() != this) {
-            throw new IllegalStateException("view.parent != this");
+        //findNext/findPrevious选中了一个匹配, 已滚动到可见
+        void onMatchSelected(ExcelView view, int row, int col);
+    }
+
+    public interface OnMetricsListener {
+        //metrics在回调之后会被重置, 需要保存的话自己复制
+        void onLayoutMetrics(ExcelView view, Metrics metrics);
+    }
+
+    //自动列宽: 测量哪些行, 用什么画笔, 宽度范围
+    public static class AutoFitConfig {
+        public static final int SAMPLE_ALL = 0;//所有行, 行数很多时慢
+        public static final int SAMPLE_FIRST_ROWS = 1;//前sampleSize行
+        public static final int SAMPLE_VISIBLE_ROWS = 2;//当前可见的行
+        public static final int SAMPLE_RANDOM = 3;//随机sampleSize行
+        private static Executor sDefaultExecutor;
+
+        final TextPaint paint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        int sampleMode = SAMPLE_FIRST_ROWS;
+        int sampleSize = 1000;
+        long seed;
+        int padding;
+        int minWidth;
+        int maxWidth = Integer.MAX_VALUE;
+        Executor executor;
+
+        //单元格字体, 应该与显示时一致
+        public AutoFitConfig setTextSize(float px) {
+            paint.setTextSize(px);
+            return this;
         }
 
-        if (cell.w != w || cell.h != h || cell.view.getWidth() != w - mDividerWidth ||
-                cell.view.getHeight() != h - mDividerWidth) {
-            cell.w = w;
-            cell.h = h;
-            cell.view.measure(
-                    MeasureSpec.makeMeasureSpec(w - mDividerWidth, MeasureSpec.EXACTLY),
-                    MeasureSpec.makeMeasureSpec(h - mDividerWidth, MeasureSpec.EXACTLY)
-            );
-            needLayout = true;
+        public AutoFitConfig setTypeface(Typeface typeface) {
+            paint.setTypeface(typeface);
+            return this;
         }
-        if (cell.x != x || cell.y != y) {
-            cell.x = x;
-            cell.y = y;
-            needLayout = true;
+
+        //不包括表头行(第0行总是测量)
+        public AutoFitConfig setSampling(int mode, int sampleSize) {
+            this.sampleMode = mode;
+            this.sampleSize = Math.max(0, sampleSize);
+            return this;
         }
-        if (needLayout) {
-            cell.view.layout(x, y, x + w - mDividerWidth, y + h - mDividerWidth);
-            Log.i(TAG, "layoutCell " + pos);
+
+        public AutoFitConfig setRandomSeed(long seed) {
+            this.seed = seed;
+            return this;
         }
 
-        return cell;
-    }
+        //文字左右两边各留的宽度
+        public AutoFitConfig setPadding(int padding) {
+            this.padding = padding;
+            return this;
+        }
 
+        public AutoFitConfig setWidthRange(int minWidth, int maxWidth) {
+            this.minWidth = minWidth;
+            this.maxWidth = maxWidth;
+            return this;
+        }
 
-    private void recycleAllCells() {
-        for (Position position : mVisibleCells.keySet()) {
-            Cell cell = mVisibleCells.get(position);
-            mRecycler.recycle(cell.viewType, cell.view);
+        //默认是与CPU核数相当的共享线程池
+        public AutoFitConfig setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
         }
-        removeAllViews();
-        mVisibleCells.clear();
-        mVisibleState.init();
-        mPreLayoutState.init();
-    }
 
-    //合并单元格需要改造layoutRow和recycleCells
-    private void recycleCells() {
-        LayoutState state = mPreLayoutState;
-        mRecycler.tmpPositions.clear();
-        for (Position position : mVisibleCells.keySet()) {
-            Cell cell = mVisibleCells.get(position);
-            boolean cellVisible = state.isCellVisible(cell.lt.row, cell.lt.col);
-            if (cell.rb != null && !cellVisible) {
-                cellVisible = state.isCellVisible(cell.rb.row, cell.rb.col);
+        Executor getExecutor() {
+            if (executor != null) {
+                return executor;
             }
-            if (!cellVisible) {
-                mRecycler.tmpPositions.add(position);
+            synchronized (AutoFitConfig.class) {
+                if (sDefaultExecutor == null) {
+                    int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+                    sDefaultExecutor = Executors.newFixedThreadPool(threads, backgroundThreadFactory("ExcelView-autofit"));
+                }
+                return sDefaultExecutor;
             }
         }
 
-        for (Position position : mRecycler.tmpPositions) {
-            Cell cell = mVisibleCells.remove(position);
-            removeView(cell.view);
-            mRecycler.recycle(cell.viewType, cell.view);
+        //后台线程, 返回最宽的文字宽度, 一个有文字的单元格都没有时返回-1
+        float measureColumn(CellReader reader, int col, int[] rows, int n) {
+            TextPaint paint = new TextPaint(this.paint);//Paint不能多线程共用
+            float max = -1;
+            for (int i = 0; i < n; i++) {
+                int row = rows != null ? rows[i] : i;
+                if (Span.isSpan(reader.querySpan(row, col))) {//合并单元格不参与
+                    continue;
+                }
+                CharSequence text = reader.getCellText(row, col);
+                if (text != null) {
+                    max = Math.max(max, Layout.getDesiredWidth(text, paint));
+                }
+            }
+            return max;
         }
-    }
 
-    @Override
-    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-    }
-
-
-    public static abstract class ExcelAdapter {
-        private final DataSetObservable mDataSetObservable = new DataSetObservable();
-
-        public void registerDataSetObserver(DataSetObserver observer) {
-            mDataSetObservable.registerObserver(observer);
+        //主线程取出的文字, 合并单元格已经是null
+        float measureTexts(CharSequence[] texts) {
+            TextPaint paint = new TextPaint(this.paint);
+            float max = -1;
+            for (CharSequence text : texts) {
+                if (text != null) {
+                    max = Math.max(max, Layout.getDesiredWidth(text, paint));
+                }
+            }
+            return max;
         }
 
-        public void unregisterDataSetObserver(DataSetObserver observer) {
-            mDataSetObservable.unregisterObserver(observer);
+        int clampWidth(float textWidth, int dividerWidth) {
+            int width = (int) Math.ceil(textWidth) + padding * 2 + dividerWidth;
+            return Math.max(minWidth, Math.min(maxWidth, width));
         }
+    }
 
-        public void notifyDataSetChanged() {
-            mDataSetObservable.notifyChanged();
+    //一次排版(layoutChildren)的统计数据
+    public static class Metrics {
+        public long layoutTimeNanos;
+        public int cellsCreated;//没有可复用的view, getCellView时convertView为null
+        public int cellsReused;//从Recycler复用了view
+        public int cellsBound;//getCellView调用次数
+        public int cellsMeasured;
+        public int cellsRecycled;
+        public int prefetchHits;//直接使用了预取的cell
+        public int spanLookups;
+        public int visibleCells;
+        public int pooledViews;
+        public int pooledCells;
+
+        void reset() {
+            layoutTimeNanos = 0;
+            cellsCreated = 0;
+            cellsReused = 0;
+            cellsBound = 0;
+            cellsMeasured = 0;
+            cellsRecycled = 0;
+            prefetchHits = 0;
+            spanLookups = 0;
+            visibleCells = 0;
+            pooledViews = 0;
+            pooledCells = 0;
         }
 
-        public abstract Span querySpan(int row, int col);
-
-        public abstract int getColCount();
-
-        public abstract int getRowCount();
-
-        public abstract int getRowHeight(int row);
-
-        public abstract int getColWidth(int col);
-
-        public abstract int getCellViewType(int row, int col);
-
-        public abstract View getCellView(Context context, View convertView, int row, int col);
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "layoutTimeNanos=" + layoutTimeNanos +
+                    ", cellsCreated=" + cellsCreated +
+                    ", cellsReused=" + cellsReused +
+                    ", cellsBound=" + cellsBound +
+                    ", cellsMeasured=" + cellsMeasured +
+                    ", cellsRecycled=" + cellsRecycled +
+                    ", prefetchHits=" + prefetchHits +
+                    ", spanLookups=" + spanLookups +
+                    ", visibleCells=" + visibleCells +
+                    ", pooledViews=" + pooledViews +
+                    ", pooledCells=" + pooledCells +
+                    '}';
+        }
     }
 
-    public static class Span {
+    public static class Span implements CellRange {
         final Position lt;//左上角
         final Position rb;//右下角
 
@@ -541,131 +3307,198 @@ public class ExcelView extends ViewGroup {
             this(new Position(r1, c1), new Position(r2, c2));
         }
 
+        @Override
+        public int getFirstRow() {
+            return lt.row;
+        }
+
+        @Override
+        public int getFirstCol() {
+            return lt.col;
+        }
+
+        @Override
+        public int getLastRow() {
+            return rb.row;
+        }
+
+        @Override
+        public int getLastCol() {
+            return rb.col;
+        }
+
         public boolean contains(int row, int col) {
             return row >= lt.row && row <= rb.row && col >= lt.col && col <= rb.col;
         }
 
-        private static boolean isSpan(Span span) {
+        static boolean isSpan(Span span) {
             return !(span == null || span.lt.equals(span.rb));
         }
 
         private boolean isLeftTop(int row, int col) {//
             return lt.row == row && lt.col == col;
         }
+
+        public boolean intersects(int r1, int c1, int r2, int c2) {
+            return lt.row <= r2 && rb.row >= r1 && lt.col <= c2 && rb.col >= c1;
+        }
+    }
+
+    public interface CellVisitor {
+        //返回false停止访问
+        boolean visitCell(int row, int col);
+    }
+
+    //合并单元格索引, 按16x16分块, 每个合并单元格登记到它覆盖的所有块中
+    //合并单元格之间不能重叠
+    public static class SpanIndex extends RangeIndex<Span> {
     }
 
 
 
     ///////////////////////////////////////////////////////////////////////////////////////////
     private static class Recycler {
-        Map<Integer, List<View>> views = new HashMap<>();
-        List<Position> tmpPositions = new ArrayList<>();
+        RecycledViewPool pool = new RecycledViewPool();
+        List<Cell> cells = new ArrayList<>();
+        List<Cell> tmpCells = new ArrayList<>();
+        long[] tmpKeys = new long[64];
+
+        public int addTmpKey(int count, long key) {
+            if (count == tmpKeys.length) {
+                tmpKeys = Arrays.copyOf(tmpKeys, count * 2);
+            }
+            tmpKeys[count] = key;
+            return count + 1;
+        }
+
+        public Cell obtainCell(View view, int viewType) {
+            Cell cell = cells.isEmpty() ? new Cell() : cells.remove(cells.size() - 1);
+            cell.view = view;
+            cell.viewType = viewType;
+            cell.renderer = null;
+            cell.x = cell.y = cell.w = cell.h = 0;
+            cell.rbRow = cell.rbCol = -1;
+            cell.layer = LAYER_BODY;
+            cell.layerIndex = -1;
+            return cell;
+        }
+
+        //view放回pool
+        public void recycleCell(Cell cell) {
+            if (cell.view != null) {
+                pool.putRecycledView(cell.viewType, cell.view);
+            }
+            cell.view = null;
+            cell.renderer = null;
+            cells.add(cell);
+        }
+
+        //pool被其他ExcelView共用时不清空
+        public void clear(boolean clearPool) {
+            if (clearPool) {
+                pool.clear();
+            }
+            cells.clear();
+        }
+    }
+
+    //view缓存池, 每种viewType有数量上限, 可以在多个ExcelView之间共用
+    //一次排版中放入的view可以超过上限(跳转时先全部回收再复用), 排版结束后丢弃超出的部分
+    public static class RecycledViewPool implements ComponentCallbacks2 {
+        public static final int DEFAULT_MAX_RECYCLED_VIEWS = 64;
+        private final SparseArray<List<View>> mScrap = new SparseArray<>();
+        private final SparseIntArray mMaxScrap = new SparseIntArray();
+        private int mAttachCount;
+
+        public void setMaxRecycledViews(int viewType, int max) {
+            mMaxScrap.put(viewType, max);
+            trim(viewType, max);
+        }
 
-        public void recycle(int viewType, View view) {
-            List<View> list = views.get(viewType);
+        public int getMaxRecycledViews(int viewType) {
+            return mMaxScrap.get(viewType, DEFAULT_MAX_RECYCLED_VIEWS);
+        }
+
+        public void putRecycledView(int viewType, View view) {
+            List<View> list = mScrap.get(viewType);
             if (list == null) {
-                views.put(viewType, list = new ArrayList<>());
+                mScrap.put(viewType, list = new ArrayList<>());
             }
             list.add(view);
         }
 
-        public View reuse(int viewType) {
-            List<View> list = views.get(viewType);
+        @Nullable
+        public View getRecycledView(int viewType) {
+            List<View> list = mScrap.get(viewType);
             if (list == null || list.isEmpty()) {
                 return null;
             }
             return list.remove(list.size() - 1);
         }
 
+        public int getRecycledViewCount(int viewType) {
+            List<View> list = mScrap.get(viewType);
+            return list == null ? 0 : list.size();
+        }
+
+        public int size() {
+            int count = 0;
+            for (int i = 0, n = mScrap.size(); i < n; i++) {
+                count += mScrap.valueAt(i).size();
+            }
+            return count;
+        }
+
         public void clear() {
-            views.clear();
-            tmpPositions.clear();
+            mScrap.clear();
         }
-    }
 
-    private static class LayoutState {
-        boolean invalid = true;
-        int scrollX, scrollY;
-        int width, height;
-        int firstBodyRow = 0, firstBodyCol = 0;
-        int firstBodyRowOffset = 0, firstBodyColOffset = 0;//firstBodyRow被head挡住的部分, 为正数
-        int bodyRowCount = 0, bodyColCount = 0;
-        
-        public boolean isCellVisible(int row, int col) {
-            boolean cellVisible;
-            int bodyRowEnd = firstBodyRow + bodyRowCount;
-            int bodyColEnd = firstBodyCol + bodyColCount;
-            if (col == 0 && row == 0) {//左上角永不回收
-                cellVisible = true;
-            } else if (col == 0) {//第0列
-                cellVisible = row >= firstBodyRow && row < bodyRowEnd;
-            } else if (row == 0) {//第0行
-                cellVisible = col >= firstBodyCol && col < bodyColEnd;
-            } else {
-                cellVisible = row >= firstBodyRow && row < bodyRowEnd &&
-                        col >= firstBodyCol && col < bodyColEnd;
+        //丢弃超过上限的view
+        public void trim() {
+            for (int i = 0, n = mScrap.size(); i < n; i++) {
+                int viewType = mScrap.keyAt(i);
+                trim(viewType, getMaxRecycledViews(viewType));
+            }
+        }
+
+        private void trim(int viewType, int max) {
+            List<View> list = mScrap.get(viewType);
+            while (list != null && list.size() > Math.max(0, max)) {
+                list.remove(list.size() - 1);
             }
-            return cellVisible;
         }
 
         @Override
-        public String toString() {
-            return "LayoutState{" +
-                    "invalid=" + invalid +
-                    ", scrollX=" + scrollX +
-                    ", scrollY=" + scrollY +
-                    ", width=" + width +
-                    ", height=" + height +
-                    ", firstBodyRow=" + firstBodyRow +
-                    ", firstBodyCol=" + firstBodyCol +
-                    ", firstBodyRowOffset=" + firstBodyRowOffset +
-                    ", firstBodyColOffset=" + firstBodyColOffset +
-                    ", bodyRowCount=" + bodyRowCount +
-                    ", bodyColCount=" + bodyColCount +
-                    '}';
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_UI_HIDDEN) {
+                clear();
+            } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+                for (int i = 0, n = mScrap.size(); i < n; i++) {
+                    List<View> list = mScrap.valueAt(i);
+                    trim(mScrap.keyAt(i), list.size() / 2);
+                }
+            }
         }
 
-        public void init() {
-            scrollX = 0;
-            scrollY = 0;
-            firstBodyRow = 0;
-            firstBodyCol = 0;
-            bodyRowCount = 0;
-            bodyColCount = 0;
-            firstBodyRowOffset = 0;
-            firstBodyColOffset = 0;
+        @Override
+        public void onLowMemory() {
+            clear();
         }
 
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+
+        void attach(Context context) {
+            if (mAttachCount++ == 0) {
+                context.getApplicationContext().registerComponentCallbacks(this);
+            }
+        }
 
-            LayoutState that = (LayoutState) o;
-
-            if (scrollX != that.scrollX) return false;
-            if (scrollY != that.scrollY) return false;
-            if (width != that.width) return false;
-            if (height != that.height) return false;
-            if (firstBodyRow != that.firstBodyRow) return false;
-            if (firstBodyCol != that.firstBodyCol) return false;
-            if (firstBodyRowOffset != that.firstBodyRowOffset) return false;
-            if (firstBodyColOffset != that.firstBodyColOffset) return false;
-            if (bodyRowCount != that.bodyRowCount) return false;
-            return bodyColCount == that.bodyColCount;
-        }
-        
-        public void copyFrom(LayoutState that) {
-            scrollX = that.scrollX ;
-            scrollY = that.scrollY ;
-            width = that.width ;
-            height = that.height ;
-            firstBodyRow = that.firstBodyRow ;
-            firstBodyCol = that.firstBodyCol ;
-            firstBodyRowOffset = that.firstBodyRowOffset;
-            firstBodyColOffset = that.firstBodyColOffset;
-            bodyRowCount = that.bodyRowCount ;
-            bodyColCount = that.bodyColCount;
+        void detach(Context context) {
+            if (--mAttachCount == 0) {
+                context.getApplicationContext().unregisterComponentCallbacks(this);
+            }
         }
     }
 
@@ -694,104 +3527,50 @@ public class ExcelView extends ViewGroup {
 //        }
 //    }
 
-    private static abstract class ScrollHelper {
-        int startOffset;
-        int startIndex;
-        int bodyCount;
-        int scroll;
-
-        public abstract int getViewCount();
-        public abstract int getViewSize(int index);
-
-        public void scroll(int _startOffset, int _startIndex, int visibleSize, int oldScroll, int newScroll) {
-            this.startOffset = _startOffset;
-            this.startIndex = _startIndex;
-            this.scroll = oldScroll;
-            newScroll = Math.max(0, newScroll);
-
-            int viewCount = getViewCount();
-            if (viewCount <= 1) {
-                startIndex = 1;
-                startOffset = 0;
-                bodyCount = 0;
-                scroll = 0;
-                return;
-            }
+    //drawLines用的线段缓冲, 只增不减
+    private static class GridLines {
+        float[] points = new float[256];
+        int count;
 
-            startIndex = Math.max(1, Math.min(viewCount-1, startIndex));
-            startOffset = startOffset >= getViewSize(startIndex) ? 0 : startOffset;
-            int scrollDistance = newScroll - oldScroll;
-            if (scrollDistance > 0) {
-                while (scrollDistance > 0 && startIndex < viewCount) {
-                    int tmp = getViewSize(startIndex)-startOffset;
-                    if (scrollDistance >= tmp) {
-                        startOffset = 0;
-                        startIndex++;
-                        scrollDistance -= tmp;
-                    } else {
-                        startOffset += scrollDistance;
-                        scrollDistance = 0;
-                    }
-                }//startIndex可能==cellCount
-            } else if (scrollDistance < 0) {
-                int tmp = Math.min(-scrollDistance, startOffset);
-                startOffset -= tmp;
-                scrollDistance += tmp;
-                while (scrollDistance < 0 && startIndex > 1) {
-                    tmp = getViewSize(--startIndex);
-                    if (-scrollDistance >= tmp) {
-                        scrollDistance += tmp;
-                    } else {
-                        startOffset = tmp+scrollDistance;
-                        scrollDistance = 0;
-                    }
-                }
-            }
-            scroll = newScroll - scrollDistance;
-            int lastIndex = Math.min(startIndex, viewCount-1);//因为startIndex可能==cellcount
-            int space = visibleSize - getViewSize(0) + startOffset;
-            for (int i = startIndex; i < viewCount && space > 0; i++) {
-                space -= getViewSize(i);
-                lastIndex = i;
-            }
-            //右下部还有空间, 强制右下滚动, 调整scroll
-            while (true) {
-                if (space > 0) {
-                    int min = Math.min(startOffset, space);
-                    startOffset -= min;
-                    space -= min;
-                    scroll -= min;
-                }
-                if (space > 0 && startIndex > 1) {
-                    int size = getViewSize(--startIndex);
-                    int min = Math.min(size, space);
-                    startOffset = size - min;
-                    space -= min;
-                    scroll -= min;
-                } else {
-                    break;
-                }
+        public void reset() {
+            count = 0;
+        }
+
+        public void add(float x0, float y0, float x1, float y1) {
+            if (count + 4 > points.length) {
+                points = Arrays.copyOf(points, points.length * 2);
             }
-            if (startIndex == 1) {
-                scroll = startOffset;
+            points[count++] = x0;
+            points[count++] = y0;
+            points[count++] = x1;
+            points[count++] = y1;
+        }
+
+        public void draw(Canvas canvas, Paint paint) {
+            if (count > 0) {
+                canvas.drawLines(points, 0, count, paint);
             }
-            bodyCount = lastIndex - startIndex + 1;
         }
     }
 
-
-    private static class Cell {
-        View view;
+    static class Cell {
+        View view;//使用CellRenderer时为null
+        CellRenderer renderer;
         int viewType;
         int x, y, w, h;
-        Position lt, rb;//如果rb!=null说明是合并单元格
+        int row, col;//左上角
+        int rbRow = -1, rbCol = -1;//右下角, 如果rbRow>=0说明是合并单元格
+        int layer = LAYER_BODY;
+        int layerIndex = -1;//在冻结层列表中的位置, body不登记
 
-        public Cell(View view, int viewType) {
-            this.view = view;
-            this.viewType = viewType;
+        public boolean isSpan() {
+            return rbRow >= 0;
         }
     }
 
+    static class LongCellMap extends LongObjectMap<Cell> {
+    }
+
     private static class Position {
         public final int row, col;
 
@@ -825,29 +3604,4 @@ public class ExcelView extends ViewGroup {
     }
 
 
-    //可视界面的 合并单元格 冲突处理, 暂未实现
-//    private static class SpanHitTest {
-//        public int colCount, rowCount;
-//        public final List<Span> spanList = new ArrayList<>();
-//        public Span find(Position p) {
-//            for (Span s : spanList) {
-//                if (s.contains(p.row, p.col)) {
-//                    return s;
-//                } else if (s.lt.col > p.col) {
-//                    break;
-//                }
-//            }
-//            return null;
-//        }
-//        public void add(Span span) {
-//            int i;
-//            for (i = 0; i < spanList.size(); i++) {
-//                if (span.lt.col < spanList.get(i).lt.col) {
-//                    break;
-//                }
-//            }
-//            spanList.add(i, span);
-//        }
-//    }
-
 }
@@ -0,0 +1,146 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.SystemClock;
+
+import com.lhg.excelview.core.ScrollHelper;
+import com.lhg.excelview.core.SizeIndex;
+
+/**
+ * ExcelView的快速滚动条: 内容超过几屏时在右侧和底部显示, 拖动时直接跳到目标窗口, 不经过中间的窗口.
+ */
+final class FastScroller implements Runnable {
+    static final int MIN_PAGES = 3;
+    static final long HIDE_DELAY = 1500;
+    static final int AXIS_Y = 1, AXIS_X = 2;
+    final ExcelView view;
+    final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    final RectF thumb = new RectF();
+    final int thickness, minLength, touchExtra;
+    boolean enabled = true;
+    boolean visible;
+    long lastShowTime;
+    int dragAxis;
+    float grabOffset;
+    //最近一次computeThumb的轨道
+    int trackStart, trackRange, maxScroll;
+
+    FastScroller(ExcelView view, Context context) {
+        this.view = view;
+        float density = context.getResources().getDisplayMetrics().density;
+        thickness = Math.round(6 * density);
+        minLength = Math.round(48 * density);
+        touchExtra = Math.round(16 * density);
+        paint.setColor(0x99888888);
+    }
+
+    void show() {
+        if (!enabled) {
+            return;
+        }
+        lastShowTime = SystemClock.uptimeMillis();
+        if (!visible) {
+            visible = true;
+            view.postDelayed(this, HIDE_DELAY);
+        }
+    }
+
+    @Override
+    public void run() {
+        long remaining = lastShowTime + HIDE_DELAY - SystemClock.uptimeMillis();
+        if (dragAxis != 0 || remaining > 0) {
+            view.postDelayed(this, Math.max(remaining, 100));
+            return;
+        }
+        visible = false;
+        view.invalidate();
+    }
+
+    //thumb在view坐标中的位置, 内容不够长时返回false
+    boolean computeThumb(int axis, RectF out) {
+        boolean vertical = axis == AXIS_Y;
+        ScrollHelper helper = vertical ? view.mScrollHelperY : view.mScrollHelperX;
+        int visibleSize = vertical ? view.getHeight() : view.getWidth();
+        SizeIndex index = helper.getIndex();
+        maxScroll = helper.maxScroll(visibleSize);
+        if (view.mAdapter == null || index.count <= 1 || maxScroll <= 0 || index.total() < visibleSize * MIN_PAGES) {
+            return false;
+        }
+        trackStart = index.offsetOf(helper.headEnd(index.count));
+        int footSize = index.total() - index.offsetOf(helper.footStart(index.count));
+        int trackLength = visibleSize - trackStart - footSize - thickness;//让出另一条的位置
+        if (trackLength <= minLength) {
+            return false;
+        }
+        float length = Math.max(minLength, trackLength * (float) (visibleSize - trackStart - footSize) /
+                (index.total() - trackStart - footSize));
+        trackRange = trackLength - Math.round(length);
+        float pos = trackStart + trackRange * (float) (vertical ? view.getScrollY() : view.getScrollX()) / maxScroll;
+        if (vertical) {
+            out.set(view.getWidth() - thickness, pos, view.getWidth(), pos + length);
+        } else {
+            out.set(pos, view.getHeight() - thickness, pos + length, view.getHeight());
+        }
+        return true;
+    }
+
+    void draw(Canvas canvas) {
+        if (!enabled || (!visible && dragAxis == 0)) {
+            return;
+        }
+        int saveCount = canvas.save();
+        canvas.translate(view.getScrollX(), view.getScrollY());
+        float radius = thickness / 2f;
+        if (computeThumb(AXIS_Y, thumb)) {
+            canvas.drawRoundRect(thumb, radius, radius, paint);
+        }
+        if (computeThumb(AXIS_X, thumb)) {
+            canvas.drawRoundRect(thumb, radius, radius, paint);
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    boolean onDown(float x, float y) {
+        if (!enabled || !visible) {
+            return false;
+        }
+        if (computeThumb(AXIS_Y, thumb) && x >= thumb.left - touchExtra &&
+                y >= thumb.top - touchExtra && y <= thumb.bottom + touchExtra) {
+            dragAxis = AXIS_Y;
+            grabOffset = y - thumb.top;
+        } else if (computeThumb(AXIS_X, thumb) && y >= thumb.top - touchExtra &&
+                x >= thumb.left - touchExtra && x <= thumb.right + touchExtra) {
+            dragAxis = AXIS_X;
+            grabOffset = x - thumb.left;
+        } else {
+            return false;
+        }
+        if (view.getParent() != null) {
+            view.getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        view.invalidate();
+        return true;
+    }
+
+    void onDrag(float x, float y) {
+        if (!computeThumb(dragAxis, thumb) || trackRange <= 0) {
+            return;
+        }
+        float pos = (dragAxis == AXIS_Y ? y : x) - grabOffset - trackStart;
+        int scroll = Math.round(Math.max(0, Math.min(1, pos / trackRange)) * maxScroll);
+        if (dragAxis == AXIS_Y) {
+            view.scrollTo(view.getScrollX(), scroll);
+        } else {
+            view.scrollTo(scroll, view.getScrollY());
+        }
+    }
+
+    void onUp() {
+        dragAxis = 0;
+        show();
+        view.invalidate();
+    }
+}
@@ -0,0 +1,466 @@
+package com.lhg.excelview;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+import com.lhg.excelview.core.LongObjectMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ExcelView的查找: 行按块分给线程池并行扫描, 每块的结果按(row, col)排好序单独保存,
+ * 块之间本来就按行号有序, 不需要合并; 高亮和查找下一个都在块内二分查找.
+ */
+final class Finder {
+    static final int CHUNK_ROWS = 1024;
+    private static ExecutorService sFindExecutor;
+    final ExcelView view;
+    final Paint matchPaint = new Paint();
+    final Paint currentPaint = new Paint();
+    ExcelView.OnFindListener listener;
+    String query;//null表示没有查找
+    int flags;
+    volatile int generation;//新的查找、取消或换adapter时丢掉还没完成的块
+    long[][] chunks;//每块的匹配, key同LongCellMap; 还没扫描过的块为null
+    int[] versions;//块被重新扫描时加1, 旧的结果到达时丢掉
+    boolean[] scanned;//块的结果是最新的
+    int rowCount, scannedRows, matchCount;
+    boolean scanning;
+    boolean cancelled;//取消后不再扫描, 数据变化时只丢掉受影响的结果
+    int currentRow = -1, currentCol = -1;
+    int pendingDirection;//查找下一个/上一个时遇到还没扫描的块, 等它的结果到达再继续
+
+    Finder(ExcelView view) {
+        this.view = view;
+        matchPaint.setColor(0x66FFEB3B);
+        currentPaint.setColor(0x99FF9800);
+    }
+
+    void start(String query, int flags) {
+        generation++;
+        this.query = query;
+        this.flags = flags;
+        cancelled = false;
+        chunks = null;
+        currentRow = currentCol = -1;
+        pendingDirection = 0;
+        scanAll();
+    }
+
+    void scanAll() {
+        final int generation = ++this.generation;
+        rowCount = view.mAdapter != null ? view.mAdapter.getRowCount() : 0;
+        int n = (rowCount + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        if (chunks == null || chunks.length != n) {//块数不变时先保留旧结果, 重新扫描完之前高亮不闪
+            chunks = new long[n][];
+            matchCount = 0;
+        }
+        versions = new int[n];
+        scanned = new boolean[n];
+        scannedRows = 0;
+        scanning = true;
+        if (n == 0) {
+            finishIfDone();
+            return;
+        }
+        //从当前可见的块开始, 查找下一个能尽快有结果
+        int first = Math.min(view.mVisibleState.firstBodyRow / CHUNK_ROWS, n - 1);
+        for (int i = 0; i < n; i++) {
+            submit(generation, (first + i) % n);
+        }
+    }
+
+    //只有[row1, row2]的内容变了, 重新扫描这几块, 其他块的结果不动
+    void rescanRows(int row1, int row2) {
+        if (query == null || chunks == null) {
+            return;
+        }
+        int end = Math.min(row2 / CHUNK_ROWS, chunks.length - 1);
+        for (int chunk = Math.max(row1, 0) / CHUNK_ROWS; chunk <= end; chunk++) {
+            versions[chunk]++;
+            if (scanned[chunk]) {
+                scanned[chunk] = false;
+                scannedRows -= chunkEnd(chunk) - chunk * CHUNK_ROWS;
+            }
+            if (cancelled) {
+                if (chunks[chunk] != null) {
+                    matchCount -= chunks[chunk].length;
+                    chunks[chunk] = null;
+                    view.invalidate();
+                }
+            } else {
+                scanning = true;
+                submit(generation, chunk);
+            }
+        }
+    }
+
+    //行列数变了, 当前匹配跟着移动, 所有块重新扫描
+    void onStructureChanged(boolean isRow, int op, int start, int count, int to) {
+        if (query == null) {
+            return;
+        }
+        if (currentRow >= 0) {
+            if (isRow) {
+                currentRow = ExcelView.ExcelObserver.mapIndex(op, currentRow, start, count, to);
+            } else {
+                currentCol = ExcelView.ExcelObserver.mapIndex(op, currentCol, start, count, to);
+            }
+            if (currentRow < 0 || currentCol < 0) {
+                currentRow = currentCol = -1;
+            }
+        }
+        pendingDirection = 0;
+        chunks = null;
+        if (cancelled) {
+            matchCount = 0;
+            view.invalidate();
+        } else {
+            scanAll();
+        }
+    }
+
+    //末尾追加了行: 已有的块不动, 只扫描原来最后一块(变长了)和新增的块
+    void onRowsAppended() {
+        if (query == null || chunks == null) {
+            return;
+        }
+        int oldRowCount = rowCount, oldChunks = chunks.length;
+        rowCount = view.mAdapter.getRowCount();
+        int n = (rowCount + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        chunks = Arrays.copyOf(chunks, n);
+        versions = Arrays.copyOf(versions, n);
+        scanned = Arrays.copyOf(scanned, n);
+        if (cancelled) {
+            return;
+        }
+        int first = oldRowCount / CHUNK_ROWS;
+        if (first < oldChunks) {
+            versions[first]++;
+            if (scanned[first]) {
+                scanned[first] = false;
+                scannedRows -= oldRowCount - first * CHUNK_ROWS;
+            }
+        }
+        for (int chunk = first; chunk < n; chunk++) {
+            scanning = true;
+            submit(generation, chunk);
+        }
+    }
+
+    //只在数据变化时调用, 已有的结果保留
+    void rescanAll() {
+        if (query == null) {
+            return;
+        }
+        pendingDirection = 0;
+        if (cancelled) {
+            chunks = null;
+            matchCount = 0;
+            view.invalidate();
+        } else {
+            scanAll();
+        }
+    }
+
+    void cancel() {
+        generation++;
+        cancelled = scanning;
+        scanning = false;
+        pendingDirection = 0;
+    }
+
+    void clear() {
+        cancel();
+        query = null;
+        chunks = null;
+        matchCount = 0;
+        currentRow = currentCol = -1;
+        view.invalidate();
+    }
+
+    int chunkEnd(int chunk) {
+        return Math.min(rowCount, (chunk + 1) * CHUNK_ROWS);
+    }
+
+    private void submit(final int generation, final int chunk) {
+        final ExcelView.ExcelAdapter adapter = view.mAdapter;
+        final String query = this.query;
+        final int flags = this.flags;
+        final int version = versions[chunk];
+        final int rowStart = chunk * CHUNK_ROWS, rowEnd = chunkEnd(chunk);
+        final int colCount = adapter.getColCount();
+        //每块一个reader, 不经过adapter给主线程用的缓存
+        final ExcelView.CellReader reader = adapter.newCellReader();
+        if (reader == null) {
+            submitSnapshot(generation, chunk, version, adapter, query, flags, rowStart, rowEnd, colCount);
+            return;
+        }
+        getFindExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                long[] keys = scanRows(generation, reader, query, flags, rowStart, rowEnd, colCount);
+                if (keys != null) {
+                    postChunk(generation, chunk, version, keys);
+                }
+            }
+        });
+    }
+
+    //adapter不能在后台读时, 主线程分批复制这一块的文字, 在后台匹配, 最后一批匹配完按顺序拼起来
+    private void submitSnapshot(final int generation, final int chunk, final int version, ExcelView.ExcelAdapter adapter,
+                                final String query, final int flags, int rowStart, int rowEnd, final int colCount) {
+        view.post(view.new TextSnapshot(adapter, getFindExecutor(), null, rowStart, rowEnd, 0, colCount, false) {
+            final long[][] parts = new long[batchCount()][];
+            final AtomicInteger remaining = new AtomicInteger(parts.length);
+
+            @Override
+            boolean isCancelled() {
+                return generation != Finder.this.generation;
+            }
+
+            @Override
+            void onBatch(int batch, int start, int end, CharSequence[] texts) {
+                parts[batch] = scanTexts(texts, start, end, colCount, query, flags);
+                if (remaining.decrementAndGet() != 0) {
+                    return;
+                }
+                int n = 0;
+                for (long[] part : parts) {
+                    n += part.length;
+                }
+                long[] keys = new long[n];
+                n = 0;
+                for (long[] part : parts) {
+                    System.arraycopy(part, 0, keys, n, part.length);
+                    n += part.length;
+                }
+                postChunk(generation, chunk, version, keys);
+            }
+        });
+    }
+
+    private void postChunk(final int generation, final int chunk, final int version, final long[] keys) {
+        view.post(new Runnable() {
+            @Override
+            public void run() {
+                onChunkScanned(generation, chunk, version, keys);
+            }
+        });
+    }
+
+    //后台线程, 结果按行列顺序; 被取消时返回null
+    private long[] scanRows(int generation, ExcelView.CellReader reader, String query, int flags,
+                            int rowStart, int rowEnd, int colCount) {
+        long[] keys = new long[16];
+        int n = 0;
+        for (int row = rowStart; row < rowEnd; row++) {
+            if (generation != this.generation) {
+                return null;
+            }
+            for (int col = 0; col < colCount; col++) {
+                CharSequence text = reader.getCellText(row, col);
+                if (text != null && matches(text, query, flags)) {
+                    if (n == keys.length) {
+                        keys = Arrays.copyOf(keys, n * 2);
+                    }
+                    keys[n++] = LongObjectMap.key(row, col);
+                }
+            }
+        }
+        return Arrays.copyOf(keys, n);
+    }
+
+    //后台线程, texts是TextSnapshot复制的[start, end)行
+    private long[] scanTexts(CharSequence[] texts, int start, int end, int colCount, String query, int flags) {
+        long[] keys = new long[16];
+        int n = 0;
+        for (int row = start; row < end; row++) {
+            for (int col = 0; col < colCount; col++) {
+                CharSequence text = texts[(row - start) * colCount + col];
+                if (text != null && matches(text, query, flags)) {
+                    if (n == keys.length) {
+                        keys = Arrays.copyOf(keys, n * 2);
+                    }
+                    keys[n++] = LongObjectMap.key(row, col);
+                }
+            }
+        }
+        return Arrays.copyOf(keys, n);
+    }
+
+    private void onChunkScanned(int generation, int chunk, int version, long[] keys) {
+        if (generation != this.generation || version != versions[chunk]) {
+            return;
+        }
+        long[] old = chunks[chunk];
+        chunks[chunk] = keys;
+        scanned[chunk] = true;
+        matchCount += keys.length - (old != null ? old.length : 0);
+        scannedRows += chunkEnd(chunk) - chunk * CHUNK_ROWS;
+        if ((keys.length > 0 || (old != null && old.length > 0)) &&
+                view.mVisibleState.isRowVisible(chunk * CHUNK_ROWS, chunkEnd(chunk) - 1)) {
+            view.invalidate();
+        }
+        if (pendingDirection != 0) {
+            int direction = pendingDirection;
+            pendingDirection = 0;
+            move(direction);
+        }
+        if (listener != null) {
+            listener.onFindProgress(view, matchCount, scannedRows, rowCount);
+        }
+        finishIfDone();
+    }
+
+    private void finishIfDone() {
+        if (scanning && scannedRows == rowCount) {
+            scanning = false;
+            pendingDirection = 0;
+            if (listener != null && rowCount == 0) {
+                listener.onFindProgress(view, 0, 0, 0);
+            }
+        }
+    }
+
+    //从当前匹配(没有时从可见区域的第一行)往direction方向找, 越过末尾/开头后绕回;
+    //途中遇到还没扫描的块时等它的结果, 返回false
+    boolean move(int direction) {
+        long[][] chunks = this.chunks;
+        if (query == null || chunks == null || chunks.length == 0) {
+            return false;
+        }
+        long from;
+        if (currentRow >= 0) {
+            from = LongObjectMap.key(currentRow, currentCol);
+        } else {//第一个可见行的第0列之前
+            from = LongObjectMap.key(Math.min(view.mVisibleState.firstBodyRow, rowCount - 1), 0) - (direction > 0 ? 1 : 0);
+        }
+        int n = chunks.length;
+        int start = Math.max(0, Math.min((int) (from >> 32) / CHUNK_ROWS, n - 1));
+        for (int i = 0; i <= n; i++) {
+            int chunk = direction > 0 ? (start + i) % n : (start - i % n + n) % n;
+            long[] keys = chunks[chunk];
+            if (keys == null) {
+                if (scanning) {
+                    pendingDirection = direction;
+                    return false;
+                }
+                continue;
+            }
+            int index;
+            if (i == 0) {//起始块中只看from之后(之前)的
+                int found = Arrays.binarySearch(keys, from);
+                if (direction > 0) {
+                    index = found >= 0 ? found + 1 : -found - 1;
+                } else {
+                    index = (found >= 0 ? found : -found - 1) - 1;
+                }
+            } else {
+                index = direction > 0 ? 0 : keys.length - 1;
+            }
+            if (index >= 0 && index < keys.length) {
+                select((int) (keys[index] >> 32), (int) keys[index]);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void select(int row, int col) {
+        currentRow = row;
+        currentCol = col;
+        view.scrollToCell(row, col, ExcelView.ALIGN_NEAREST);
+        view.invalidate();
+        if (listener != null) {
+            listener.onMatchSelected(view, row, col);
+        }
+    }
+
+    boolean isMatch(int row, int col) {
+        int chunk = row / CHUNK_ROWS;
+        if (chunk >= chunks.length) {
+            return false;
+        }
+        long[] keys = chunks[chunk];
+        return keys != null && keys.length > 0 && Arrays.binarySearch(keys, LongObjectMap.key(row, col)) >= 0;
+    }
+
+    //可见cell中匹配的盖一层半透明的颜色, 不重新绑定任何cell
+    void draw(Canvas canvas) {
+        if (chunks == null || (matchCount == 0 && currentRow < 0)) {
+            return;
+        }
+        drawLayer(canvas, ExcelView.LAYER_BODY);
+        for (int layer = ExcelView.LAYER_BODY + 1; layer < ExcelView.LAYER_COUNT; layer++) {
+            drawLayer(canvas, layer);
+        }
+    }
+
+    private void drawLayer(Canvas canvas, int layer) {
+        int saveCount = canvas.save();
+        if (layer != ExcelView.LAYER_CORNER) {
+            view.clipLayer(canvas, layer);
+        }
+        if (layer == ExcelView.LAYER_BODY) {
+            ExcelView.LongCellMap cells = view.mVisibleCells;
+            for (int i = 0, n = cells.capacity(); i < n; i++) {
+                ExcelView.Cell cell = cells.valueAt(i);
+                if (cell != null && cell.layer == ExcelView.LAYER_BODY) {
+                    drawCell(canvas, cell);
+                }
+            }
+        } else {
+            List<ExcelView.Cell> cells = view.mLayerCells[layer];
+            for (int i = 0, n = cells.size(); i < n; i++) {
+                drawCell(canvas, cells.get(i));
+            }
+        }
+        canvas.restoreToCount(saveCount);
+    }
+
+    private void drawCell(Canvas canvas, ExcelView.Cell cell) {
+        Paint paint;
+        if (cell.row == currentRow && cell.col == currentCol) {
+            paint = currentPaint;
+        } else if (isMatch(cell.row, cell.col)) {
+            paint = matchPaint;
+        } else {
+            return;
+        }
+        canvas.drawRect(cell.x, cell.y, cell.x + cell.w - view.mDividerWidth, cell.y + cell.h - view.mDividerWidth, paint);
+    }
+
+    //文字匹配query, flags为FIND_*的组合
+    private static boolean matches(CharSequence text, String query, int flags) {
+        String s = text.toString();
+        boolean ignoreCase = (flags & ExcelView.FIND_MATCH_CASE) == 0;
+        int length = query.length();
+        if ((flags & ExcelView.FIND_WHOLE_CELL) != 0) {
+            return s.length() == length && s.regionMatches(ignoreCase, 0, query, 0, length);
+        }
+        if (!ignoreCase) {
+            return s.contains(query);
+        }
+        for (int i = 0, last = s.length() - length; i <= last; i++) {
+            if (s.regionMatches(true, i, query, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static ExecutorService getFindExecutor() {
+        synchronized (Finder.class) {
+            if (sFindExecutor == null) {
+                int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+                sFindExecutor = Executors.newFixedThreadPool(threads, ExcelView.backgroundThreadFactory("ExcelView-find"));
+            }
+            return sFindExecutor;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.lhg.excelview.core.LongObjectMap;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * 分块异步加载数据的adapter.
+ * 数据按(行块 x 列块)的tile在后台线程加载, 放在按tile数量限制大小的LRU里(key为long, 查找时不装箱),
+ * tile没加载完之前显示占位cell, 加载完只重新绑定这个tile范围内可见的cell.
+ */
+public abstract class PagedExcelAdapter<T> extends ExcelView.ExcelAdapter {
+    public static final int DEFAULT_TILE_ROWS = 64;
+    public static final int DEFAULT_TILE_COLS = 16;
+    public static final int DEFAULT_MAX_CACHED_TILES = 64;
+    //排队等待加载的tile上限, 快速滑动时丢掉最早的请求
+    private static final int MAX_QUEUED_TILES = 16;
+    private static Executor sDefaultExecutor;
+
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private int mTileRows = DEFAULT_TILE_ROWS, mTileCols = DEFAULT_TILE_COLS;
+    //已加载的, 按使用顺序串成双向链表, 超过上限时淘汰最久没用的
+    private final LongObjectMap<Tile<T>> mTiles = new LongObjectMap<>();
+    private Tile<T> mNewest, mOldest;
+    private int mMaxCachedTiles = DEFAULT_MAX_CACHED_TILES;
+    //排队中和加载中的, 只在主线程访问; 加载结果回来时不是同一个对象说明已被丢弃
+    private final LongObjectMap<Tile<T>> mLoadingTiles = new LongObjectMap<>();
+    private final ArrayDeque<Tile<T>> mQueue = new ArrayDeque<>();//还没开始加载的, 后进先出
+
+    //默认所有adapter共用一个后台线程, 每个adapter的请求队列是分开的
+    public PagedExcelAdapter() {
+        this(getDefaultExecutor());
+    }
+
+    public PagedExcelAdapter(Executor executor) {
+        mExecutor = executor;
+    }
+
+    private static Executor getDefaultExecutor() {
+        synchronized (PagedExcelAdapter.class) {
+            if (sDefaultExecutor == null) {
+                sDefaultExecutor = Executors.newSingleThreadExecutor(ExcelView.backgroundThreadFactory("ExcelView-paged"));
+            }
+            return sDefaultExecutor;
+        }
+    }
+
+    //在后台线程把tile范围内的数据用tile.set()填进去
+    @WorkerThread
+    protected abstract void loadTile(Tile<T> tile);
+
+    //loadTile抛出了异常, tile仍显示占位cell, 下次绑定时重新加载;
+    //可以在这里提示错误, 或者过一会儿调用refreshRange触发重新绑定
+    @MainThread
+    protected void onLoadTileFailed(Tile<T> tile, RuntimeException e) {
+    }
+
+    //tile已加载, item可能为null(这个cell没有数据)
+    protected abstract View getCellView(Context context, View convertView, int row, int col, T item);
+
+    //tile还没加载完时显示的cell
+    protected abstract View getPlaceholderView(Context context, View convertView, int row, int col);
+
+    @Override
+    public final View getCellView(Context context, View convertView, int row, int col) {
+        Tile<T> tile = obtainTile(row, col);
+        if (tile == null) {
+            return getPlaceholderView(context, convertView, row, col);
+        }
+        return getCellView(context, convertView, row, col, tile.get(row, col));
+    }
+
+    //tile的行列数, 会清空缓存
+    @MainThread
+    public void setTileSize(int rows, int cols) {
+        if (rows <= 0 || cols <= 0) {
+            throw new IllegalArgumentException("tile size must be positive");
+        }
+        mTileRows = rows;
+        mTileCols = cols;
+        refresh();
+    }
+
+    //最多缓存的tile数量, 应该大于一屏覆盖的tile数
+    @MainThread
+    public void setMaxCachedTiles(int maxTiles) {
+        mMaxCachedTiles = Math.max(1, maxTiles);
+        trimTiles();
+    }
+
+    //数据已加载时返回数据并刷新LRU, 否则返回null并开始加载
+    @MainThread
+    public T getItem(int row, int col) {
+        Tile<T> tile = obtainTile(row, col);
+        return tile != null ? tile.get(row, col) : null;
+    }
+
+    @MainThread
+    public boolean isLoaded(int row, int col) {
+        return mTiles.get(tileKey(row / mTileRows, col / mTileCols)) != null;
+    }
+
+    //数据源整体变化, 丢掉所有tile重新加载
+    @MainThread
+    public void refresh() {
+        dropTiles();
+        notifyDataSetChanged();
+    }
+
+    //[row1, row2]x[col1, col2]的数据变化, 只丢掉相交的tile
+    @MainThread
+    public void refreshRange(int row1, int col1, int row2, int col2) {
+        for (int tileRow = row1 / mTileRows; tileRow <= row2 / mTileRows; tileRow++) {
+            for (int tileCol = col1 / mTileCols; tileCol <= col2 / mTileCols; tileCol++) {
+                long key = tileKey(tileRow, tileCol);
+                Tile<T> tile = mTiles.remove(key);
+                if (tile != null) {
+                    unlink(tile);
+                }
+                mLoadingTiles.remove(key);
+            }
+        }
+        notifyRangeChanged(row1, col1, row2, col2);
+    }
+
+    private void dropTiles() {
+        mTiles.clear();
+        mNewest = mOldest = null;
+        mLoadingTiles.clear();
+        synchronized (mQueue) {
+            mQueue.clear();
+        }
+    }
+
+    private static long tileKey(int tileRow, int tileCol) {
+        return LongObjectMap.key(tileRow, tileCol);
+    }
+
+    //用到的tile移到链表头
+    private void touch(Tile<T> tile) {
+        if (tile != mNewest) {
+            unlink(tile);
+            link(tile);
+        }
+    }
+
+    private void link(Tile<T> tile) {
+        tile.mOlder = mNewest;
+        tile.mNewer = null;
+        if (mNewest != null) {
+            mNewest.mNewer = tile;
+        }
+        mNewest = tile;
+        if (mOldest == null) {
+            mOldest = tile;
+        }
+    }
+
+    private void unlink(Tile<T> tile) {
+        if (tile.mNewer != null) {
+            tile.mNewer.mOlder = tile.mOlder;
+        } else {
+            mNewest = tile.mOlder;
+        }
+        if (tile.mOlder != null) {
+            tile.mOlder.mNewer = tile.mNewer;
+        } else {
+            mOldest = tile.mNewer;
+        }
+        tile.mNewer = tile.mOlder = null;
+    }
+
+    private void trimTiles() {
+        while (mTiles.size() > mMaxCachedTiles) {
+            Tile<T> oldest = mOldest;
+            unlink(oldest);
+            mTiles.remove(oldest.mKey);
+        }
+    }
+
+    private Tile<T> obtainTile(int row, int col) {
+        int tileRow = row / mTileRows, tileCol = col / mTileCols;
+        long key = tileKey(tileRow, tileCol);
+        Tile<T> tile = mTiles.get(key);
+        if (tile != null) {
+            touch(tile);
+        } else if (mLoadingTiles.get(key) == null) {
+            int rowStart = tileRow * mTileRows, colStart = tileCol * mTileCols;
+            int rowCount = Math.min(mTileRows, getRowCount() - rowStart);
+            int colCount = Math.min(mTileCols, getColCount() - colStart);
+            if (rowCount > 0 && colCount > 0) {
+                requestTile(new Tile<T>(key, rowStart, colStart, rowCount, colCount));
+            }
+        }
+        return tile;
+    }
+
+    private void requestTile(Tile<T> tile) {
+        mLoadingTiles.put(tile.mKey, tile);
+        Tile<T> dropped = null;
+        synchronized (mQueue) {
+            mQueue.addLast(tile);
+            if (mQueue.size() > MAX_QUEUED_TILES) {
+                dropped = mQueue.pollFirst();
+            }
+        }
+        if (dropped != null) {//已经滑过去了, 下次再用到时重新请求
+            if (mLoadingTiles.get(dropped.mKey) == dropped) {
+                mLoadingTiles.remove(dropped.mKey);
+            }
+        }
+        mExecutor.execute(mLoadTask);
+    }
+
+    //每次执行取最新的请求, 滑动时优先加载当前看到的
+    private final Runnable mLoadTask = new Runnable() {
+        @Override
+        public void run() {
+            final Tile<T> tile;
+            synchronized (mQueue) {
+                tile = mQueue.pollLast();
+            }
+            if (tile == null) {
+                return;
+            }
+            try {
+                loadTile(tile);
+            } catch (final RuntimeException e) {
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onTileFailed(tile, e);
+                    }
+                });
+                return;
+            }
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTileLoaded(tile);
+                }
+            });
+        }
+    };
+
+    //不再算作加载中, 之后绑定到这个tile的cell时会重新请求
+    private void onTileFailed(Tile<T> tile, RuntimeException e) {
+        if (mLoadingTiles.get(tile.mKey) != tile) {
+            return;
+        }
+        mLoadingTiles.remove(tile.mKey);
+        onLoadTileFailed(tile, e);
+    }
+
+    private void onTileLoaded(Tile<T> tile) {
+        if (mLoadingTiles.get(tile.mKey) != tile) {//期间被refresh丢掉了, 或者tile大小变了
+            return;
+        }
+        mLoadingTiles.remove(tile.mKey);
+        mTiles.put(tile.mKey, tile);
+        link(tile);
+        trimTiles();
+        notifyRangeChanged(tile.rowStart, tile.colStart,
+                tile.rowStart + tile.rowCount - 1, tile.colStart + tile.colCount - 1);
+    }
+
+    public static final class Tile<T> {
+        public final int rowStart, colStart, rowCount, colCount;
+        private final Object[] mItems;
+        private final long mKey;
+        private Tile<T> mNewer, mOlder;//LRU链表
+
+        Tile(long key, int rowStart, int colStart, int rowCount, int colCount) {
+            mKey = key;
+            this.rowStart = rowStart;
+            this.colStart = colStart;
+            this.rowCount = rowCount;
+            this.colCount = colCount;
+            mItems = new Object[rowCount * colCount];
+        }
+
+        public void set(int row, int col, T item) {
+            mItems[(row - rowStart) * colCount + col - colStart] = item;
+        }
+
+        @SuppressWarnings("unchecked")
+        public T get(int row, int col) {
+            return (T) mItems[(row - rowStart) * colCount + col - colStart];
+        }
+    }
+}
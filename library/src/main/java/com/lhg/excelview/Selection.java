@@ -0,0 +1,232 @@
+package com.lhg.excelview;
+
+import java.util.Arrays;
+
+/**
+ * ExcelView的选中区域: 互不重叠的矩形集合, 边对齐的相邻矩形会合并成一个;
+ * 全选也只是一个矩形, 占用的空间与单元格数量无关.
+ */
+public class Selection {
+    int[] rects = new int[16];//每个矩形4个数: row1, col1, row2, col2, 都包含在内
+    int count;
+    private int[] spare = new int[16];//subtract时交替使用, 拖动中不分配
+
+    public int getRangeCount() {
+        return count;
+    }
+
+    public int getFirstRow(int index) {
+        return rects[index * 4];
+    }
+
+    public int getFirstCol(int index) {
+        return rects[index * 4 + 1];
+    }
+
+    public int getLastRow(int index) {
+        return rects[index * 4 + 2];
+    }
+
+    public int getLastCol(int index) {
+        return rects[index * 4 + 3];
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    public boolean contains(int row, int col) {
+        int[] r = rects;
+        for (int i = 0, n = count * 4; i < n; i += 4) {
+            if (row >= r[i] && row <= r[i + 2] && col >= r[i + 1] && col <= r[i + 3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //矩形互不重叠, 直接相加
+    public long getCellCount() {
+        long total = 0;
+        int[] r = rects;
+        for (int i = 0, n = count * 4; i < n; i += 4) {
+            total += (long) (r[i + 2] - r[i] + 1) * (r[i + 3] - r[i + 1] + 1);
+        }
+        return total;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public void set(Selection that) {
+        if (rects.length < that.count * 4) {
+            rects = new int[that.rects.length];
+        }
+        System.arraycopy(that.rects, 0, rects, 0, that.count * 4);
+        count = that.count;
+    }
+
+    //并集: 先从已有的矩形中去掉重叠的部分, 再加入
+    public void add(int row1, int col1, int row2, int col2) {
+        int r1 = Math.min(row1, row2), r2 = Math.max(row1, row2);
+        int c1 = Math.min(col1, col2), c2 = Math.max(col1, col2);
+        subtract(r1, c1, r2, c2);
+        append(r1, c1, r2, c2);
+        coalesce();
+    }
+
+    //差集
+    public void remove(int row1, int col1, int row2, int col2) {
+        subtract(Math.min(row1, row2), Math.min(col1, col2), Math.max(row1, row2), Math.max(col1, col2));
+        coalesce();
+    }
+
+    //按行优先的顺序逐个访问选中的单元格, visitor返回false时停止;
+    //按矩形的上下边界把行分段, 每段内参与的矩形固定, 不需要逐个单元格的集合
+    public void forEachCell(ExcelView.CellVisitor visitor) {
+        int n = count;
+        if (n == 0) {
+            return;
+        }
+        int[] r = rects;
+        int[] bounds = new int[n * 2];
+        for (int i = 0; i < n; i++) {
+            bounds[i * 2] = r[i * 4];
+            bounds[i * 2 + 1] = r[i * 4 + 2] + 1;
+        }
+        Arrays.sort(bounds);
+        int[] active = new int[n];
+        for (int b = 0; b < bounds.length - 1; b++) {
+            int from = bounds[b], to = bounds[b + 1];
+            if (from == to) {
+                continue;
+            }
+            //覆盖这一段的矩形, 按起始列插入排序
+            int m = 0;
+            for (int i = 0; i < n * 4; i += 4) {
+                if (r[i] <= from && r[i + 2] >= from) {
+                    int j = m++;
+                    for (; j > 0 && r[active[j - 1] + 1] > r[i + 1]; j--) {
+                        active[j] = active[j - 1];
+                    }
+                    active[j] = i;
+                }
+            }
+            for (int row = from; row < to; row++) {
+                for (int k = 0; k < m; k++) {
+                    for (int col = r[active[k] + 1], last = r[active[k] + 3]; col <= last; col++) {
+                        if (!visitor.visitCell(row, col)) {
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    //行/列插入删除后矩形跟着移动, 跨过插入位置的矩形变大; 移动后一般不再是矩形, 清空
+    void mapIndex(boolean isRow, int op, int start, int n, int to) {
+        if (op == ExcelView.ExcelObserver.MOVE) {
+            clear();
+            return;
+        }
+        int[] r = rects;
+        int offset = isRow ? 0 : 1;
+        int kept = 0;
+        for (int i = 0; i < count * 4; i += 4) {
+            int first = r[i + offset], last = r[i + offset + 2];
+            if (op == ExcelView.ExcelObserver.INSERT) {
+                first = first >= start ? first + n : first;
+                last = last >= start ? last + n : last;
+            } else {
+                first = first < start ? first : Math.max(start, first - n);
+                last = last < start ? last : (last < start + n ? start - 1 : last - n);
+            }
+            if (first > last) {//整个被删除
+                continue;
+            }
+            System.arraycopy(r, i, r, kept, 4);
+            r[kept + offset] = first;
+            r[kept + offset + 2] = last;
+            kept += 4;
+        }
+        count = kept / 4;
+        coalesce();
+    }
+
+    //行列数变少后去掉超出的部分
+    void clamp(int rowCount, int colCount) {
+        subtract(rowCount, 0, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        subtract(0, colCount, Integer.MAX_VALUE, Integer.MAX_VALUE);
+        coalesce();
+    }
+
+    //每个已有矩形去掉与(r1, c1, r2, c2)重叠的部分, 最多剩下上下左右四块
+    private void subtract(int r1, int c1, int r2, int c2) {
+        int[] old = rects;
+        int n = count * 4;
+        rects = spare.length >= n ? spare : new int[old.length];
+        spare = old;
+        count = 0;
+        for (int i = 0; i < n; i += 4) {
+            int a1 = old[i], b1 = old[i + 1], a2 = old[i + 2], b2 = old[i + 3];
+            if (a1 > r2 || a2 < r1 || b1 > c2 || b2 < c1) {
+                append(a1, b1, a2, b2);
+                continue;
+            }
+            if (a1 < r1) {
+                append(a1, b1, r1 - 1, b2);
+            }
+            if (a2 > r2) {
+                append(r2 + 1, b1, a2, b2);
+            }
+            int m1 = Math.max(a1, r1), m2 = Math.min(a2, r2);
+            if (b1 < c1) {
+                append(m1, b1, m2, c1 - 1);
+            }
+            if (b2 > c2) {
+                append(m1, c2 + 1, m2, b2);
+            }
+        }
+    }
+
+    private void append(int r1, int c1, int r2, int c2) {
+        int i = count * 4;
+        if (i + 4 > rects.length) {
+            rects = Arrays.copyOf(rects, rects.length * 2);
+        }
+        rects[i] = r1;
+        rects[i + 1] = c1;
+        rects[i + 2] = r2;
+        rects[i + 3] = c2;
+        count++;
+    }
+
+    //列范围相同且上下相接, 或行范围相同且左右相接的两个矩形合并, 直到不能再合并; 矩形数量很少
+    private void coalesce() {
+        int[] r = rects;
+        boolean merged = true;
+        while (merged) {
+            merged = false;
+            outer:
+            for (int i = 0; i < count * 4; i += 4) {
+                for (int j = i + 4; j < count * 4; j += 4) {
+                    if (r[i + 1] == r[j + 1] && r[i + 3] == r[j + 3] && (r[i + 2] + 1 == r[j] || r[j + 2] + 1 == r[i])) {
+                        r[i] = Math.min(r[i], r[j]);
+                        r[i + 2] = Math.max(r[i + 2], r[j + 2]);
+                    } else if (r[i] == r[j] && r[i + 2] == r[j + 2] && (r[i + 3] + 1 == r[j + 1] || r[j + 3] + 1 == r[i + 1])) {
+                        r[i + 1] = Math.min(r[i + 1], r[j + 1]);
+                        r[i + 3] = Math.max(r[i + 3], r[j + 3]);
+                    } else {
+                        continue;
+                    }
+                    count--;
+                    System.arraycopy(r, count * 4, r, j, 4);//最后一个移到j
+                    merged = true;
+                    break outer;
+                }
+            }
+        }
+    }
+}
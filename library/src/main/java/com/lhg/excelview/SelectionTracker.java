@@ -0,0 +1,302 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.view.HapticFeedbackConstants;
+import android.view.ViewConfiguration;
+
+import com.lhg.excelview.core.LayoutState;
+import com.lhg.excelview.core.SizeIndex;
+
+/**
+ * ExcelView的选择: 单击选中单元格, 点开头的冻结行/列选中整列/整行, 点左上角全选;
+ * 长按后拖动扩展选区, 拖到body边缘时自动滚动; 选区画在所有cell上面, 不改动cell.
+ */
+final class SelectionTracker implements Runnable {
+    static final int KIND_CELL = 0, KIND_ROW = 1, KIND_COL = 2, KIND_ALL = 3;
+    final ExcelView view;
+    final Selection selection = new Selection();
+    final Selection base = new Selection();//拖动开始前保留的选区, 拖出的矩形加在它上面
+    final Paint fillPaint = new Paint();
+    final Paint borderPaint = new Paint();
+    final int edgeSize;//离body边缘多近开始自动滚动
+    final int[] hit = new int[2];
+    int mode = ExcelView.SELECTION_NONE;
+    ExcelView.OnSelectionChangedListener listener;
+    boolean dragging;
+    boolean autoScrolling;
+    int kind;
+    int anchorRow, anchorCol;
+    int extentRow = -1, extentCol = -1;
+    int touchX, touchY;
+    final Runnable longPress = new Runnable() {
+        @Override
+        public void run() {
+            if (!view.mIsDragging && !view.mZoomedInGesture) {
+                startDrag();
+            }
+        }
+    };
+
+    SelectionTracker(ExcelView view, Context context) {
+        this.view = view;
+        float density = context.getResources().getDisplayMetrics().density;
+        edgeSize = Math.round(32 * density);
+        fillPaint.setColor(0x2233B5E5);
+        borderPaint.setColor(0xFF33B5E5);
+        borderPaint.setStrokeWidth(Math.max(1, Math.round(2 * density)));
+    }
+
+    void onDown(int x, int y) {
+        touchX = x;
+        touchY = y;
+        if (mode != ExcelView.SELECTION_NONE && view.mAdapter != null) {
+            view.postDelayed(longPress, ViewConfiguration.getLongPressTimeout());
+        }
+    }
+
+    void onUp() {
+        view.removeCallbacks(longPress);
+        if (dragging) {
+            dragging = false;
+            autoScrolling = false;
+            view.removeCallbacks(this);
+        }
+    }
+
+    //没有滚动的单击, 单选模式替换选区, 多选模式加入选区
+    void onTap(int x, int y) {
+        if (mode == ExcelView.SELECTION_NONE || !hitTest(x, y, false)) {
+            return;
+        }
+        kind = kindAt(hit[0], hit[1]);
+        anchorRow = hit[0];
+        anchorCol = hit[1];
+        base.clear();
+        if (mode == ExcelView.SELECTION_MULTIPLE) {
+            base.set(selection);
+        }
+        extentRow = extentCol = -1;
+        extendTo(hit[0], hit[1]);
+    }
+
+    private void startDrag() {
+        if (!hitTest(touchX, touchY, false)) {
+            return;
+        }
+        dragging = true;
+        kind = kindAt(hit[0], hit[1]);
+        anchorRow = hit[0];
+        anchorCol = hit[1];
+        base.clear();
+        if (mode == ExcelView.SELECTION_MULTIPLE) {
+            base.set(selection);
+        }
+        extentRow = extentCol = -1;
+        extendTo(anchorRow, anchorCol);
+        view.performHapticFeedback(HapticFeedbackConstants.LONG_PRESS);
+        if (view.getParent() != null) {
+            view.getParent().requestDisallowInterceptTouchEvent(true);
+        }
+    }
+
+    void onDrag(int x, int y) {
+        touchX = x;
+        touchY = y;
+        if (hitTest(x, y, true)) {
+            extendTo(hit[0], hit[1]);
+        }
+        if (!autoScrolling && (scrollStep(true) != 0 || scrollStep(false) != 0)) {
+            autoScrolling = true;
+            view.postOnAnimation(this);
+        }
+    }
+
+    //自动滚动, 每帧一次, 手指离开边缘区域时停止
+    @Override
+    public void run() {
+        int dx = scrollStep(false), dy = scrollStep(true);
+        if (!dragging || (dx == 0 && dy == 0)) {
+            autoScrolling = false;
+            return;
+        }
+        view.scrollTo(view.getScrollX() + dx, view.getScrollY() + dy);
+        if (hitTest(touchX, touchY, true)) {
+            extendTo(hit[0], hit[1]);
+        }
+        view.postOnAnimation(this);
+    }
+
+    //越靠近边缘越快, 最快每帧半个edgeSize; 整行选择不横向滚动, 整列选择不纵向滚动
+    private int scrollStep(boolean vertical) {
+        if (!dragging || kind == KIND_ALL || (vertical ? kind == KIND_COL : kind == KIND_ROW)) {
+            return 0;
+        }
+        LayoutState state = view.mVisibleState;
+        int pos = vertical ? touchY : touchX;
+        int start = vertical ? state.headHeight : state.headWidth;
+        int end = vertical ? state.footY : state.footX;
+        if (end - start < edgeSize * 3) {//body太小, 不自动滚动
+            return 0;
+        }
+        int step = 0;
+        if (pos < start + edgeSize) {
+            step = -(start + edgeSize - Math.max(pos, start - edgeSize));
+        } else if (pos > end - edgeSize) {
+            step = Math.min(pos, end + edgeSize) - (end - edgeSize);
+        }
+        return step / 4;
+    }
+
+    private int kindAt(int row, int col) {
+        LayoutState state = view.mVisibleState;
+        boolean headRow = row < state.headRowCount, headCol = col < state.headColCount;
+        if (headRow && headCol) {
+            return KIND_ALL;
+        }
+        return headRow ? KIND_COL : headCol ? KIND_ROW : KIND_CELL;
+    }
+
+    //选区 = base + 锚点到(row, col)的矩形; 单击的合并单元格整个选中
+    private void extendTo(int row, int col) {
+        if (row == extentRow && col == extentCol) {
+            return;
+        }
+        extentRow = row;
+        extentCol = col;
+        int rowCount = view.mAdapter.getRowCount(), colCount = view.mAdapter.getColCount();
+        int r1 = Math.min(anchorRow, row), r2 = Math.max(anchorRow, row);
+        int c1 = Math.min(anchorCol, col), c2 = Math.max(anchorCol, col);
+        switch (kind) {
+            case KIND_ALL:
+                r1 = c1 = 0;
+                r2 = rowCount - 1;
+                c2 = colCount - 1;
+                break;
+            case KIND_ROW:
+                c1 = 0;
+                c2 = colCount - 1;
+                break;
+            case KIND_COL:
+                r1 = 0;
+                r2 = rowCount - 1;
+                break;
+            default:
+                if (r1 == r2 && c1 == c2) {
+                    ExcelView.Span span = view.mAdapter.querySpan(r1, c1);
+                    if (ExcelView.Span.isSpan(span)) {
+                        r1 = span.getFirstRow();
+                        c1 = span.getFirstCol();
+                        r2 = span.getLastRow();
+                        c2 = span.getLastCol();
+                    }
+                }
+        }
+        selection.set(base);
+        selection.add(r1, c1, r2, c2);
+        onChanged();
+    }
+
+    void onChanged() {
+        view.invalidate();
+        if (listener != null) {
+            listener.onSelectionChanged(view, selection);
+        }
+    }
+
+    //视图坐标所在的单元格, 结果放在hit中; 拖动时锚点不在冻结区域就限制在body内, 超出的部分靠自动滚动
+    private boolean hitTest(int x, int y, boolean clampToBody) {
+        if (view.mAdapter == null || view.mVisibleCells.size() == 0) {
+            return false;
+        }
+        LayoutState state = view.mVisibleState;
+        SizeIndex rows = view.mScrollHelperY.getIndex(), cols = view.mScrollHelperX.getIndex();
+        if (rows.count == 0 || cols.count == 0) {
+            return false;
+        }
+        x = Math.max(0, Math.min(x, view.getWidth() - 1));
+        y = Math.max(0, Math.min(y, view.getHeight() - 1));
+        if (clampToBody && !state.isFrozenRow(anchorRow) && state.footY > state.headHeight) {
+            y = Math.max(state.headHeight, Math.min(y, state.footY - 1));
+        }
+        if (clampToBody && !state.isFrozenCol(anchorCol) && state.footX > state.headWidth) {
+            x = Math.max(state.headWidth, Math.min(x, state.footX - 1));
+        }
+        hit[0] = Math.min(rows.indexAt(view.contentY(y)), rows.count - 1);
+        hit[1] = Math.min(cols.indexAt(view.contentX(x)), cols.count - 1);
+        return true;
+    }
+
+    void clear() {
+        onUp();
+        if (!selection.isEmpty()) {
+            selection.clear();
+            onChanged();
+        }
+    }
+
+    //每个矩形按三段行、三段列分成最多九块, 各自裁剪到所在的区域
+    void draw(Canvas canvas) {
+        if (selection.isEmpty()) {
+            return;
+        }
+        LayoutState state = view.mVisibleState;
+        int top = state.scrollY;
+        int rowCount = view.mScrollHelperY.getIndex().count;
+        for (int i = 0, n = selection.getRangeCount(); i < n; i++) {
+            drawRowBand(canvas, i, 0, state.headRowCount, top, top + state.headHeight);
+            drawRowBand(canvas, i, state.firstBodyRow, state.firstBodyRow + state.bodyRowCount,
+                    top + state.headHeight, top + state.footY);
+            drawRowBand(canvas, i, state.footRowStart, rowCount, top + state.footY, top + view.getHeight());
+        }
+    }
+
+    //第index个矩形在[row0, row1)中的部分, 裁剪到[t, b]
+    private void drawRowBand(Canvas canvas, int index, int row0, int row1, int t, int b) {
+        int r1 = Math.max(selection.getFirstRow(index), row0);
+        int r2 = Math.min(selection.getLastRow(index) + 1, row1);
+        if (r1 >= r2) {
+            return;
+        }
+        LayoutState state = view.mVisibleState;
+        int left = state.scrollX;
+        int bodyLeft = left + state.headWidth, bodyRight = left + state.footX;
+        drawRegion(canvas, index, r1, r2, 0, state.headColCount, left, t, bodyLeft, b);
+        drawRegion(canvas, index, r1, r2, state.firstBodyCol, state.firstBodyCol + state.bodyColCount,
+                bodyLeft, t, bodyRight, b);
+        drawRegion(canvas, index, r1, r2, state.footColStart, view.mScrollHelperX.getIndex().count,
+                bodyRight, t, left + view.getWidth(), b);
+    }
+
+    //填充[r1, r2)x[col0, col1)中选中的部分, 矩形本身的边画边框
+    private void drawRegion(Canvas canvas, int index, int r1, int r2, int col0, int col1,
+                            int l, int t, int r, int b) {
+        int c1 = Math.max(selection.getFirstCol(index), col0);
+        int c2 = Math.min(selection.getLastCol(index) + 1, col1);
+        if (c1 >= c2) {
+            return;
+        }
+        SizeIndex rows = view.mScrollHelperY.getIndex(), cols = view.mScrollHelperX.getIndex();
+        int x1 = view.cellX(c1), x2 = x1 + cols.offsetOf(c2) - cols.offsetOf(c1) - view.mDividerWidth;
+        int y1 = view.cellY(r1), y2 = y1 + rows.offsetOf(r2) - rows.offsetOf(r1) - view.mDividerWidth;
+        int left = Math.max(x1, l), top = Math.max(y1, t), right = Math.min(x2, r), bottom = Math.min(y2, b);
+        if (left >= right || top >= bottom) {
+            return;
+        }
+        canvas.drawRect(left, top, right, bottom, fillPaint);
+        float half = borderPaint.getStrokeWidth() / 2;
+        if (r1 == selection.getFirstRow(index) && y1 >= t) {
+            canvas.drawLine(left, y1 + half, right, y1 + half, borderPaint);
+        }
+        if (r2 - 1 == selection.getLastRow(index) && y2 <= b) {
+            canvas.drawLine(left, y2 - half, right, y2 - half, borderPaint);
+        }
+        if (c1 == selection.getFirstCol(index) && x1 >= l) {
+            canvas.drawLine(x1 + half, top, x1 + half, bottom, borderPaint);
+        }
+        if (c2 - 1 == selection.getLastCol(index) && x2 <= r) {
+            canvas.drawLine(x2 - half, top, x2 - half, bottom, borderPaint);
+        }
+    }
+}
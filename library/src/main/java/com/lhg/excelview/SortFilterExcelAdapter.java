@@ -0,0 +1,848 @@
+package com.lhg.excelview;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 不复制数据的排序/筛选层: 只保存显示行到source行的映射int[], 开头的表头行不参与排序和筛选.
+ * 排序和筛选在后台线程计算, 行数多时分块并行排序再归并, 算完在主线程一次替换映射,
+ * ExcelView保留滚动位置和已有的view, 只重新绑定可见的cell.
+ * 合并单元格覆盖的行在新顺序中仍然连续时平移过去, 否则拆开.
+ * comparator和filter在后台线程调用; 按列排序时source提供了newCellReader就在后台读这一列,
+ * 否则在主线程分批读出来. newCellReader和isDrawThreadSafe转发给source, 后台任务照样能绕过主线程读.
+ */
+public class SortFilterExcelAdapter extends ExcelView.ExcelAdapter {
+    //少于这个行数时单线程排序
+    private static final int PARALLEL_THRESHOLD = 1 << 14;
+    private static final int INSERTION_SORT_SIZE = 32;
+    //单元格变化时逐行转发的上限, 超过时转发整个范围
+    private static final int MAX_FORWARDED_ROWS = 64;
+    //source没有CellReader时主线程每次读排序列的行数
+    private static final int READ_BATCH_ROWS = 4096;
+    //排序时每处理这么多行检查一次是否已经作废
+    private static final int CANCEL_CHECK_MASK = 0xfff;
+    private static Executor sDefaultExecutor;
+    private static ExecutorService sSortPool;
+    private static int sSortThreads;
+    private static final ExcelView.Span NO_SPAN = new ExcelView.Span(0, 0, 0, 0);
+
+    public interface RowComparator {
+        //row1, row2是source的行号
+        int compare(int row1, int row2);
+    }
+
+    public interface RowFilter {
+        boolean accept(int row);
+    }
+
+    private final ExcelView.ExcelAdapter mSource;
+    private final int mHeaderRows;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    //显示行 -> source行, 和source行 -> 显示行(被筛掉为-1); 没有排序和筛选时都为null
+    private volatile int[] mRows;
+    private int[] mViewRows;
+    private int mSortCol = -1;
+    private boolean mAscending = true;
+    private RowComparator mComparator;
+    private RowFilter mFilter;
+    //comparator和filter用到的列, null表示可能用到任何列
+    private int[] mComparatorCols;
+    private int[] mFilterCols;
+    private volatile int mGeneration;//新的请求或source变化时丢掉还没完成的结果
+    //source的合并单元格 -> 映射后的, 每次替换映射后清空
+    private final Map<ExcelView.Span, ExcelView.Span> mSpans = new HashMap<>();
+    private final Map<ExcelView.CellRenderer, ExcelView.CellRenderer> mRenderers = new HashMap<>();
+
+    public SortFilterExcelAdapter(ExcelView.ExcelAdapter source) {
+        this(source, 1, getDefaultExecutor());
+    }
+
+    public SortFilterExcelAdapter(ExcelView.ExcelAdapter source, int headerRows, Executor executor) {
+        mSource = source;
+        mHeaderRows = headerRows;
+        mExecutor = executor;
+        source.registerDataSetObserver(mSourceObserver);
+    }
+
+    private static Executor getDefaultExecutor() {
+        synchronized (SortFilterExcelAdapter.class) {
+            if (sDefaultExecutor == null) {
+                sDefaultExecutor = Executors.newSingleThreadExecutor(ExcelView.backgroundThreadFactory("ExcelView-sort"));
+            }
+            return sDefaultExecutor;
+        }
+    }
+
+    //分块排序和归并用, 和mExecutor分开, 协调的任务在等待时不会占住它
+    private static ExecutorService getSortPool() {
+        synchronized (SortFilterExcelAdapter.class) {
+            if (sSortPool == null) {
+                sSortThreads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+                sSortPool = Executors.newFixedThreadPool(sSortThreads, ExcelView.backgroundThreadFactory("ExcelView-sort-part"));
+            }
+            return sSortPool;
+        }
+    }
+
+    public ExcelView.ExcelAdapter getSource() {
+        return mSource;
+    }
+
+    //按一列排序: 数字在前按数值, 然后是文字, 空的总在最后
+    @MainThread
+    public void sortBy(int col, boolean ascending) {
+        mSortCol = col;
+        mAscending = ascending;
+        mComparator = null;
+        update();
+    }
+
+    //自定义顺序, 相等的保持source中的顺序; null恢复source的顺序.
+    //cols是comparator用到的列, 单元格变化时只有这些列变了才重新排序; 不传表示可能用到任何列
+    @MainThread
+    public void setComparator(RowComparator comparator, int... cols) {
+        mSortCol = -1;
+        mComparator = comparator;
+        mComparatorCols = cols.length == 0 ? null : cols.clone();
+        update();
+    }
+
+    @MainThread
+    public void clearSort() {
+        setComparator(null);
+    }
+
+    //null显示所有行; cols和setComparator的一样
+    @MainThread
+    public void setFilter(RowFilter filter, int... cols) {
+        mFilter = filter;
+        mFilterCols = cols.length == 0 ? null : cols.clone();
+        update();
+    }
+
+    public int getSortColumn() {
+        return mSortCol;
+    }
+
+    public boolean isAscending() {
+        return mAscending;
+    }
+
+    public int getSourceRow(int row) {
+        int[] rows = mRows;
+        return rows == null || row >= rows.length ? row : rows[row];
+    }
+
+    //被筛掉的返回-1
+    @MainThread
+    public int getViewRow(int sourceRow) {
+        int[] viewRows = mViewRows;
+        return viewRows == null ? sourceRow : sourceRow < viewRows.length ? viewRows[sourceRow] : -1;
+    }
+
+    private boolean isActive() {
+        return mSortCol >= 0 || mComparator != null || mFilter != null;
+    }
+
+    //col1到col2的单元格变化后是否要重新排序或筛选
+    private boolean dependsOn(int col1, int col2) {
+        return (mSortCol >= col1 && mSortCol <= col2) ||
+                (mComparator != null && overlaps(mComparatorCols, col1, col2)) ||
+                (mFilter != null && overlaps(mFilterCols, col1, col2));
+    }
+
+    private static boolean overlaps(int[] cols, int col1, int col2) {
+        if (cols == null) {
+            return true;
+        }
+        for (int col : cols) {
+            if (col >= col1 && col <= col2) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] mapCols(int[] cols, int op, int start, int count, int to) {
+        if (cols == null) {
+            return null;
+        }
+        int[] out = new int[cols.length];
+        int n = 0;
+        for (int col : cols) {
+            int mapped = ExcelView.ExcelObserver.mapIndex(op, col, start, count, to);
+            if (mapped >= 0) {
+                out[n++] = mapped;
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    //算好之前ExcelView继续显示旧的映射
+    private void update() {
+        int generation = ++mGeneration;
+        if (!isActive()) {
+            apply(null, null);
+            return;
+        }
+        new SortTask(generation).start();
+    }
+
+    private class SortTask implements Runnable {
+        final int generation, rowCount, headerRows, sortCol;
+        final boolean ascending;
+        final RowComparator comparator;
+        final RowFilter filter;
+        final ExcelView.CellReader reader;
+        ColumnComparator column;//reader为null时在主线程分批填
+        int next;//主线程下一批的开始
+
+        SortTask(int generation) {
+            this.generation = generation;
+            rowCount = mSource.getRowCount();
+            headerRows = Math.min(mHeaderRows, rowCount);
+            sortCol = mSortCol;
+            ascending = mAscending;
+            comparator = mComparator;
+            filter = mFilter;
+            reader = sortCol >= 0 ? mSource.newCellReader() : null;
+            if (sortCol >= 0 && reader == null) {
+                column = new ColumnComparator(rowCount, ascending);
+                next = headerRows;
+            } else {
+                next = rowCount;
+            }
+        }
+
+        void start() {
+            if (next < rowCount) {
+                mMainHandler.post(this);
+            } else {
+                mExecutor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (generation != mGeneration) {
+                return;
+            }
+            if (next < rowCount) {//主线程
+                int end = Math.min(rowCount, next + READ_BATCH_ROWS);
+                column.read(new ExcelView.AdapterCellReader(mSource), sortCol, next, end);
+                next = end;
+                start();
+                return;
+            }
+            if (sortCol >= 0 && column == null) {
+                column = new ColumnComparator(rowCount, ascending);
+                for (int row = headerRows; row < rowCount; row += CANCEL_CHECK_MASK + 1) {
+                    if (generation != mGeneration) {
+                        return;
+                    }
+                    column.read(reader, sortCol, row, Math.min(rowCount, row + CANCEL_CHECK_MASK + 1));
+                }
+            }
+            final int[] rows = computeRows(generation, rowCount, headerRows, column != null ? column : comparator, filter);
+            if (rows == null) {
+                return;
+            }
+            final int[] viewRows = inverse(rows, rowCount);
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (generation == mGeneration) {
+                        apply(rows, viewRows);
+                    }
+                }
+            });
+        }
+    }
+
+    //一次替换, 行高索引和可见cell由ExcelView在onChanged中重新计算和绑定;
+    //显示的行没变只是换了顺序时发notifyRowsReordered, 汇总之类按整列缓存的结果可以保留
+    private void apply(int[] rows, int[] viewRows) {
+        boolean reordered = isSameRowSet(rows, viewRows);
+        mRows = rows;
+        mViewRows = viewRows;
+        mSpans.clear();
+        if (reordered) {
+            notifyRowsReordered();
+        } else {
+            notifyDataSetChanged();
+        }
+    }
+
+    //新的映射显示的行和现在的一样(顺序可以不同); 都为null时不映射, 显示source的所有行
+    private boolean isSameRowSet(int[] rows, int[] viewRows) {
+        int[] oldViewRows = mViewRows;
+        int sourceCount = viewRows != null ? viewRows.length : mSource.getRowCount();
+        if (oldViewRows != null ? oldViewRows.length != sourceCount : mRows != null) {
+            return false;
+        }
+        int oldCount = mRows == null ? sourceCount : mRows.length;
+        int newCount = rows == null ? sourceCount : rows.length;
+        if (oldCount != newCount) {
+            return false;
+        }
+        if (oldCount == sourceCount) {
+            return true;//都显示全部的行
+        }
+        for (int row : rows) {
+            if (oldViewRows[row] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //被取消返回null
+    @WorkerThread
+    private int[] computeRows(int generation, int rowCount, int headerRows,
+                              RowComparator comparator, RowFilter filter) {
+        int[] rows = new int[rowCount];
+        int n = 0;
+        for (int row = 0; row < headerRows; row++) {
+            rows[n++] = row;
+        }
+        for (int row = headerRows; row < rowCount; row++) {
+            if ((row & CANCEL_CHECK_MASK) == 0 && generation != mGeneration) {
+                return null;
+            }
+            if (filter == null || filter.accept(row)) {
+                rows[n++] = row;
+            }
+        }
+        if (comparator != null && generation == mGeneration &&
+                !sortRows(generation, rows, headerRows, n, comparator)) {
+            return null;
+        }
+        return generation == mGeneration ? (n == rowCount ? rows : Arrays.copyOf(rows, n)) : null;
+    }
+
+    private static int[] inverse(int[] rows, int rowCount) {
+        int[] viewRows = new int[rowCount];
+        Arrays.fill(viewRows, -1);
+        for (int i = 0; i < rows.length; i++) {
+            viewRows[rows[i]] = i;
+        }
+        return viewRows;
+    }
+
+    //稳定排序rows的[from, to), 行数多时先分块并行排序, 再并行两两归并; 被中断或作废返回false
+    @WorkerThread
+    private boolean sortRows(final int generation, final int[] rows, final int from, final int to,
+                             final RowComparator comparator) {
+        final int n = to - from;
+        final int[] tmp = new int[rows.length];
+        ExecutorService pool = getSortPool();
+        int chunks = n < PARALLEL_THRESHOLD ? 1 : Math.min(n / (PARALLEL_THRESHOLD / 2), sSortThreads);
+        if (chunks <= 1) {
+            mergeSort(generation, rows, tmp, from, to, comparator);
+            return generation == mGeneration;
+        }
+        final int[] bounds = new int[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            bounds[i] = from + (int) ((long) n * i / chunks);
+        }
+        Runnable[] tasks = new Runnable[chunks];
+        for (int i = 0; i < chunks; i++) {
+            final int start = bounds[i], end = bounds[i + 1];
+            tasks[i] = new Runnable() {
+                @Override
+                public void run() {
+                    mergeSort(generation, rows, tmp, start, end, comparator);
+                }
+            };
+        }
+        if (!runAll(pool, tasks) || generation != mGeneration) {
+            return false;
+        }
+
+        //每轮把相邻的两段从src归并到dst
+        int[] src = rows, dst = tmp;
+        int[] runBounds = bounds;
+        while (runBounds.length > 2) {
+            int runs = runBounds.length - 1;
+            int[] next = new int[(runs + 1) / 2 + 1];
+            Runnable[] merges = new Runnable[(runs + 1) / 2];
+            for (int i = 0; i < merges.length; i++) {
+                final int start = runBounds[2 * i];
+                final int mid = runBounds[Math.min(2 * i + 1, runs)];
+                final int end = runBounds[Math.min(2 * i + 2, runs)];
+                final int[] s = src, d = dst;
+                next[i] = start;
+                merges[i] = new Runnable() {
+                    @Override
+                    public void run() {
+                        merge(generation, s, d, start, mid, end, comparator);
+                    }
+                };
+            }
+            next[next.length - 1] = to;
+            if (!runAll(pool, merges) || generation != mGeneration) {
+                return false;
+            }
+            int[] t = src;
+            src = dst;
+            dst = t;
+            runBounds = next;
+        }
+        if (src != rows) {
+            System.arraycopy(src, from, rows, from, n);
+        }
+        return true;
+    }
+
+    private static boolean runAll(ExecutorService pool, Runnable[] tasks) {
+        final CountDownLatch latch = new CountDownLatch(tasks.length);
+        for (final Runnable task : tasks) {
+            pool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+        try {
+            latch.await();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    //tmp只用[from, to)这一段; 作废后直接返回, 结果不再有序
+    private void mergeSort(int generation, int[] a, int[] tmp, int from, int to, RowComparator comparator) {
+        if (to - from > CANCEL_CHECK_MASK && generation != mGeneration) {
+            return;
+        }
+        if (to - from <= INSERTION_SORT_SIZE) {
+            for (int i = from + 1; i < to; i++) {
+                int value = a[i];
+                int j = i;
+                while (j > from && comparator.compare(a[j - 1], value) > 0) {
+                    a[j] = a[j - 1];
+                    j--;
+                }
+                a[j] = value;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(generation, a, tmp, from, mid, comparator);
+        mergeSort(generation, a, tmp, mid, to, comparator);
+        if (comparator.compare(a[mid - 1], a[mid]) <= 0) {//已经有序
+            return;
+        }
+        System.arraycopy(a, from, tmp, from, to - from);
+        merge(generation, tmp, a, from, mid, to, comparator);
+    }
+
+    //src的[from, mid)和[mid, to)归并到dst的[from, to), 相等时左边在前
+    private void merge(int generation, int[] src, int[] dst, int from, int mid, int to, RowComparator comparator) {
+        int i = from, j = mid, k = from;
+        while (i < mid && j < to) {
+            if ((k & CANCEL_CHECK_MASK) == 0 && generation != mGeneration) {
+                return;
+            }
+            dst[k++] = comparator.compare(src[j], src[i]) < 0 ? src[j++] : src[i++];
+        }
+        while (i < mid) {
+            dst[k++] = src[i++];
+        }
+        while (j < to) {
+            dst[k++] = src[j++];
+        }
+    }
+
+    //排序前先取出一列的值, 比较时不再访问source
+    private static final class ColumnComparator implements RowComparator {
+        final double[] values;
+        final String[] texts;
+        final boolean ascending;
+
+        ColumnComparator(int rowCount, boolean ascending) {
+            this.ascending = ascending;
+            values = new double[rowCount];
+            texts = new String[rowCount];
+        }
+
+        //取出[from, to)行
+        void read(ExcelView.CellReader reader, int col, int from, int to) {
+            for (int row = from; row < to; row++) {
+                double value = reader.getCellValue(row, col);
+                values[row] = value;
+                if (Double.isNaN(value)) {
+                    CharSequence text = reader.getCellText(row, col);
+                    texts[row] = text == null || text.length() == 0 ? null : text.toString();
+                }
+            }
+        }
+
+        @Override
+        public int compare(int row1, int row2) {
+            double v1 = values[row1], v2 = values[row2];
+            boolean number1 = !Double.isNaN(v1), number2 = !Double.isNaN(v2);
+            if (number1 && number2) {
+                return ascending ? Double.compare(v1, v2) : Double.compare(v2, v1);
+            }
+            if (number1 != number2) {
+                return number1 ? -1 : 1;
+            }
+            String t1 = texts[row1], t2 = texts[row2];
+            if (t1 == null || t2 == null) {
+                return t1 == null ? (t2 == null ? 0 : 1) : -1;
+            }
+            return ascending ? t1.compareTo(t2) : t2.compareTo(t1);
+        }
+    }
+
+    //source的行插入删除移动后, 现有映射跟着调整, 插入的行先放在最后, 之后重新排序
+    private void remapRows(int op, int start, int count, int to) {
+        int[] rows = mRows;
+        int[] out = new int[rows.length + (op == ExcelView.ExcelObserver.INSERT ? count : 0)];
+        int n = 0;
+        for (int row : rows) {
+            int mapped = ExcelView.ExcelObserver.mapIndex(op, row, start, count, to);
+            if (mapped >= 0) {
+                out[n++] = mapped;
+            }
+        }
+        if (op == ExcelView.ExcelObserver.INSERT) {
+            for (int i = 0; i < count; i++) {
+                out[n++] = start + i;
+            }
+        }
+        mRows = n == out.length ? out : Arrays.copyOf(out, n);
+        mViewRows = inverse(mRows, mSource.getRowCount());
+        mSpans.clear();
+    }
+
+    //source整个变了, 排好之前先沿用旧的顺序: 已经不存在的行去掉, 新增的行放在最后
+    private void keepRows(int rowCount) {
+        int[] rows = mRows;
+        int oldCount = mViewRows.length;
+        int[] out = new int[rowCount];
+        int n = 0;
+        for (int row : rows) {
+            if (row < rowCount) {
+                out[n++] = row;
+            }
+        }
+        for (int row = oldCount; row < rowCount; row++) {
+            out[n++] = row;
+        }
+        mRows = n == out.length ? out : Arrays.copyOf(out, n);
+        mViewRows = inverse(mRows, rowCount);
+        mSpans.clear();
+    }
+
+    private final ExcelView.ExcelObserver mSourceObserver = new ExcelView.ExcelObserver() {
+        @Override
+        public void onChanged() {
+            if (mRows != null) {
+                keepRows(mSource.getRowCount());
+            }
+            notifyDataSetChanged();
+            if (isActive()) {
+                update();
+            }
+        }
+
+        @Override
+        public void onCellRangeChanged(int row1, int col1, int row2, int col2) {
+            if (mRows == null) {
+                notifyRangeChanged(row1, col1, row2, col2);
+            } else if (row2 - row1 < MAX_FORWARDED_ROWS) {
+                for (int row = row1; row <= row2; row++) {
+                    int viewRow = getViewRow(row);
+                    if (viewRow >= 0) {
+                        notifyRangeChanged(viewRow, col1, viewRow, col2);
+                    }
+                }
+            } else {
+                notifyRangeChanged(0, col1, getRowCount() - 1, col2);
+            }
+            //表头行不参与排序和筛选
+            if (row2 >= mHeaderRows && dependsOn(col1, col2)) {
+                update();
+            }
+        }
+
+        @Override
+        public void onRowsChanged(int op, int start, int count, int to) {
+            if (mRows == null) {
+                switch (op) {
+                    case INSERT:
+                        notifyRowsInserted(start, count);
+                        break;
+                    case REMOVE:
+                        notifyRowsRemoved(start, count);
+                        break;
+                    case MOVE:
+                        notifyRowsMoved(start, to, count);
+                        break;
+                }
+                return;
+            }
+            mGeneration++;
+            remapRows(op, start, count, to);
+            notifyDataSetChanged();
+            update();
+        }
+
+        @Override
+        public void onColsChanged(int op, int start, int count, int to) {
+            if (mSortCol >= 0) {
+                mSortCol = mapIndex(op, mSortCol, start, count, to);
+            }
+            mComparatorCols = mapCols(mComparatorCols, op, start, count, to);
+            mFilterCols = mapCols(mFilterCols, op, start, count, to);
+            switch (op) {
+                case INSERT:
+                    notifyColsInserted(start, count);
+                    break;
+                case REMOVE:
+                    notifyColsRemoved(start, count);
+                    break;
+                case MOVE:
+                    notifyColsMoved(start, to, count);
+                    break;
+            }
+            if (op == REMOVE && mRows != null) {//排序的列或筛选依赖的列可能被删了
+                update();
+            }
+        }
+
+        @Override
+        public void onRowHeightChanged(int row) {
+            int viewRow = getViewRow(row);
+            if (viewRow >= 0) {
+                notifyRowHeightChanged(viewRow);
+            }
+        }
+
+        @Override
+        public void onColWidthChanged(int col) {
+            notifyColWidthChanged(col);
+        }
+    };
+
+    //覆盖的source行在新顺序中连续时平移, 否则不再合并
+    @Override
+    public ExcelView.Span querySpan(int row, int col) {
+        int[] rows = mRows;
+        if (rows == null) {
+            return mSource.querySpan(row, col);
+        }
+        ExcelView.Span span = mSource.querySpan(rows[row], col);
+        if (span == null || (span.getFirstRow() == span.getLastRow() && span.getFirstCol() == span.getLastCol())) {
+            return span;
+        }
+        ExcelView.Span mapped = mSpans.get(span);
+        if (mapped == null) {
+            mapped = remapSpan(span);
+            mSpans.put(span, mapped);
+        }
+        return mapped == NO_SPAN ? null : mapped;
+    }
+
+    private ExcelView.Span remapSpan(ExcelView.Span span) {
+        return remapSpan(span, mViewRows);
+    }
+
+    private static ExcelView.Span remapSpan(ExcelView.Span span, int[] viewRows) {
+        int first = span.getFirstRow(), last = span.getLastRow();
+        int top = viewRows[first];
+        if (top < 0) {
+            return NO_SPAN;
+        }
+        for (int row = first + 1; row <= last; row++) {
+            if (viewRows[row] != top + row - first) {
+                return NO_SPAN;
+            }
+        }
+        return new ExcelView.Span(top, span.getFirstCol(), top + last - first, span.getLastCol());
+    }
+
+    @Override
+    public int getColCount() {
+        return mSource.getColCount();
+    }
+
+    @Override
+    public int getRowCount() {
+        int[] rows = mRows;
+        return rows == null ? mSource.getRowCount() : rows.length;
+    }
+
+    @Override
+    public int getRowHeight(int row) {
+        return mSource.getRowHeight(getSourceRow(row));
+    }
+
+    @Override
+    public int getColWidth(int col) {
+        return mSource.getColWidth(col);
+    }
+
+    @Override
+    public int getCellViewType(int row, int col) {
+        return mSource.getCellViewType(getSourceRow(row), col);
+    }
+
+    @Override
+    public View getCellView(Context context, View convertView, int row, int col) {
+        return mSource.getCellView(context, convertView, getSourceRow(row), col);
+    }
+
+    @Override
+    public CharSequence getCellText(int row, int col) {
+        return mSource.getCellText(getSourceRow(row), col);
+    }
+
+    @Override
+    public double getCellValue(int row, int col) {
+        return mSource.getCellValue(getSourceRow(row), col);
+    }
+
+    //source的renderer按source的行号画; TextLayoutCellRenderer换成同类型的, ExcelView仍然会预排版
+    @Override
+    public ExcelView.CellRenderer getCellRenderer(int viewType) {
+        final ExcelView.CellRenderer renderer = mSource.getCellRenderer(viewType);
+        if (renderer == null) {
+            return null;
+        }
+        ExcelView.CellRenderer mapped = mRenderers.get(renderer);
+        if (mapped == null) {
+            if (renderer instanceof ExcelView.TextLayoutCellRenderer) {
+                mapped = new MappedTextLayoutRenderer((ExcelView.TextLayoutCellRenderer) renderer);
+            } else {
+                mapped = new ExcelView.CellRenderer() {
+                    @Override
+                    public void drawCell(Canvas canvas, int row, int col, int left, int top, int right, int bottom) {
+                        renderer.drawCell(canvas, getSourceRow(row), col, left, top, right, bottom);
+                    }
+                };
+            }
+            mRenderers.put(renderer, mapped);
+        }
+        return mapped;
+    }
+
+    //排版按显示的行号缓存, 映射替换时ExcelView会清空; 样式跟着source
+    private class MappedTextLayoutRenderer extends ExcelView.TextLayoutCellRenderer {
+        final ExcelView.TextLayoutCellRenderer source;
+
+        MappedTextLayoutRenderer(ExcelView.TextLayoutCellRenderer source) {
+            this.source = source;
+        }
+
+        @Override
+        public CharSequence getText(int row, int col) {
+            return source.getText(getSourceRow(row), col);
+        }
+
+        @Override
+        public long getTextVersion(int row, int col) {
+            return source.getTextVersion(getSourceRow(row), col);
+        }
+
+        @Override
+        public int getBackgroundColor(int row, int col) {
+            return source.getBackgroundColor(getSourceRow(row), col);
+        }
+
+        @Override
+        void enqueue(int row, int col, int cellWidth) {
+            syncStyle(source);
+            super.enqueue(row, col, cellWidth);
+        }
+
+        @Override
+        public void drawCell(Canvas canvas, int row, int col, int left, int top, int right, int bottom) {
+            syncStyle(source);
+            super.drawCell(canvas, row, col, left, top, right, bottom);
+        }
+    }
+
+    @Override
+    public boolean isDrawThreadSafe(int viewType) {
+        return mSource.isDrawThreadSafe(viewType);
+    }
+
+    //source能在后台读时, 按创建时的映射转换行号
+    @Override
+    public ExcelView.CellReader newCellReader() {
+        ExcelView.CellReader reader = mSource.newCellReader();
+        return reader == null ? null : new MappedCellReader(reader, mRows, mViewRows);
+    }
+
+    private static class MappedCellReader implements ExcelView.CellReader {
+        final ExcelView.CellReader reader;
+        final int[] rows, viewRows;//都为null时不映射
+
+        MappedCellReader(ExcelView.CellReader reader, int[] rows, int[] viewRows) {
+            this.reader = reader;
+            this.rows = rows;
+            this.viewRows = viewRows;
+        }
+
+        //超出映射的行返回-1
+        private int sourceRow(int row) {
+            return rows == null ? row : row < rows.length ? rows[row] : -1;
+        }
+
+        @Override
+        public ExcelView.Span querySpan(int row, int col) {
+            int sourceRow = sourceRow(row);
+            if (sourceRow < 0) {
+                return null;
+            }
+            ExcelView.Span span = reader.querySpan(sourceRow, col);
+            if (rows == null || !ExcelView.Span.isSpan(span)) {
+                return span;
+            }
+            ExcelView.Span mapped = remapSpan(span, viewRows);
+            return mapped == NO_SPAN ? null : mapped;
+        }
+
+        @Override
+        public CharSequence getCellText(int row, int col) {
+            int sourceRow = sourceRow(row);
+            return sourceRow < 0 ? null : reader.getCellText(sourceRow, col);
+        }
+
+        @Override
+        public double getCellValue(int row, int col) {
+            int sourceRow = sourceRow(row);
+            return sourceRow < 0 ? Double.NaN : reader.getCellValue(sourceRow, col);
+        }
+    }
+
+    @Override
+    public View createCellView(Context context, int viewType) {
+        return mSource.createCellView(context, viewType);
+    }
+}
@@ -0,0 +1,137 @@
+package com.lhg.excelview;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.view.ScaleGestureDetector;
+
+import com.lhg.excelview.core.LayoutState;
+import com.lhg.excelview.core.SizeIndex;
+
+/**
+ * ExcelView缩放手势期间把当前视口画到一张bitmap上, 手势中只缩放bitmap, 结束时才按新比例重新排版.
+ * 冻结行/列和body分开变换, 开头冻结的贴着左上边缘, 末尾冻结的贴着自己的右下边缘.
+ */
+final class ZoomSnapshot implements ScaleGestureDetector.OnScaleGestureListener {
+    final ExcelView view;
+    Bitmap bitmap;//视口大小不变时手势之间复用
+    final Canvas bitmapCanvas = new Canvas();
+    final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    int headWidth, headHeight;
+    int footX, footY, footRight, footBottom;//末尾冻结部分在视口中的范围
+    float focusX, focusY;//视图坐标中的焦点, 限制在body区域内
+    float scale = 1f;
+    boolean active;
+
+    ZoomSnapshot(ExcelView view) {
+        this.view = view;
+    }
+
+    @Override
+    public boolean onScaleBegin(ScaleGestureDetector detector) {
+        LayoutState state = view.mVisibleState;
+        if (view.mVisibleCells.size() == 0 || view.getWidth() <= 0 || view.getHeight() <= 0) {
+            return false;
+        }
+        SizeIndex rows = view.mScrollHelperY.getIndex(), cols = view.mScrollHelperX.getIndex();
+        headWidth = state.headWidth;
+        headHeight = state.headHeight;
+        footX = state.footX;
+        footY = state.footY;
+        footRight = footX + cols.total() - cols.offsetOf(state.footColStart);
+        footBottom = footY + rows.total() - rows.offsetOf(state.footRowStart);
+        focusX = Math.max(headWidth, Math.min(footX, detector.getFocusX()));
+        focusY = Math.max(headHeight, Math.min(footY, detector.getFocusY()));
+        capture();
+        scale = 1f;
+        active = true;
+        view.mZoomedInGesture = true;
+        view.mIsDragging = false;
+        view.mScroller.forceFinished(true);
+        view.mPrefetcher.clear();
+        if (view.getParent() != null) {
+            view.getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean onScale(ScaleGestureDetector detector) {
+        float zoom = Math.max(view.mMinZoom, Math.min(view.mMaxZoom, view.mZoom * scale * detector.getScaleFactor()));
+        if (zoom != view.mZoom * scale) {
+            scale = zoom / view.mZoom;
+            view.invalidate();
+        }
+        return true;
+    }
+
+    @Override
+    public void onScaleEnd(ScaleGestureDetector detector) {
+        active = false;
+        view.applyZoom(view.mZoom * scale, focusX, focusY);
+    }
+
+    //当前内容画一遍到bitmap上
+    private void capture() {
+        int width = view.getWidth(), height = view.getHeight();
+        if (bitmap == null || bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            release();
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        } else {
+            bitmap.eraseColor(Color.TRANSPARENT);
+        }
+        Canvas canvas = bitmapCanvas;
+        canvas.setBitmap(bitmap);
+        int saveCount = canvas.save();
+        canvas.translate(-view.getScrollX(), -view.getScrollY());
+        view.drawContent(canvas);
+        canvas.restoreToCount(saveCount);
+        canvas.setBitmap(null);
+    }
+
+    //body和冻结行/列各自围绕焦点缩放: x' = s * x + focusX * (1 - s), x和focusX都是视图坐标,
+    //开头冻结的固定在0, 末尾冻结的固定在footRight/footBottom
+    void draw(Canvas canvas) {
+        int saveCount = canvas.save();
+        canvas.translate(view.getScrollX(), view.getScrollY());
+        float s = scale;
+        float bodyTop = headHeight * s, bodyBottom = footBottom - (footBottom - footY) * s;
+        float ty = focusY * (1 - s), footTy = footBottom * (1 - s);
+        drawRowBand(canvas, bodyTop, bodyBottom, ty, headHeight, footY);
+        drawRowBand(canvas, 0, bodyTop, 0, 0, headHeight);
+        drawRowBand(canvas, bodyBottom, footBottom, footTy, footY, footBottom);
+        canvas.restoreToCount(saveCount);
+    }
+
+    //一段行在[top, bottom)中的三段列
+    private void drawRowBand(Canvas canvas, float top, float bottom, float ty, int srcTop, int srcBottom) {
+        if (srcTop >= srcBottom) {
+            return;
+        }
+        float s = scale;
+        float bodyLeft = headWidth * s, bodyRight = footRight - (footRight - footX) * s;
+        drawRegion(canvas, bodyLeft, top, bodyRight, bottom, focusX * (1 - s), ty, headWidth, srcTop, footX, srcBottom);
+        drawRegion(canvas, 0, top, bodyLeft, bottom, 0, ty, 0, srcTop, headWidth, srcBottom);
+        drawRegion(canvas, bodyRight, top, footRight, bottom, footRight * (1 - s), ty, footX, srcTop, footRight, srcBottom);
+    }
+
+    private void drawRegion(Canvas canvas, float left, float top, float right, float bottom, float tx, float ty,
+                            int srcLeft, int srcTop, int srcRight, int srcBottom) {
+        int saveCount = canvas.save();
+        canvas.clipRect(left, top, right, bottom);
+        canvas.translate(tx, ty);
+        canvas.scale(scale, scale);
+        canvas.clipRect(srcLeft, srcTop, srcRight, srcBottom);
+        canvas.drawBitmap(bitmap, 0, 0, paint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    void release() {
+        active = false;
+        if (bitmap != null) {
+            bitmap.recycle();
+            bitmap = null;
+        }
+    }
+}